@@ -0,0 +1,195 @@
+/**
+ * Copyright (C) 2019 DIGIBÍS S.L.
+ *
+ * This file is part of MARC4J
+ *
+ * MARC4J is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * MARC4J is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with MARC4J; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.marc4j;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.marc4j.marc.MarcException;
+import org.marc4j.marc.Record;
+import org.marc4j.marc.RecordCodec;
+
+/**
+ * <p>
+ * Reads records one by one from a file written by
+ * {@link org.marc4j.util.BinaryRecordWriter}.
+ * </p>
+ *
+ * <pre>
+ * try (BinaryRecordReader records = new BinaryRecordReader(file)) {
+ *     while (records.hasNext()) {
+ *         Record record = records.next();
+ *         ...
+ *     }
+ * }
+ * </pre>
+ *
+ * <p>
+ * <b>Note:</b> an <code>IOException</code> while reading is thrown
+ * as a {@link MarcException}.
+ * </p>
+ *
+ * @see RecordCodec
+ */
+public class BinaryRecordReader
+    implements Iterator<Record>, Closeable
+{
+
+    /** The buffered input */
+    private final BufferedInputStream buffered;
+
+    /** The input */
+    private final DataInputStream input;
+
+    /** The codec */
+    private final RecordCodec codec = new RecordCodec();
+
+    /** The next record, if it has been read */
+    private Record next;
+
+    /** True at the end of the input */
+    private boolean finished = false;
+
+    /**
+     * <p>
+     * Creates a new instance for the given file.
+     * </p>
+     *
+     * @param fileName the filename
+     * @throws IOException if the file cannot be opened
+     * @throws MarcException if the file is not a file of records
+     */
+    public BinaryRecordReader(String fileName)
+        throws IOException
+    {
+        this(new FileInputStream(fileName), true);
+    }
+
+    /**
+     * <p>
+     * Creates a new instance for the given input stream and reads the
+     * header.
+     * </p>
+     *
+     * @param input the input stream
+     * @throws IOException if an I/O error occurs
+     * @throws MarcException if the input is not a file of records
+     */
+    public BinaryRecordReader(InputStream input)
+        throws IOException
+    {
+        this(input, false);
+    }
+
+    /**
+     * Reads the header, closing the input on failure if it was opened
+     * by this reader.
+     */
+    private BinaryRecordReader(InputStream input, boolean owned)
+        throws IOException
+    {
+        this.buffered = new BufferedInputStream(input);
+        this.input = new DataInputStream(buffered);
+        boolean ready = false;
+        try {
+            codec.readHeader(this.input);
+            ready = true;
+        } finally {
+            if (!ready && owned) input.close();
+        }
+    }
+
+    /**
+     * <p>
+     * Returns true if there is another record in the input. Reads
+     * the next record if needed.
+     * </p>
+     *
+     * @return <code>boolean</code> - true if there is another record
+     */
+    @Override
+    public boolean hasNext()
+    {
+        if (next == null && !finished) {
+            try {
+                buffered.mark(1);
+                if (buffered.read() < 0) {
+                    finished = true;
+                } else {
+                    buffered.reset();
+                    next = codec.read(input);
+                }
+            } catch (IOException e) {
+                finished = true;
+                throw new MarcException("Unable to read the next record", e);
+            }
+        }
+        return next != null;
+    }
+
+    /**
+     * <p>
+     * Returns the next record.
+     * </p>
+     *
+     * @return {@link Record} - the next record
+     * @throws NoSuchElementException if there are no more records
+     */
+    @Override
+    public Record next()
+    {
+        if (!hasNext()) throw new NoSuchElementException();
+        Record record = next;
+        next = null;
+        return record;
+    }
+
+    /**
+     * <p>
+     * Not supported.
+     * </p>
+     */
+    @Override
+    public void remove()
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * <p>
+     * Closes the input stream.
+     * </p>
+     */
+    @Override
+    public void close()
+        throws IOException
+    {
+        finished = true;
+        next = null;
+        input.close();
+    }
+
+}
@@ -0,0 +1,397 @@
+/**
+ * Copyright (C) 2019 DIGIBÍS S.L.
+ *
+ * This file is part of MARC4J
+ *
+ * MARC4J is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * MARC4J is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with MARC4J; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.marc4j;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.marc4j.helpers.RecordBuilder;
+import org.marc4j.helpers.RecordHandler;
+import org.marc4j.helpers.RecordReporter;
+import org.marc4j.marc.MarcException;
+import org.marc4j.marc.Record;
+
+/**
+ * <p>
+ * Processes records in a pool of worker threads and reports them to a
+ * <code>RecordHandler</code> in the order they were received.
+ * </p>
+ *
+ * <p>
+ * The pipeline is a <code>RecordHandler</code>: the reader thread reports
+ * each record, which is given a sequence number and handed to a worker
+ * that calls the {@link RecordProcessor}. Processed records wait in a
+ * reorder buffer until all the records before them have been reported.
+ * At most {@link #setWindow(int) window} records are being processed or
+ * waiting at any time, so the reader is paused while the oldest record
+ * is still being processed and the memory used is bounded.
+ * </p>
+ *
+ * <p>
+ * The output handler is called by one thread at a time, but not always
+ * by the same one. To write records with a <code>MarcHandler</code>, such
+ * as {@link org.marc4j.util.MarcWriter}, use a {@link RecordReporter}.
+ * </p>
+ *
+ * <p>
+ * An exception or error thrown by the processor or by the output handler
+ * stops the pipeline: it is thrown as a {@link MarcException} to the reader
+ * thread by the next <code>record()</code> or by
+ * <code>endCollection()</code>.
+ * </p>
+ *
+ * <p>
+ * The worker threads are daemon threads, started by
+ * <code>startCollection()</code> and stopped by
+ * <code>endCollection()</code>. A reader that stops without reporting
+ * the end of the collection leaves records unreported, so when the
+ * pipeline is used as a <code>RecordHandler</code> the caller must make
+ * sure <code>endCollection()</code> is called. {@link #parse(InputStream)}
+ * does this.
+ * </p>
+ *
+ * @see RecordProcessor
+ * @see ParallelMarcReader
+ */
+public class ConversionPipeline
+    implements RecordHandler
+{
+
+    /** Placeholder for the records dropped by the processor */
+    private static final Record DROPPED = new Record();
+
+    /** The processor */
+    private final RecordProcessor processor;
+
+    /** The output handler */
+    private final RecordHandler handler;
+
+    /** Number of worker threads */
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    /** Maximum number of records in the pipeline, 0 for the default */
+    private int window;
+
+    /** The worker threads */
+    private ExecutorService executor;
+
+    /** Permits for the records that can enter the pipeline */
+    private Semaphore permits;
+
+    /** The permits created for the current collection */
+    private int permitCount;
+
+    /** The sequence number of the next record received */
+    private long received;
+
+    /** The sequence number of the next record to report */
+    private long reported;
+
+    /** Processed records waiting for the records before them */
+    private final Map<Long, Record> waiting = new HashMap<>();
+
+    /** The first exception or error of the processor or the output handler */
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    /** The ErrorHandler object. */
+    private ErrorHandler eh;
+
+    /**
+     * <p>
+     * Creates a new instance.
+     * </p>
+     *
+     * @param processor the processor called by the workers
+     * @param handler the handler receiving the records in order
+     */
+    public ConversionPipeline(RecordProcessor processor, RecordHandler handler)
+    {
+        this.processor = processor;
+        this.handler = handler;
+    }
+
+    /**
+     * <p>
+     * Creates a new instance that writes the records with a
+     * <code>MarcHandler</code>.
+     * </p>
+     *
+     * @param processor the processor called by the workers
+     * @param handler the handler receiving the events of the records
+     *        in order
+     */
+    public ConversionPipeline(RecordProcessor processor, MarcHandler handler)
+    {
+        this(processor, new RecordReporter(handler));
+    }
+
+    /**
+     * <p>
+     * Sets the number of worker threads. The default is the number
+     * of available processors.
+     * </p>
+     *
+     * @param parallelism the number of threads
+     */
+    public void setParallelism(int parallelism)
+    {
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * <p>
+     * Sets the maximum number of records being processed or waiting to
+     * be reported. The default is 64 records per worker thread.
+     * </p>
+     *
+     * @param window the number of records
+     */
+    public void setWindow(int window)
+    {
+        this.window = window;
+    }
+
+    /**
+     * <p>
+     * Registers the <code>ErrorHandler</code> of the reader created by
+     * {@link #parse(InputStream)}.
+     * </p>
+     *
+     * @param eh the {@link ErrorHandler} implementation
+     */
+    public void setErrorHandler(ErrorHandler eh)
+    {
+        this.eh = eh;
+    }
+
+    /**
+     * <p>
+     * Reads the records of an input stream with a {@link MarcReader}
+     * and runs them through the pipeline.
+     * </p>
+     *
+     * <p>
+     * If the reader stops at a fatal error without reporting the end of
+     * the collection, the records read so far are still reported and the
+     * collection is ended. If the reader throws an exception, the
+     * pipeline is stopped and the records still being processed are
+     * discarded.
+     * </p>
+     *
+     * @param input the input stream
+     * @throws IOException if an I/O error occurs
+     * @throws MarcException if a record could not be processed or
+     *         reported
+     */
+    public void parse(InputStream input)
+        throws IOException
+    {
+        parse(new BufferedReader(new InputStreamReader(input, "ISO8859_1")));
+    }
+
+    /**
+     * <p>
+     * Reads the records of a character stream with a {@link MarcReader}
+     * and runs them through the pipeline, as {@link #parse(InputStream)}
+     * does.
+     * </p>
+     *
+     * @param input the character stream
+     * @throws IOException if an I/O error occurs
+     * @throws MarcException if a record could not be processed or
+     *         reported
+     */
+    public void parse(Reader input)
+        throws IOException
+    {
+        RecordBuilder builder = new RecordBuilder();
+        builder.setRecordHandler(this);
+        MarcReader reader = new MarcReader();
+        reader.setMarcHandler(builder);
+        if (eh != null) reader.setErrorHandler(eh);
+        boolean completed = false;
+        try {
+            reader.parse(input);
+            completed = true;
+        } finally {
+            if (executor != null && !executor.isShutdown()) {
+                if (completed)
+                    endCollection();
+                else
+                    abort();
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Starts the worker threads and reports the start of the
+     * collection.
+     * </p>
+     */
+    @Override
+    public void startCollection()
+    {
+        int threads = Math.max(parallelism, 1);
+        permitCount = window > 0 ? window : threads * 64;
+        permits = new Semaphore(permitCount);
+        received = 0;
+        reported = 0;
+        waiting.clear();
+        failure.set(null);
+        executor = Executors.newFixedThreadPool(threads, new WorkerThreadFactory());
+        handler.startCollection();
+    }
+
+    /**
+     * <p>
+     * Hands a record to the workers, waiting while the pipeline is full.
+     * </p>
+     *
+     * @throws MarcException if the pipeline was stopped by an exception
+     */
+    @Override
+    public void record(final Record record)
+    {
+        checkFailure();
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abort();
+            throw new MarcException("Interrupted while waiting for the workers", e);
+        }
+        checkFailure();
+        final long sequence = received++;
+        executor.execute(new Runnable() {
+            @Override
+            public void run()
+            {
+                Record result = DROPPED;
+                try {
+                    if (failure.get() == null) {
+                        Record processed = processor.process(record);
+                        if (processed != null) result = processed;
+                    }
+                } catch (Throwable t) {
+                    fail(t);
+                } finally {
+                    // a record that is not completed would stall the ones after it
+                    complete(sequence, result);
+                }
+            }
+        });
+    }
+
+    /**
+     * <p>
+     * Waits until every record has been reported, stops the worker
+     * threads and reports the end of the collection.
+     * </p>
+     *
+     * @throws MarcException if the pipeline was stopped by an exception
+     */
+    @Override
+    public void endCollection()
+    {
+        checkFailure();
+        try {
+            permits.acquire(permitCount);
+            permits.release(permitCount);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abort();
+            throw new MarcException("Interrupted while waiting for the workers", e);
+        }
+        executor.shutdown();
+        checkFailure();
+        handler.endCollection();
+    }
+
+    /**
+     * Adds a processed record to the reorder buffer and reports the
+     * records that are next in sequence.
+     */
+    private synchronized void complete(long sequence, Record record)
+    {
+        waiting.put(sequence, record);
+        Record next;
+        while ((next = waiting.remove(reported)) != null) {
+            reported++;
+            try {
+                if (next != DROPPED && failure.get() == null) handler.record(next);
+            } catch (Throwable t) {
+                fail(t);
+            } finally {
+                permits.release();
+            }
+        }
+    }
+
+    private void fail(Throwable t)
+    {
+        failure.compareAndSet(null, t);
+    }
+
+    private void checkFailure()
+    {
+        Throwable e = failure.get();
+        if (e != null) {
+            abort();
+            throw new MarcException("Unable to process record", e);
+        }
+    }
+
+    private void abort()
+    {
+        if (executor != null) executor.shutdownNow();
+    }
+
+    /**
+     * Creates the worker threads as daemon threads, so that a pipeline
+     * that was not ended does not keep the JVM alive.
+     */
+    private static class WorkerThreadFactory
+        implements ThreadFactory
+    {
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r)
+        {
+            Thread thread = new Thread(r, "marc4j-pipeline-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+}
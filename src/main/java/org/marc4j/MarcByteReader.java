@@ -0,0 +1,1091 @@
+/**
+ * Copyright (C) 2019 DIGIBÍS S.L.
+ *
+ * This file is part of MARC4J
+ *
+ * MARC4J is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * MARC4J is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with MARC4J; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.marc4j;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import org.marc4j.helpers.MarcHandlerAdapter;
+import org.marc4j.marc.ControlField;
+import org.marc4j.marc.DataField;
+import org.marc4j.marc.Leader;
+import org.marc4j.marc.MarcConstants;
+import org.marc4j.marc.MarcException;
+import org.marc4j.marc.Subfield;
+import org.marc4j.marc.Tag;
+import org.marc4j.util.CharacterConverter;
+
+/**
+ * <p>
+ * Parses MARC records (ISO 2709) working directly on the raw bytes
+ * and reports events to the <code>MarcHandler</code> and optionally
+ * the <code>ErrorHandler</code>.
+ * </p>
+ *
+ * <p>
+ * Unlike {@link MarcReader} no <code>Reader</code> is involved: records
+ * are read into a reusable byte buffer, the leader and the directory are
+ * parsed from the bytes and the field data is only decoded to characters
+ * when it is reported to the <code>MarcHandler</code>.
+ * </p>
+ *
+ * <p>
+ * The field data of the records whose leader position 09 is 'a' is
+ * decoded as UTF-8. For the other records every byte is decoded as a
+ * Latin-1 character, as {@link MarcReader} does, and the subfield data
+ * is passed to the <code>CharacterConverter</code> if one is registered
+ * (see {@link #setCharacterConverter(CharacterConverter)}). Lengths are
+ * always checked in bytes.
+ * </p>
+ *
+ * <p>
+ * Files can also be mapped in memory with {@link #parseMapped(String)}.
+ * In that mode records are located by the record length in the leader,
+ * so records can be skipped without touching their content
+ * (see {@link #setSkipRecords(long)}).
+ * </p>
+ *
+ * <p>
+ * When a {@link RawRecordHandler} is registered the records are not
+ * reported as <code>MarcHandler</code> events: the reader only parses
+ * the leader and the directory, keeping the starting position of every
+ * field, and reports a {@link RawRecord} view whose fields are decoded
+ * on demand.
+ * </p>
+ *
+ * <p>
+ * <b>Note:</b> error positions are reported in bytes.
+ * </p>
+ *
+ * @see MarcHandler
+ * @see ErrorHandler
+ */
+public class MarcByteReader
+{
+
+    /** The record terminator */
+    private static final int RT = MarcConstants.RT;
+
+    /** The field terminator */
+    private static final int FT = MarcConstants.FT;
+
+    /** The data element identifier */
+    private static final int US = MarcConstants.US;
+
+    /** The blank character */
+    private static final char BLANK = (char)MarcConstants.BLANK;
+
+    /** The character that replaces malformed UTF-8 sequences */
+    private static final char REPLACEMENT = '\uFFFD';
+
+    /** The leader length */
+    static final int LDR_LENGTH = 24;
+
+    /** Character coding scheme (leader position 09) of UTF-8 records */
+    static final char UTF8 = 'a';
+
+    /** The directory entry length */
+    static final int DIR_ENTRY_LENGTH = 12;
+
+    /** Initial size of the read buffer */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** Default size of the file regions mapped in memory */
+    private static final int MAPPING_SIZE = 256 * 1024 * 1024;
+
+    /** The MarcHandler object, adapted to receive slices. */
+    private MarcSliceHandler mh;
+
+    /** The ErrorHandler object. */
+    private ErrorHandler eh;
+
+    /** The TagFilter object. */
+    private TagFilter filter;
+
+    /** The leader refilled for every record, if any. */
+    private Leader leader;
+
+    /** The converter for the records that are not encoded in UTF-8. */
+    private CharacterConverter charconv;
+
+    /** True if the current record is encoded in UTF-8. */
+    private boolean utf8;
+
+    /** Copy of the leader bytes when the buffer has no accessible array. */
+    private final byte[] leaderBytes = new byte[LDR_LENGTH];
+
+    /** The RawRecordHandler object. */
+    private RawRecordHandler rh;
+
+    /** The view reported to the RawRecordHandler. */
+    private RawRecord rawRecord;
+
+    /** The input file name, if any. */
+    private String fileName = null;
+
+    /** The control number of the current record. */
+    private String controlNumber = null;
+
+    /** Position of the current record in the input. */
+    private long recordPosition = 0;
+
+    /** Position inside the current record. */
+    private int recordCounter = 0;
+
+    /** The read buffer for stream input. */
+    private byte[] buffer;
+
+    /** The read buffer wrapped as a ByteBuffer. */
+    private ByteBuffer wrapped;
+
+    /** Start of the unparsed bytes in the read buffer. */
+    private int bufferStart;
+
+    /** End of the valid bytes in the read buffer. */
+    private int bufferEnd;
+
+    /** Number of records to skip before reporting events. */
+    private long skipRecords = 0;
+
+    /** Size of the file regions mapped in memory. */
+    private int mappingSize = MAPPING_SIZE;
+
+    /** Directory tags of the current record. */
+    private String[] tags = new String[64];
+
+    /** Directory field lengths of the current record. */
+    private int[] lengths = new int[64];
+
+    /** Decoded characters of the current field. */
+    private char[] chars = new char[1024];
+
+    /**
+     * <p>
+     * Registers the <code>MarcHandler</code> implementation.
+     * </p>
+     *
+     * <p>
+     * If the handler implements {@link MarcSliceHandler} the control
+     * fields and subfields are reported as slices of a buffer reused for
+     * every field, otherwise each one is copied into a new array.
+     * </p>
+     *
+     * @param mh the {@link MarcHandler} implementation
+     */
+    public void setMarcHandler(MarcHandler mh)
+    {
+        this.mh = MarcHandlerAdapter.adapt(mh);
+    }
+
+    /**
+     * <p>
+     * Registers the <code>TagFilter</code> that selects the fields
+     * and subfields to report.
+     * </p>
+     *
+     * <p>
+     * The fields that are not accepted are skipped by their directory
+     * length: they are not decoded, checked nor reported. A
+     * {@link RawRecord} view only holds the accepted fields, but it does
+     * not restrict their subfields.
+     * </p>
+     *
+     * @param filter the {@link TagFilter}, or null to report every field
+     */
+    public void setTagFilter(TagFilter filter)
+    {
+        this.filter = filter;
+    }
+
+    /**
+     * <p>
+     * Makes the parser refill a single <code>Leader</code> instance for
+     * every record instead of creating a new one.
+     * </p>
+     *
+     * <p>
+     * The leader reported to <code>startRecord</code> is then only valid
+     * until the next record starts: a handler that keeps it, such as
+     * {@link org.marc4j.helpers.RecordBuilder}, must not be used with
+     * this option unless it clones the leader.
+     * </p>
+     *
+     * @param reuseLeader true to reuse the leader
+     */
+    public void setReuseLeader(boolean reuseLeader)
+    {
+        this.leader = reuseLeader ? new Leader() : null;
+    }
+
+    /**
+     * <p>
+     * Registers the <code>CharacterConverter</code> applied to the
+     * subfield data of the records that are not encoded in UTF-8,
+     * typically MARC-8 records.
+     * </p>
+     *
+     * <p>
+     * The records whose leader position 09 is 'a' are always decoded
+     * as UTF-8 and never converted.
+     * </p>
+     *
+     * @param charconv the {@link CharacterConverter}, or null to decode
+     *        the bytes as Latin-1 characters
+     */
+    public void setCharacterConverter(CharacterConverter charconv)
+    {
+        this.charconv = charconv;
+    }
+
+    /**
+     * <p>
+     * Registers the <code>RawRecordHandler</code> implementation.
+     * </p>
+     *
+     * <p>
+     * While it is registered the records are reported to it as
+     * {@link RawRecord} views instead of being reported as events to the
+     * <code>MarcHandler</code>, which still receives the collection
+     * events.
+     * </p>
+     *
+     * @param rh the {@link RawRecordHandler} implementation, or null
+     *        to report events again
+     */
+    public void setRawRecordHandler(RawRecordHandler rh)
+    {
+        this.rh = rh;
+    }
+
+    /**
+     * <p>
+     * Registers the <code>ErrorHandler</code> implementation.
+     * </p>
+     *
+     * @param eh the {@link ErrorHandler} implementation
+     */
+    public void setErrorHandler(ErrorHandler eh)
+    {
+        this.eh = eh;
+    }
+
+    /**
+     * <p>
+     * Sets the number of records to skip at the start of the input.
+     * Skipped records are not parsed and no events are reported
+     * for them.
+     * </p>
+     *
+     * @param skipRecords the number of records to skip
+     */
+    public void setSkipRecords(long skipRecords)
+    {
+        this.skipRecords = skipRecords;
+    }
+
+    /**
+     * <p>
+     * Sets the size of the file regions mapped in memory by
+     * {@link #parseMapped(String)}. The default size is 256 MB.
+     * </p>
+     *
+     * @param mappingSize the size in bytes
+     */
+    public void setMappingSize(int mappingSize)
+    {
+        this.mappingSize = mappingSize;
+    }
+
+    /**
+     * <p>
+     * Registers the name of the input file, used to report errors.
+     * </p>
+     */
+    void setFileName(String fileName)
+    {
+        this.fileName = fileName;
+    }
+
+    /**
+     * <p>
+     * Sends a file to the MARC parser.
+     * </p>
+     *
+     * @param fileName the filename
+     */
+    public void parse(String fileName)
+        throws IOException
+    {
+        this.fileName = fileName;
+        parse(new FileInputStream(fileName));
+    }
+
+    /**
+     * <p>
+     * Sends an input stream to the MARC parser.
+     * </p>
+     *
+     * <p>
+     * The stream is read in large blocks, so there is no need to wrap it
+     * in a <code>BufferedInputStream</code>. The stream is closed when
+     * the parsing ends.
+     * </p>
+     *
+     * @param input the input stream
+     */
+    public void parse(InputStream input)
+        throws IOException
+    {
+        try {
+            if (mh != null) mh.startCollection();
+            resetBuffer();
+            recordPosition = 0;
+            long skipped = 0;
+            while (true) {
+                int length = readRecord(input);
+                if (length <= 0) {
+                    if (length < 0) return;
+                    break;
+                }
+                boolean valid = true;
+                if (skipped < skipRecords)
+                    skipped++;
+                else
+                    valid = parseRecord(wrapped, bufferStart, length);
+                recordPosition += length;
+                bufferStart += length;
+                if (!valid) return;
+            }
+        } finally {
+            input.close();
+        }
+        if (mh != null) mh.endCollection();
+    }
+
+    /**
+     * <p>
+     * Reads and parses the next record of the stream, without
+     * collection events. Used by the pull readers.
+     * </p>
+     *
+     * @param input the input stream
+     * @return false at the end of the input or after a fatal error
+     */
+    boolean parseNext(InputStream input)
+        throws IOException
+    {
+        if (buffer == null) resetBuffer();
+        int length = readRecord(input);
+        if (length <= 0) return false;
+        boolean valid = parseRecord(wrapped, bufferStart, length);
+        recordPosition += length;
+        bufferStart += length;
+        return valid;
+    }
+
+    /**
+     * <p>
+     * Sends a byte array holding one or more consecutive records to
+     * the MARC parser.
+     * </p>
+     *
+     * @param data the records
+     * @param offset the position of the first record
+     * @param length the number of bytes to parse
+     */
+    public void parse(byte[] data, int offset, int length)
+    {
+        ByteBuffer buf = ByteBuffer.wrap(data, offset, length);
+        parse(buf.slice());
+    }
+
+    /**
+     * <p>
+     * Sends a <code>ByteBuffer</code> holding one or more consecutive
+     * records to the MARC parser.
+     * </p>
+     *
+     * <p>
+     * Records are parsed from the current position up to the limit of
+     * the buffer. The position of the buffer is not modified.
+     * </p>
+     *
+     * @param data the records
+     */
+    public void parse(ByteBuffer data)
+    {
+        parse(data, 0);
+    }
+
+    /**
+     * <p>
+     * Sends a <code>ByteBuffer</code> holding one or more consecutive
+     * records to the MARC parser.
+     * </p>
+     *
+     * @param data the records
+     * @param position the position of the buffer in the input, used
+     *        to report errors
+     */
+    void parse(ByteBuffer data, long position)
+    {
+        if (mh != null) mh.startCollection();
+        int pos = data.position();
+        int end = data.limit();
+        recordPosition = position;
+        long skipped = 0;
+        while (end - pos >= LDR_LENGTH) {
+            int length = recordExtent(data, pos, end);
+            if (length <= 0) return;
+            boolean valid = true;
+            if (skipped < skipRecords)
+                skipped++;
+            else
+                valid = parseRecord(data, pos, length);
+            recordPosition += length;
+            pos += length;
+            if (!valid) return;
+        }
+        if (mh != null) mh.endCollection();
+    }
+
+    /**
+     * <p>
+     * Maps a file in memory and sends it to the MARC parser.
+     * </p>
+     *
+     * <p>
+     * The file is mapped in regions, so files larger than 2 GB are
+     * supported. Records are located with the record length in the
+     * leader (positions 00-04) and the operating system page cache is
+     * used directly, without copying the data to a read buffer.
+     * </p>
+     *
+     * @param fileName the filename
+     */
+    public void parseMapped(String fileName)
+        throws IOException
+    {
+        this.fileName = fileName;
+        try (RandomAccessFile file = new RandomAccessFile(fileName, "r")) {
+            parse(file.getChannel());
+        }
+    }
+
+    /**
+     * <p>
+     * Maps the content of a file channel in memory and sends it
+     * to the MARC parser.
+     * </p>
+     *
+     * <p>
+     * Records are parsed from the current position of the channel up
+     * to the end of the file. The channel is not closed.
+     * </p>
+     *
+     * @param channel the file channel
+     * @see #parseMapped(String)
+     */
+    public void parse(FileChannel channel)
+        throws IOException
+    {
+        if (mh != null) mh.startCollection();
+        long size = channel.size();
+        long pos = channel.position();
+        long skipped = 0;
+        MappedByteBuffer region = null;
+        long regionStart = 0;
+        while (size - pos >= LDR_LENGTH) {
+            recordPosition = pos;
+            recordCounter = 0;
+            if (region == null || pos + LDR_LENGTH > regionStart + region.limit()) {
+                region = map(channel, pos, LDR_LENGTH, size);
+                regionStart = pos;
+            }
+            int length = parseNumber(region, (int)(pos - regionStart), 5);
+            if (length <= LDR_LENGTH) {
+                reportFatalError("Invalid MARC ISO 2709 file");
+                return;
+            }
+            if (size - pos < length) {
+                reportFatalError("Unexpected end of file");
+                return;
+            }
+            if (skipped < skipRecords) {
+                skipped++;
+                pos += length;
+                continue;
+            }
+            if (pos + length > regionStart + region.limit()) {
+                region = map(channel, pos, length, size);
+                regionStart = pos;
+            }
+            boolean valid = parseRecord(region, (int)(pos - regionStart), length);
+            pos += length;
+            if (!valid) return;
+        }
+        if (mh != null) mh.endCollection();
+    }
+
+    /**
+     * <p>
+     * Maps a file region of at least <code>length</code> bytes.
+     * </p>
+     */
+    private MappedByteBuffer map(FileChannel channel, long pos, int length, long size)
+        throws IOException
+    {
+        long regionLength = Math.min(Math.max(mappingSize, length), size - pos);
+        return channel.map(FileChannel.MapMode.READ_ONLY, pos, regionLength);
+    }
+
+    /**
+     * <p>
+     * Reads the next record from the stream into the read buffer.
+     * </p>
+     *
+     * <p>
+     * The record extent is calculated from the directory, as
+     * {@link MarcReader} does, so a wrong record length in the
+     * leader is reported as an error but does not break the parsing
+     * of the following records.
+     * </p>
+     *
+     * @return the record length, 0 at the end of the input
+     *         or -1 after a fatal error
+     */
+    int readRecord(InputStream input)
+        throws IOException
+    {
+        if (!fill(input, LDR_LENGTH)) return 0;
+        recordCounter = 0;
+        int baseAddress = baseAddress(wrapped, bufferStart);
+        if (baseAddress < 0) return -1;
+        if (!fill(input, baseAddress)) {
+            reportFatalError("Unexpected end of file");
+            return -1;
+        }
+        int length = baseAddress + dataLength(wrapped, bufferStart, baseAddress) + 1;
+        if (!fill(input, length)) {
+            reportFatalError("Unexpected end of file");
+            return -1;
+        }
+        return length;
+    }
+
+    /**
+     * <p>
+     * Calculates the extent of the record starting at the given
+     * position from its directory.
+     * </p>
+     *
+     * @return the record length or -1 after a fatal error
+     */
+    int recordExtent(ByteBuffer data, int start, int end)
+    {
+        recordCounter = 0;
+        int baseAddress = baseAddress(data, start);
+        if (baseAddress < 0) return -1;
+        if (end - start < baseAddress) {
+            reportFatalError("Unexpected end of file");
+            return -1;
+        }
+        int length = baseAddress + dataLength(data, start, baseAddress) + 1;
+        if (end - start < length) {
+            reportFatalError("Unexpected end of file");
+            return -1;
+        }
+        return length;
+    }
+
+    /**
+     * <p>
+     * Returns the base address of data of the record starting at
+     * the given position, reporting a fatal error if the leader is
+     * not valid.
+     * </p>
+     */
+    private int baseAddress(ByteBuffer data, int start)
+    {
+        int baseAddress = parseNumber(data, start + 12, 5);
+        if (baseAddress <= LDR_LENGTH || parseNumber(data, start, 5) <= 0) {
+            reportFatalError("Invalid MARC ISO 2709 file");
+            return -1;
+        }
+        return baseAddress;
+    }
+
+    /**
+     * <p>
+     * Returns the sum of the field lengths in the directory.
+     * </p>
+     */
+    private static int dataLength(ByteBuffer data, int start, int baseAddress)
+    {
+        int dataLength = 0;
+        int end = start + baseAddress - 1;
+        for (int p = start + LDR_LENGTH; p + DIR_ENTRY_LENGTH <= end; p += DIR_ENTRY_LENGTH) {
+            dataLength += Math.max(parseNumber(data, p + 3, 4), 0);
+        }
+        return dataLength;
+    }
+
+    /**
+     * <p>
+     * Parses one record and reports its events.
+     * </p>
+     *
+     * @param data the buffer holding the record
+     * @param start the position of the record in the buffer
+     * @param length the length of the record in bytes
+     * @return false if a fatal error stops the parsing
+     */
+    boolean parseRecord(ByteBuffer data, int start, int length)
+    {
+        recordCounter = 0;
+        controlNumber = null;
+
+        Leader leader = this.leader != null ? this.leader : new Leader();
+        try {
+            if (data.hasArray()) {
+                leader.unmarshal(data.array(), data.arrayOffset() + start);
+            } else {
+                for (int i = 0; i < LDR_LENGTH; i++) {
+                    leaderBytes[i] = data.get(start + i);
+                }
+                leader.unmarshal(leaderBytes, 0);
+            }
+        } catch (MarcException e) {
+            reportFatalError("Unable to parse leader");
+            return false;
+        }
+
+        if (leader.getBaseAddressOfData() == 0 || leader.getRecordLength() == 0) {
+            reportFatalError("Invalid MARC ISO 2709 file");
+            return false;
+        }
+        utf8 = leader.getCharCodingScheme() == UTF8;
+
+        recordCounter += LDR_LENGTH;
+
+        if (rh != null) return parseRawRecord(leader, data, start, length);
+
+        if (mh != null) mh.startRecord(leader);
+
+        int dirLength = leader.getBaseAddressOfData() - (LDR_LENGTH + 1);
+        int dirEntries = dirLength / DIR_ENTRY_LENGTH;
+        if ((dirLength % DIR_ENTRY_LENGTH) != 0) {
+            reportError("Invalid directory length");
+            return false;
+        }
+
+        ensureDirectoryCapacity(dirEntries);
+        int p = start + LDR_LENGTH;
+        for (int i = 0; i < dirEntries; i++) {
+            tags[i] = Tag.valueOf(data, p);
+            lengths[i] = parseNumber(data, p + 3, 4);
+            if (lengths[i] < 0) {
+                reportError("Invalid directory entry");
+                lengths[i] = 0;
+            }
+            p += DIR_ENTRY_LENGTH;
+            recordCounter += DIR_ENTRY_LENGTH;
+        }
+
+        if (data.get(p) != FT) reportError("Directory not terminated");
+        recordCounter++;
+        p++;
+
+        int end = start + length;
+        for (int i = 0; i < dirEntries; i++) {
+            int fieldLength = Math.min(lengths[i], end - p);
+            recordCounter += fieldLength;
+            if (filter != null && !filter.accept(tags[i])) {
+                p += fieldLength;
+                continue;
+            }
+            if (eh != null) checkFieldTerminator(data, p, fieldLength);
+            if (Tag.isControlField(tags[i])) {
+                parseControlField(tags[i], data, p, fieldLength);
+            } else {
+                parseDataField(tags[i], data, p, fieldLength);
+            }
+            p += fieldLength;
+        }
+
+        if (p >= end || data.get(p) != RT) reportError("Record not terminated");
+        recordCounter++;
+
+        if (recordCounter != leader.getRecordLength()) reportError("Record length not equal to bytes read");
+
+        if (mh != null) mh.endRecord();
+        return true;
+    }
+
+    /**
+     * <p>
+     * Parses the directory honouring the starting positions and reports
+     * the record view to the <code>RawRecordHandler</code>.
+     * </p>
+     */
+    private boolean parseRawRecord(Leader leader, ByteBuffer data, int start, int length)
+    {
+        int baseAddress = leader.getBaseAddressOfData();
+        int dirLength = baseAddress - (LDR_LENGTH + 1);
+        if ((dirLength % DIR_ENTRY_LENGTH) != 0 || baseAddress > length) {
+            reportError("Invalid directory length");
+            return false;
+        }
+
+        if (rawRecord == null) rawRecord = new RawRecord();
+        rawRecord.reset(leader, data, start, length);
+
+        int dirEntries = dirLength / DIR_ENTRY_LENGTH;
+        int p = start + LDR_LENGTH;
+        for (int i = 0; i < dirEntries; i++) {
+            String tag = Tag.valueOf(data, p);
+            int fieldLength = parseNumber(data, p + 3, 4);
+            int position = parseNumber(data, p + 7, 5);
+            if (fieldLength < 0 || position < 0 || baseAddress + position + fieldLength > length) {
+                reportError("Invalid directory entry");
+            } else if (filter == null || filter.accept(tag)) {
+                rawRecord.addEntry(tag, baseAddress + position, fieldLength);
+            }
+            p += DIR_ENTRY_LENGTH;
+            recordCounter += DIR_ENTRY_LENGTH;
+        }
+
+        if (data.get(p) != FT) reportError("Directory not terminated");
+        recordCounter = length;
+        if (data.get(start + length - 1) != RT) reportError("Record not terminated");
+
+        controlNumber = rawRecord.getControlNumber();
+        rh.record(rawRecord);
+        return true;
+    }
+
+    private void parseControlField(String tag, ByteBuffer data, int start, int length)
+    {
+        if (length < 2) {
+            reportWarning("Control Field contains no data elements for tag " + tag);
+            return;
+        }
+
+        int count = trimFT(data, start, length);
+        if (Tag.isControlNumberField(tag)) controlNumber = new String(chars, 0, count);
+
+        try {
+            if (mh != null) mh.controlField(tag, chars, 0, count, ControlField.EMPTY_ID);
+        } catch (Exception e) {
+            reportWarning("Control Field is not valid: " + tag + " - " + decode(data, start, length));
+        }
+    }
+
+    private void parseDataField(String tag, ByteBuffer data, int start, int length)
+    {
+        if (length < 4) {
+            reportWarning("Data field contains no data elements for tag " + tag);
+            return;
+        }
+
+        char ind1 = (char)(data.get(start) & 0xFF);
+        char ind2 = (char)(data.get(start + 1) & 0xFF);
+        if (mh != null) mh.startDataField(tag, ind1, ind2, DataField.EMPTY_ID);
+
+        if (data.get(start + 2) != US) reportWarning("Expected a data element identifier");
+
+        if (mh == null) return;
+
+        int count = decodeField(data, start, length);
+        String codes = filter != null ? filter.getSubfieldCodes(tag) : null;
+        char code = BLANK;
+        int dataStart = -1;
+        for (int i = 2; i < count; i++) {
+            char c = chars[i];
+            if (c == US) {
+                if (dataStart >= 0) reportSubfield(code, codes, dataStart, i - dataStart);
+                code = i + 1 < count ? chars[i + 1] : BLANK;
+                i++;
+                dataStart = i + 1;
+            } else if (c == FT) {
+                if (dataStart >= 0) reportSubfield(code, codes, dataStart, i - dataStart);
+                break;
+            }
+        }
+
+        if (mh != null) mh.endDataField(tag);
+    }
+
+    private void reportSubfield(char code, String codes, int start, int length)
+    {
+        if (codes != null && codes.indexOf(code) < 0) return;
+        if (charconv != null && !utf8) {
+            char[] converted = charconv.convert(Arrays.copyOfRange(chars, start, start + length));
+            mh.subfield(code, converted, 0, converted.length, Subfield.EMPTY_LINK_CODE);
+        } else {
+            mh.subfield(code, chars, start, length, Subfield.EMPTY_LINK_CODE);
+        }
+    }
+
+    private void checkFieldTerminator(ByteBuffer data, int start, int length)
+    {
+        int posFT = -1;
+        for (int i = start + length - 1; i >= start; i--) {
+            if (data.get(i) == FT) {
+                posFT = i;
+                break;
+            }
+        }
+        if (posFT < 0) {
+            reportError("Field not terminated");
+            return;
+        }
+        for (int i = posFT + 1; i < start + length; i++) {
+            if (data.get(i) != 0) {
+                reportError("Characters detected in field after FT");
+                return;
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Decodes the field data without field terminators into the field
+     * character buffer.
+     * </p>
+     *
+     * @return the number of decoded characters
+     */
+    private int trimFT(ByteBuffer data, int start, int length)
+    {
+        int count = decodeField(data, start, length);
+        int j = 0;
+        for (int i = 0; i < count; i++) {
+            char c = chars[i];
+            if (c != FT) chars[j++] = c;
+        }
+        return j;
+    }
+
+    /**
+     * <p>
+     * Decodes the field data into the field character buffer, as UTF-8
+     * if the leader of the current record says so and as Latin-1
+     * otherwise.
+     * </p>
+     *
+     * @return the number of decoded characters
+     */
+    private int decodeField(ByteBuffer data, int start, int length)
+    {
+        ensureCharsCapacity(length);
+        if (utf8) return decodeUtf8(data, start, length, chars);
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char)(data.get(start + i) & 0xFF);
+        }
+        return length;
+    }
+
+    /**
+     * <p>
+     * Decodes UTF-8 bytes into the given array, which must have room
+     * for as many characters as bytes. Malformed sequences are replaced
+     * by U+FFFD.
+     * </p>
+     *
+     * @return the number of decoded characters
+     */
+    static int decodeUtf8(ByteBuffer data, int start, int length, char[] chars)
+    {
+        int j = 0;
+        int i = start;
+        int end = start + length;
+        while (i < end) {
+            int b = data.get(i++);
+            if (b >= 0) {
+                chars[j++] = (char)b;
+                continue;
+            }
+            int count;
+            int codePoint;
+            if ((b & 0xE0) == 0xC0) {
+                count = 1;
+                codePoint = b & 0x1F;
+            } else if ((b & 0xF0) == 0xE0) {
+                count = 2;
+                codePoint = b & 0x0F;
+            } else if ((b & 0xF8) == 0xF0) {
+                count = 3;
+                codePoint = b & 0x07;
+            } else {
+                chars[j++] = REPLACEMENT;
+                continue;
+            }
+            int k = 0;
+            while (k < count && i < end && (data.get(i) & 0xC0) == 0x80) {
+                codePoint = (codePoint << 6) | (data.get(i++) & 0x3F);
+                k++;
+            }
+            if (k < count) {
+                chars[j++] = REPLACEMENT;
+            } else if (codePoint >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                chars[j++] = Character.highSurrogate(codePoint);
+                chars[j++] = Character.lowSurrogate(codePoint);
+            } else {
+                chars[j++] = (char)codePoint;
+            }
+        }
+        return j;
+    }
+
+    /**
+     * <p>
+     * Decodes the given bytes as Latin-1 characters.
+     * </p>
+     */
+    static char[] toChars(ByteBuffer data, int start, int length)
+    {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char)(data.get(start + i) & 0xFF);
+        }
+        return chars;
+    }
+
+    static String decode(ByteBuffer data, int start, int length)
+    {
+        return new String(toChars(data, start, length));
+    }
+
+    /**
+     * <p>
+     * Parses a fixed width number of ASCII digits.
+     * </p>
+     *
+     * @return the number or -1 if a byte is not a digit
+     */
+    static int parseNumber(ByteBuffer data, int start, int length)
+    {
+        int value = 0;
+        for (int i = start; i < start + length; i++) {
+            int digit = data.get(i) - '0';
+            if (digit < 0 || digit > 9) return -1;
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private void ensureDirectoryCapacity(int entries)
+    {
+        if (entries > tags.length) {
+            int size = Math.max(entries, tags.length * 2);
+            tags = new String[size];
+            lengths = new int[size];
+        }
+    }
+
+    private void ensureCharsCapacity(int length)
+    {
+        if (length > chars.length) chars = new char[Math.max(length, chars.length * 2)];
+    }
+
+    private void resetBuffer()
+    {
+        if (buffer == null) {
+            buffer = new byte[BUFFER_SIZE];
+            wrapped = ByteBuffer.wrap(buffer);
+        }
+        bufferStart = 0;
+        bufferEnd = 0;
+    }
+
+    /**
+     * <p>
+     * Makes sure that at least <code>count</code> bytes are available
+     * from the start of the current record in the read buffer.
+     * </p>
+     *
+     * @return false if the input ends before
+     */
+    private boolean fill(InputStream input, int count)
+        throws IOException
+    {
+        if (bufferEnd - bufferStart >= count) return true;
+        if (count > buffer.length - bufferStart) {
+            byte[] target = buffer;
+            if (count > buffer.length) {
+                target = new byte[Math.max(count, buffer.length * 2)];
+            }
+            System.arraycopy(buffer, bufferStart, target, 0, bufferEnd - bufferStart);
+            bufferEnd -= bufferStart;
+            bufferStart = 0;
+            if (target != buffer) {
+                buffer = target;
+                wrapped = ByteBuffer.wrap(buffer);
+            }
+        }
+        while (bufferEnd - bufferStart < count) {
+            int read = input.read(buffer, bufferEnd, buffer.length - bufferEnd);
+            if (read < 0) return false;
+            bufferEnd += read;
+        }
+        return true;
+    }
+
+    private void reportWarning(String message)
+    {
+        if (eh != null) eh.warning(newException(message));
+    }
+
+    private void reportError(String message)
+    {
+        if (eh != null) eh.error(newException(message));
+    }
+
+    private void reportFatalError(String message)
+    {
+        if (eh != null) eh.fatalError(newException(message));
+    }
+
+    /**
+     * <p>
+     * Creates the exception of an error at the current position. Since
+     * <code>MarcReaderException</code> holds an int, a position beyond
+     * 2 GB is reported as <code>Integer.MAX_VALUE</code> and the byte
+     * offset is added to the message.
+     * </p>
+     */
+    private MarcReaderException newException(String message)
+    {
+        long position = recordPosition + recordCounter;
+        if (position > Integer.MAX_VALUE) {
+            message = message + " (byte offset " + position + ")";
+            position = Integer.MAX_VALUE;
+        }
+        return new MarcReaderException(message, fileName, (int)position, controlNumber);
+    }
+
+}
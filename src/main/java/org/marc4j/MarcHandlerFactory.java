@@ -0,0 +1,50 @@
+/**
+ * Copyright (C) 2019 DIGIBÍS S.L.
+ *
+ * This file is part of MARC4J
+ *
+ * MARC4J is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * MARC4J is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with MARC4J; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.marc4j;
+
+/**
+ * <p>
+ * Creates the <code>MarcHandler</code> for each part of an input
+ * that is parsed in parallel.
+ * </p>
+ *
+ * <p>
+ * Every part reports its own collection events
+ * (<code>startCollection</code> and <code>endCollection</code>)
+ * to the handler created for it.
+ * </p>
+ *
+ * @see ParallelMarcReader
+ */
+public interface MarcHandlerFactory
+{
+
+    /**
+     * <p>
+     * Returns a new handler for the given part of the input.
+     * </p>
+     *
+     * @param part the index of the part, starting at 0
+     *        in the input order
+     * @return {@link MarcHandler} - the handler for the part
+     */
+    public abstract MarcHandler newMarcHandler(int part);
+
+}
@@ -28,7 +28,7 @@
 import java.io.Reader;
 import java.io.UnsupportedEncodingException;
 
-import org.apache.commons.lang3.StringUtils;
+import org.marc4j.helpers.MarcHandlerAdapter;
 import org.marc4j.marc.ControlField;
 import org.marc4j.marc.DataField;
 import org.marc4j.marc.Leader;
@@ -70,22 +70,34 @@
     String tag = null;
     String fileName = null;
 
-    /** The MarcHandler object. */
-    private MarcHandler mh;
+    /** The MarcHandler object, adapted to receive slices. */
+    private MarcSliceHandler mh;
 
     /** The ErrorHandler object. */
     private ErrorHandler eh;
 
+    /** The TagFilter object. */
+    private TagFilter filter;
+
+    /** The leader refilled for every record, if any. */
+    private Leader leader;
+
     /**
      * <p>
      * Registers the <code>MarcHandler</code> implementation.
      * </p>
      *
+     * <p>
+     * If the handler implements {@link MarcSliceHandler} the control
+     * fields and subfields are reported as slices of the field buffer,
+     * otherwise each one is copied into a new array.
+     * </p>
+     *
      * @param mh the {@link MarcHandler} implementation
      */
     public void setMarcHandler(MarcHandler mh)
     {
-        this.mh = mh;
+        this.mh = MarcHandlerAdapter.adapt(mh);
     }
 
     /**
@@ -100,6 +112,45 @@ public void setErrorHandler(ErrorHandler eh)
         this.eh = eh;
     }
 
+    /**
+     * <p>
+     * Registers the <code>TagFilter</code> that selects the fields
+     * and subfields to report.
+     * </p>
+     *
+     * <p>
+     * The fields that are not accepted are skipped by their directory
+     * length: they are not checked nor reported to the
+     * <code>MarcHandler</code>.
+     * </p>
+     *
+     * @param filter the {@link TagFilter}, or null to report every field
+     */
+    public void setTagFilter(TagFilter filter)
+    {
+        this.filter = filter;
+    }
+
+    /**
+     * <p>
+     * Makes the parser refill a single <code>Leader</code> instance for
+     * every record instead of creating a new one.
+     * </p>
+     *
+     * <p>
+     * The leader reported to <code>startRecord</code> is then only valid
+     * until the next record starts: a handler that keeps it, such as
+     * {@link org.marc4j.helpers.RecordBuilder}, must not be used with
+     * this option unless it clones the leader.
+     * </p>
+     *
+     * @param reuseLeader true to reuse the leader
+     */
+    public void setReuseLeader(boolean reuseLeader)
+    {
+        this.leader = reuseLeader ? new Leader() : null;
+    }
+
     /**
      * <p>
      * Sends a file to the MARC parser.
@@ -153,11 +204,11 @@ public void parse(Reader input)
         if (mh != null) mh.startCollection();
 
         // Recorre registros
+        char[] ldr = new char[LDRLENGTH];
         while (true) {
-            Leader leader = null;
+            Leader leader = this.leader != null ? this.leader : new Leader();
 
             // Lee los bytes de la cabecera. Si no los lee todos, termina de leer
-            char[] ldr = new char[LDRLENGTH];
             int charsRead = input.read(ldr);
 
             if (charsRead < LDRLENGTH) break;
@@ -170,7 +221,7 @@ public void parse(Reader input)
 
             // Compone la cabecera
             try {
-                leader = new Leader(new String(ldr));
+                leader.unmarshal(ldr, 0);
             } catch (MarcException e) {
                 if (eh != null) reportFatalError("Unable to parse leader");
                 return;
@@ -219,7 +270,7 @@ public void parse(Reader input)
                     charsRead += input.read(f, charsRead, f.length - charsRead);
 
                 recordCounter += DIRENTRYLENGTH;
-                tag[i] = new String(d);
+                tag[i] = Tag.valueOf(d, 0);
                 try {
                     length[i] = Integer.parseInt(new String(e));
                 } catch (NumberFormatException nfe) {
@@ -234,6 +285,13 @@ public void parse(Reader input)
             // Recorre las entradas del directorio
             for (int i = 0; i < dirEntries; i++) {
 
+                // Salta los campos descartados por el filtro
+                if (filter != null && !filter.accept(tag[i])) {
+                    skip(input, length[i]);
+                    recordCounter += length[i];
+                    continue;
+                }
+
                 // Lee el campo actual
                 char field[] = new char[length[i]];
                 charsRead = input.read(field);
@@ -242,15 +300,17 @@ public void parse(Reader input)
 
                 // Busca un FT por el final (al combinar caracteres por el encoding, puede devolver caracteres de m�s)
                 if (eh != null) {
-                    String sField = new String(field);
-                    int posFT = sField.lastIndexOf(FT);
+                    int posFT = field.length - 1;
+                    while (posFT >= 0 && field[posFT] != FT)
+                        posFT--;
                     if (posFT < 0) {
                         reportError("Field not terminated");
-                    } else if (posFT < (sField.length() - 1)) {
-                        String resto = sField.substring(posFT + 1);
-                        resto = StringUtils.replaceChars(resto, "\0", "");
-                        if (resto.length() > 0) {
-                            reportError("Characters detected in field after FT");
+                    } else {
+                        for (int j = posFT + 1; j < field.length; j++) {
+                            if (field[j] != '\0') {
+                                reportError("Characters detected in field after FT");
+                                break;
+                            }
                         }
                     }
                 }
@@ -293,12 +353,24 @@ private void parseControlField(String tag, char[] field)
             return;
         }
 
+        // Descarta el FT final; si hay otros FT dentro del campo, los elimina con una copia
+        char[] data = field;
+        int length = field.length;
+        if (data[length - 1] == FT) length--;
+        for (int i = 0; i < length; i++) {
+            if (data[i] == FT) {
+                data = trimFT(field);
+                length = data.length;
+                break;
+            }
+        }
+
         // Si el c�digo es de control, lo anota
-        if (Tag.isControlNumberField(tag)) setControlNumber(trimFT(field));
+        if (Tag.isControlNumberField(tag)) setControlNumber(data, length);
 
         // Parsea el campo de control
         try {
-            if (mh != null) mh.controlField(tag, trimFT(field), ControlField.EMPTY_ID);
+            if (mh != null) mh.controlField(tag, data, 0, length, ControlField.EMPTY_ID);
         } catch (Exception e) {
             if (eh != null) reportWarning("Control Field is not valid: " + tag + " - " + new String(field));
         }
@@ -311,8 +383,10 @@ private void parseDataField(String tag, char[] field)
         char ind1 = BLANK;
         char ind2 = BLANK;
         char code = BLANK;
+        String codes = filter != null ? filter.getSubfieldCodes(tag) : null;
 
-        StringBuffer data = null;
+        // Inicio del subcampo actual en el buffer del campo, -1 si no hay ninguno
+        int start = -1;
 
         // Si el tama�o del campo es demasiado peque�o, reporta advertencia y sale
         if (field.length < 4) {
@@ -335,25 +409,36 @@ private void parseDataField(String tag, char[] field)
                 char c = field[i];
                 switch (c) {
                     case US:
-                        if (data != null) reportSubfield(code, data);
+                        if (start >= 0) reportSubfield(code, codes, field, start, i - start);
                         code = field[i + 1];
                         i++;
-                        data = new StringBuffer();
+                        start = i + 1;
                         break;
                     case FT:
-                        if (data != null) reportSubfield(code, data);
+                        if (start >= 0) reportSubfield(code, codes, field, start, i - start);
+                        start = -1;
+                        i = field.length;
                         break;
-                    default:
-                        if (data != null) data.append(c);
                 }
             }
             if (mh != null) mh.endDataField(tag);
         }
     }
 
-    private void reportSubfield(char code, StringBuffer data)
+    private void reportSubfield(char code, String codes, char[] field, int start, int length)
     {
-        if (mh != null) mh.subfield(code, new String(data).toCharArray(), Subfield.EMPTY_LINK_CODE);
+        if (codes != null && codes.indexOf(code) < 0) return;
+        if (mh != null) mh.subfield(code, field, start, length, Subfield.EMPTY_LINK_CODE);
+    }
+
+    private static void skip(Reader input, long length)
+        throws IOException
+    {
+        while (length > 0) {
+            long skipped = input.skip(length);
+            if (skipped <= 0) break;
+            length -= skipped;
+        }
     }
 
     private void reportWarning(String message)
@@ -376,9 +461,9 @@ private void reportFatalError(String message)
     // this.controlNumber = controlNumber;
     // }
 
-    private void setControlNumber(char[] controlNumber)
+    private void setControlNumber(char[] controlNumber, int length)
     {
-        this.controlNumber = new String(controlNumber);
+        this.controlNumber = new String(controlNumber, 0, length);
     }
 
     private void setFileName(String fileName)
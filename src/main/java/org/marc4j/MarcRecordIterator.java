@@ -0,0 +1,232 @@
+/**
+ * Copyright (C) 2019 DIGIBÍS S.L.
+ *
+ * This file is part of MARC4J
+ *
+ * MARC4J is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * MARC4J is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with MARC4J; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.marc4j;
+
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.marc4j.helpers.RecordBuilder;
+import org.marc4j.helpers.RecordHandler;
+import org.marc4j.marc.MarcException;
+import org.marc4j.marc.Record;
+import org.marc4j.util.CharacterConverter;
+
+/**
+ * <p>
+ * Reads MARC records (ISO 2709) one by one from an input stream.
+ * </p>
+ *
+ * <p>
+ * This is a pull alternative to the <code>MarcHandler</code> callbacks:
+ * records are parsed with a {@link MarcByteReader} and assembled by a
+ * {@link RecordBuilder} only when {@link #hasNext()} or {@link #next()}
+ * is called, in the calling thread. Only the current record is held in
+ * memory.
+ * </p>
+ *
+ * <pre>
+ * try (MarcRecordIterator records = new MarcRecordIterator(new FileInputStream(file))) {
+ *     while (records.hasNext()) {
+ *         Record record = records.next();
+ *         ...
+ *     }
+ * }
+ * </pre>
+ *
+ * <p>
+ * <b>Note:</b> an <code>IOException</code> while reading is thrown
+ * as a {@link MarcException}.
+ * </p>
+ *
+ * @see MarcByteReader
+ * @see RecordBuilder
+ */
+public class MarcRecordIterator
+    implements Iterator<Record>, Closeable
+{
+
+    /** The input stream */
+    private final InputStream input;
+
+    /** The parser */
+    private final MarcByteReader reader = new MarcByteReader();
+
+    /** The next record, if it has been read */
+    private Record next;
+
+    /** True at the end of the input */
+    private boolean finished = false;
+
+    /**
+     * <p>
+     * Creates a new instance for the given file.
+     * </p>
+     *
+     * @param fileName the filename
+     */
+    public MarcRecordIterator(String fileName)
+        throws IOException
+    {
+        this(new FileInputStream(fileName));
+        reader.setFileName(fileName);
+    }
+
+    /**
+     * <p>
+     * Creates a new instance for the given input stream.
+     * </p>
+     *
+     * @param input the input stream
+     */
+    public MarcRecordIterator(InputStream input)
+    {
+        this.input = input;
+        RecordBuilder builder = new RecordBuilder();
+        builder.setRecordHandler(new RecordHandler() {
+            @Override
+            public void startCollection()
+            {
+            }
+
+            @Override
+            public void record(Record record)
+            {
+                next = record;
+            }
+
+            @Override
+            public void endCollection()
+            {
+            }
+        });
+        reader.setMarcHandler(builder);
+    }
+
+    /**
+     * <p>
+     * Registers the <code>ErrorHandler</code> implementation.
+     * </p>
+     *
+     * @param eh the {@link ErrorHandler} implementation
+     */
+    public void setErrorHandler(ErrorHandler eh)
+    {
+        reader.setErrorHandler(eh);
+    }
+
+    /**
+     * <p>
+     * Registers the <code>CharacterConverter</code> applied to the
+     * records that are not encoded in UTF-8.
+     * </p>
+     *
+     * @param charconv the {@link CharacterConverter}, or null
+     * @see MarcByteReader#setCharacterConverter(CharacterConverter)
+     */
+    public void setCharacterConverter(CharacterConverter charconv)
+    {
+        reader.setCharacterConverter(charconv);
+    }
+
+    /**
+     * <p>
+     * Registers the <code>TagFilter</code> that selects the fields
+     * and subfields of the records.
+     * </p>
+     *
+     * @param filter the {@link TagFilter}, or null to keep every field
+     */
+    public void setTagFilter(TagFilter filter)
+    {
+        reader.setTagFilter(filter);
+    }
+
+    /**
+     * <p>
+     * Returns true if there is another record in the input. Reads
+     * the next record if needed.
+     * </p>
+     *
+     * @return <code>boolean</code> - true if there is another record
+     */
+    @Override
+    public boolean hasNext()
+    {
+        if (next == null && !finished) {
+            try {
+                if (!reader.parseNext(input)) {
+                    finished = true;
+                    next = null;
+                }
+            } catch (IOException e) {
+                finished = true;
+                throw new MarcException("Unable to read the next record", e);
+            }
+        }
+        return next != null;
+    }
+
+    /**
+     * <p>
+     * Returns the next record.
+     * </p>
+     *
+     * @return {@link Record} - the next record
+     * @throws NoSuchElementException if there are no more records
+     */
+    @Override
+    public Record next()
+    {
+        if (!hasNext()) throw new NoSuchElementException();
+        Record record = next;
+        next = null;
+        return record;
+    }
+
+    /**
+     * <p>
+     * Not supported.
+     * </p>
+     */
+    @Override
+    public void remove()
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * <p>
+     * Closes the input stream.
+     * </p>
+     */
+    @Override
+    public void close()
+        throws IOException
+    {
+        finished = true;
+        next = null;
+        input.close();
+    }
+
+}
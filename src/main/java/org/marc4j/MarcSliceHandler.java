@@ -0,0 +1,74 @@
+/**
+ * Copyright (C) 2019 DIGIBÍS S.L.
+ *
+ * This file is part of MARC4J
+ *
+ * MARC4J is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * MARC4J is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with MARC4J; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.marc4j;
+
+/**
+ * <p>
+ * Extends <code>MarcHandler</code> with callbacks that receive the
+ * data as a slice of a character buffer.
+ * </p>
+ *
+ * <p>
+ * The parsers call these methods instead of the <code>char[]</code>
+ * ones when the handler implements this interface, passing slices of
+ * the buffer they already hold for the current field, so no copy is
+ * made for each control field or subfield. The buffer is reused: an
+ * implementation must copy the characters it wants to keep.
+ * </p>
+ *
+ * <p>
+ * Plain <code>MarcHandler</code> implementations keep working through
+ * {@link org.marc4j.helpers.MarcHandlerAdapter}.
+ * </p>
+ *
+ * @see MarcReader
+ * @see MarcByteReader
+ */
+public interface MarcSliceHandler
+    extends MarcHandler
+{
+
+    /**
+     * <p>
+     * Receives notification of a control field.
+     * </p>
+     *
+     * @param tag the tag name
+     * @param buf the buffer holding the control field data
+     * @param offset the position of the data in the buffer
+     * @param length the number of characters of the data
+     * @param id the field id if exists.
+     */
+    public abstract void controlField(String tag, char[] buf, int offset, int length, Long id);
+
+    /**
+     * <p>
+     * Receives notification of a data element (subfield).
+     * </p>
+     *
+     * @param code the data element identifier
+     * @param buf the buffer holding the data element
+     * @param offset the position of the data element in the buffer
+     * @param length the number of characters of the data element
+     * @param linkCode a code if the subfield has a link with another Record
+     */
+    public abstract void subfield(char code, char[] buf, int offset, int length, String linkCode);
+
+}
@@ -0,0 +1,450 @@
+/**
+ * Copyright (C) 2019 DIGIBÍS S.L.
+ *
+ * This file is part of MARC4J
+ *
+ * MARC4J is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * MARC4J is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with MARC4J; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.marc4j;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import org.marc4j.helpers.RecordBuilder;
+import org.marc4j.helpers.RecordHandler;
+import org.marc4j.marc.MarcConstants;
+import org.marc4j.marc.MarcException;
+import org.marc4j.marc.Record;
+
+/**
+ * <p>
+ * Parses a single MARC file (ISO 2709) in parallel.
+ * </p>
+ *
+ * <p>
+ * The file is split in byte ranges aligned on record terminators and
+ * every range is parsed by its own {@link MarcByteReader} on a
+ * <code>ForkJoinPool</code>. Events can be reported to a handler per
+ * range, created by a {@link MarcHandlerFactory}, or the records can be
+ * merged into a single {@link RecordHandler}, optionally in the order
+ * of the file.
+ * </p>
+ *
+ * <p>
+ * <b>Note:</b> the <code>ErrorHandler</code> is shared by all the
+ * workers, so it must be thread safe.
+ * </p>
+ *
+ * @see MarcByteReader
+ */
+public class ParallelMarcReader
+{
+
+    /** The record terminator */
+    private static final int RT = MarcConstants.RT;
+
+    /** Default size of the byte ranges */
+    private static final long SPLIT_SIZE = 32L * 1024 * 1024;
+
+    /** Maximum size of the byte ranges, so that they can be mapped */
+    private static final long MAX_SPLIT_SIZE = 1024L * 1024 * 1024;
+
+    /** Bytes read at a time when looking for a record terminator */
+    private static final int SCAN_SIZE = 8192;
+
+    /** Number of worker threads */
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    /** Maximum size of each byte range */
+    private long splitSize = SPLIT_SIZE;
+
+    /** The ErrorHandler object. */
+    private ErrorHandler eh;
+
+    /** The TagFilter object. */
+    private TagFilter filter;
+
+    /**
+     * <p>
+     * Registers the <code>ErrorHandler</code> implementation. It is
+     * shared by all the workers.
+     * </p>
+     *
+     * @param eh the {@link ErrorHandler} implementation
+     */
+    public void setErrorHandler(ErrorHandler eh)
+    {
+        this.eh = eh;
+    }
+
+    /**
+     * <p>
+     * Sets the number of worker threads. The default is the number
+     * of available processors.
+     * </p>
+     *
+     * @param parallelism the number of threads
+     */
+    public void setParallelism(int parallelism)
+    {
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * <p>
+     * Sets the maximum size of each byte range. The default is 32 MB
+     * and the size is limited to 1 GB.
+     * </p>
+     *
+     * <p>
+     * Smaller ranges balance the work better and, when the records are
+     * merged in order, reduce the number of records held in memory.
+     * </p>
+     *
+     * @param splitSize the size in bytes
+     */
+    public void setSplitSize(long splitSize)
+    {
+        this.splitSize = splitSize;
+    }
+
+    /**
+     * <p>
+     * Registers the <code>TagFilter</code> that selects the fields
+     * and subfields to report. It is shared by all the workers.
+     * </p>
+     *
+     * @param filter the {@link TagFilter}, or null to report every field
+     */
+    public void setTagFilter(TagFilter filter)
+    {
+        this.filter = filter;
+    }
+
+    /**
+     * <p>
+     * Parses a file reporting the events of each byte range to its
+     * own <code>MarcHandler</code>.
+     * </p>
+     *
+     * @param fileName the filename
+     * @param factory creates the handler for each range
+     */
+    public void parse(String fileName, final MarcHandlerFactory factory)
+        throws IOException
+    {
+        try (RandomAccessFile file = new RandomAccessFile(fileName, "r")) {
+            final FileChannel channel = file.getChannel();
+            long[] bounds = split(channel);
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (int i = 0; i < bounds.length - 1; i++) {
+                tasks.add(new RangeTask(fileName, channel, i, bounds[i], bounds[i + 1]) {
+                    @Override
+                    MarcHandler newMarcHandler()
+                    {
+                        return factory.newMarcHandler(part);
+                    }
+                });
+            }
+            invokeAll(tasks);
+        }
+    }
+
+    /**
+     * <p>
+     * Parses a file and reports all the records to a single
+     * <code>RecordHandler</code>.
+     * </p>
+     *
+     * <p>
+     * Calls to the handler are serialized. If <code>ordered</code> is
+     * true, the records are reported in the order of the file: the
+     * records of a range that is parsed before the ranges that precede
+     * it are held in memory until those are reported.
+     * </p>
+     *
+     * @param fileName the filename
+     * @param handler the record handler
+     * @param ordered true to report the records in the order of the file
+     */
+    public void parse(String fileName, RecordHandler handler, boolean ordered)
+        throws IOException
+    {
+        try (RandomAccessFile file = new RandomAccessFile(fileName, "r")) {
+            FileChannel channel = file.getChannel();
+            long[] bounds = split(channel);
+            final RecordMerger merger = new RecordMerger(handler, bounds.length - 1, ordered);
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (int i = 0; i < bounds.length - 1; i++) {
+                tasks.add(new RangeTask(fileName, channel, i, bounds[i], bounds[i + 1]) {
+                    @Override
+                    MarcHandler newMarcHandler()
+                    {
+                        RecordBuilder builder = new RecordBuilder();
+                        builder.setRecordHandler(merger.newRangeHandler(part));
+                        return builder;
+                    }
+
+                    @Override
+                    void finish()
+                    {
+                        merger.complete(part);
+                    }
+                });
+            }
+            handler.startCollection();
+            invokeAll(tasks);
+            handler.endCollection();
+        }
+    }
+
+    /**
+     * <p>
+     * Splits the file in byte ranges. Every range but the first one
+     * starts right after a record terminator.
+     * </p>
+     *
+     * @return the bounds of the ranges
+     */
+    long[] split(FileChannel channel)
+        throws IOException
+    {
+        long size = channel.size();
+        long maxSize = Math.max(Math.min(splitSize, MAX_SPLIT_SIZE), 1);
+        int parts = (int)Math.max(Math.max(parallelism, 1), (size + maxSize - 1) / maxSize);
+        long partSize = Math.max(size / parts, 1);
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(0L);
+        long previous = 0;
+        for (int i = 1; i < parts; i++) {
+            long bound = nextRecordStart(channel, Math.max(i * partSize, previous), size);
+            if (bound >= size) break;
+            if (bound > previous) {
+                bounds.add(bound);
+                previous = bound;
+            }
+        }
+        bounds.add(size);
+        long[] result = new long[bounds.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = bounds.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * <p>
+     * Returns the position after the first record terminator found
+     * from the given position that is followed by a record length.
+     * </p>
+     */
+    private static long nextRecordStart(FileChannel channel, long from, long size)
+        throws IOException
+    {
+        ByteBuffer buf = ByteBuffer.allocate(SCAN_SIZE);
+        long pos = from;
+        while (pos < size) {
+            buf.clear();
+            int read = channel.read(buf, pos);
+            if (read <= 0) break;
+            for (int i = 0; i < read; i++) {
+                if (buf.get(i) == RT && isRecordStart(channel, pos + i + 1, size)) {
+                    return pos + i + 1;
+                }
+            }
+            pos += read;
+        }
+        return size;
+    }
+
+    private static boolean isRecordStart(FileChannel channel, long pos, long size)
+        throws IOException
+    {
+        if (pos == size) return true;
+        ByteBuffer buf = ByteBuffer.allocate(5);
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, pos + buf.position()) <= 0) return false;
+        }
+        return MarcByteReader.parseNumber(buf, 0, 5) > 0;
+    }
+
+    private void invokeAll(List<Callable<Void>> tasks)
+        throws IOException
+    {
+        ForkJoinPool pool = new ForkJoinPool(Math.max(parallelism, 1));
+        try {
+            for (Future<Void> future : pool.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MarcException("Parsing interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException)cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException)cause;
+            if (cause instanceof Error) throw (Error)cause;
+            throw new MarcException("Unable to parse the file", cause);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * <p>
+     * Parses one byte range of the file.
+     * </p>
+     */
+    private abstract class RangeTask
+        implements Callable<Void>
+    {
+
+        private final String fileName;
+        private final FileChannel channel;
+        private final long start;
+        private final long end;
+        final int part;
+
+        RangeTask(String fileName, FileChannel channel, int part, long start, long end)
+        {
+            this.fileName = fileName;
+            this.channel = channel;
+            this.part = part;
+            this.start = start;
+            this.end = end;
+        }
+
+        /**
+         * <p>
+         * Returns the handler for the range.
+         * </p>
+         */
+        abstract MarcHandler newMarcHandler();
+
+        /**
+         * <p>
+         * Called when the range has been parsed, even after
+         * a fatal error.
+         * </p>
+         */
+        void finish()
+        {
+        }
+
+        @Override
+        public Void call()
+            throws IOException
+        {
+            try {
+                ByteBuffer range = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+                MarcByteReader reader = new MarcByteReader();
+                reader.setFileName(fileName);
+                reader.setMarcHandler(newMarcHandler());
+                reader.setErrorHandler(eh);
+                reader.setTagFilter(filter);
+                reader.parse(range, start);
+            } finally {
+                finish();
+            }
+            return null;
+        }
+    }
+
+    /**
+     * <p>
+     * Serializes the records of all the ranges to a single
+     * <code>RecordHandler</code>, optionally in the order of the ranges.
+     * </p>
+     */
+    private static class RecordMerger
+    {
+
+        private final RecordHandler handler;
+        private final boolean ordered;
+
+        /** Records of the ranges that are ahead of the current one */
+        private final List<List<Record>> pending;
+
+        /** Completed ranges */
+        private final boolean[] done;
+
+        /** The range whose records are reported directly */
+        private int current = 0;
+
+        RecordMerger(RecordHandler handler, int parts, boolean ordered)
+        {
+            this.handler = handler;
+            this.ordered = ordered;
+            this.pending = new ArrayList<>(parts);
+            for (int i = 0; i < parts; i++) {
+                pending.add(new ArrayList<Record>());
+            }
+            this.done = new boolean[parts];
+        }
+
+        RecordHandler newRangeHandler(final int part)
+        {
+            return new RecordHandler() {
+                @Override
+                public void startCollection()
+                {
+                }
+
+                @Override
+                public void record(Record record)
+                {
+                    add(part, record);
+                }
+
+                @Override
+                public void endCollection()
+                {
+                }
+            };
+        }
+
+        synchronized void add(int part, Record record)
+        {
+            if (!ordered || part == current) {
+                handler.record(record);
+            } else {
+                pending.get(part).add(record);
+            }
+        }
+
+        synchronized void complete(int part)
+        {
+            done[part] = true;
+            while (ordered && current < done.length && done[current]) {
+                current++;
+                if (current < done.length) {
+                    for (Record record : pending.get(current)) {
+                        handler.record(record);
+                    }
+                    pending.get(current).clear();
+                }
+            }
+        }
+    }
+
+}
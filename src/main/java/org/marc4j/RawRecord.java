@@ -0,0 +1,451 @@
+/**
+ * Copyright (C) 2019 DIGIBÍS S.L.
+ *
+ * This file is part of MARC4J
+ *
+ * MARC4J is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * MARC4J is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with MARC4J; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.marc4j;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.marc4j.marc.ControlField;
+import org.marc4j.marc.DataField;
+import org.marc4j.marc.Leader;
+import org.marc4j.marc.MarcConstants;
+import org.marc4j.marc.Record;
+import org.marc4j.marc.Subfield;
+import org.marc4j.marc.Tag;
+import org.marc4j.marc.VariableField;
+
+/**
+ * <p>
+ * A view of a MARC record (ISO 2709) that keeps the raw bytes and the
+ * parsed directory, so each field can be located through its starting
+ * position and decoded on demand, in any order, without decoding the
+ * fields before it.
+ * </p>
+ *
+ * <p>
+ * Instances are created by {@link MarcByteReader} and reported to the
+ * {@link RawRecordHandler}. The reader reuses the view and its buffer
+ * for the next record: call {@link #copy()} or {@link #toRecord()} to
+ * keep a record after the handler returns.
+ * </p>
+ *
+ * <p>
+ * Field data is decoded as UTF-8 when the leader position 09 is 'a' and
+ * as Latin-1 otherwise; no <code>CharacterConverter</code> is applied.
+ * </p>
+ *
+ * @see MarcByteReader#setRawRecordHandler(RawRecordHandler)
+ */
+public class RawRecord
+{
+
+    /** The field terminator */
+    private static final int FT = MarcConstants.FT;
+
+    /** The data element identifier */
+    private static final int US = MarcConstants.US;
+
+    /** The blank character */
+    private static final char BLANK = (char)MarcConstants.BLANK;
+
+    /** The leader of the record. */
+    private Leader leader;
+
+    /** The buffer holding the record. */
+    private ByteBuffer data;
+
+    /** Position of the record in the buffer. */
+    private int start;
+
+    /** Length of the record in bytes. */
+    private int length;
+
+    /** Number of directory entries. */
+    private int count;
+
+    /** Directory tags. */
+    private String[] tags;
+
+    /** Directory field lengths. */
+    private int[] lengths;
+
+    /** Field positions relative to the start of the record. */
+    private int[] starts;
+
+    RawRecord()
+    {
+        this(64);
+    }
+
+    private RawRecord(int capacity)
+    {
+        tags = new String[capacity];
+        lengths = new int[capacity];
+        starts = new int[capacity];
+    }
+
+    /**
+     * <p>
+     * Points the view to a new record, discarding the directory.
+     * </p>
+     */
+    void reset(Leader leader, ByteBuffer data, int start, int length)
+    {
+        this.leader = leader;
+        this.data = data;
+        this.start = start;
+        this.length = length;
+        this.count = 0;
+    }
+
+    /**
+     * <p>
+     * Adds a directory entry.
+     * </p>
+     *
+     * @param tag the tag name
+     * @param position the position of the field relative to the start
+     *        of the record
+     * @param fieldLength the length of the field, including the field
+     *        terminator
+     */
+    void addEntry(String tag, int position, int fieldLength)
+    {
+        if (count == tags.length) {
+            int size = count * 2;
+            tags = Arrays.copyOf(tags, size);
+            lengths = Arrays.copyOf(lengths, size);
+            starts = Arrays.copyOf(starts, size);
+        }
+        tags[count] = tag;
+        starts[count] = position;
+        lengths[count] = fieldLength;
+        count++;
+    }
+
+    /**
+     * <p>
+     * Returns the leader.
+     * </p>
+     *
+     * @return {@link Leader} - the leader
+     */
+    public Leader getLeader()
+    {
+        return leader;
+    }
+
+    /**
+     * <p>
+     * Returns the length of the record in bytes.
+     * </p>
+     *
+     * @return <code>int</code> - the record length
+     */
+    public int getLength()
+    {
+        return length;
+    }
+
+    /**
+     * <p>
+     * Returns the number of fields in the directory.
+     * </p>
+     *
+     * @return <code>int</code> - the number of fields
+     */
+    public int getFieldCount()
+    {
+        return count;
+    }
+
+    /**
+     * <p>
+     * Returns the tag of the field at the given directory index.
+     * </p>
+     *
+     * @param index the directory index
+     * @return {@link String} - the tag name
+     */
+    public String getTag(int index)
+    {
+        checkIndex(index);
+        return tags[index];
+    }
+
+    /**
+     * <p>
+     * Returns the directory index of the first field with the given tag.
+     * </p>
+     *
+     * @param tag the tag name
+     * @return <code>int</code> - the directory index or -1 if there
+     *         is no such field
+     */
+    public int indexOf(String tag)
+    {
+        return indexOf(tag, 0);
+    }
+
+    /**
+     * <p>
+     * Returns the directory index of the first field with the given tag,
+     * starting the search at the given index.
+     * </p>
+     *
+     * @param tag the tag name
+     * @param fromIndex the index to start the search from
+     * @return <code>int</code> - the directory index or -1 if there
+     *         is no such field
+     */
+    public int indexOf(String tag, int fromIndex)
+    {
+        for (int i = Math.max(fromIndex, 0); i < count; i++) {
+            if (tags[i].equals(tag)) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * <p>
+     * Returns true if the directory has a field with the given tag.
+     * </p>
+     *
+     * @param tag the tag name
+     * @return <code>boolean</code> - true if there is such a field
+     */
+    public boolean hasField(String tag)
+    {
+        return indexOf(tag) >= 0;
+    }
+
+    /**
+     * <p>
+     * Returns the control number (tag 001).
+     * </p>
+     *
+     * @return {@link String} - the control number or null if there
+     *         is no control number field
+     */
+    public String getControlNumber()
+    {
+        int index = indexOf("001");
+        if (index < 0) return null;
+        return new String(trimFT(start + starts[index], lengths[index]));
+    }
+
+    /**
+     * <p>
+     * Decodes the first control field with the given tag.
+     * </p>
+     *
+     * @param tag the tag name
+     * @return {@link ControlField} - the control field or null if there
+     *         is no such field
+     */
+    public ControlField getControlField(String tag)
+    {
+        int index = indexOf(tag);
+        if (index < 0) return null;
+        return decodeControlField(index);
+    }
+
+    /**
+     * <p>
+     * Decodes the first data field with the given tag.
+     * </p>
+     *
+     * @param tag the tag name
+     * @return {@link DataField} - the data field or null if there
+     *         is no such field
+     */
+    public DataField getDataField(String tag)
+    {
+        int index = indexOf(tag);
+        if (index < 0) return null;
+        return decodeDataField(index);
+    }
+
+    /**
+     * <p>
+     * Decodes all the fields with the given tag.
+     * </p>
+     *
+     * @param tag the tag name
+     * @return {@link List} - the fields in directory order
+     */
+    public List<VariableField> getVariableFields(String tag)
+    {
+        List<VariableField> fields = new ArrayList<>();
+        for (int i = indexOf(tag); i >= 0; i = indexOf(tag, i + 1)) {
+            fields.add(getVariableField(i));
+        }
+        return fields;
+    }
+
+    /**
+     * <p>
+     * Decodes the field at the given directory index.
+     * </p>
+     *
+     * @param index the directory index
+     * @return {@link VariableField} - a {@link ControlField} or a
+     *         {@link DataField}
+     */
+    public VariableField getVariableField(int index)
+    {
+        checkIndex(index);
+        if (Tag.isControlField(tags[index])) return decodeControlField(index);
+        return decodeDataField(index);
+    }
+
+    /**
+     * <p>
+     * Decodes every field and returns a new {@link Record}.
+     * </p>
+     *
+     * @return {@link Record} - the record
+     */
+    public Record toRecord()
+    {
+        Record record = new Record((Leader)leader.clone());
+        for (int i = 0; i < count; i++) {
+            if (Tag.isControlField(tags[i]))
+                record.add(decodeControlField(i));
+            else
+                record.add(decodeDataField(i));
+        }
+        return record;
+    }
+
+    /**
+     * <p>
+     * Returns a copy of this view that owns its bytes, so it stays
+     * valid after the reader moves to the next record.
+     * </p>
+     *
+     * @return {@link RawRecord} - the copy
+     */
+    public RawRecord copy()
+    {
+        byte[] bytes = new byte[length];
+        ByteBuffer source = data.duplicate();
+        source.position(start);
+        source.get(bytes);
+
+        RawRecord copy = new RawRecord(Math.max(count, 1));
+        copy.reset((Leader)leader.clone(), ByteBuffer.wrap(bytes), 0, length);
+        System.arraycopy(tags, 0, copy.tags, 0, count);
+        System.arraycopy(lengths, 0, copy.lengths, 0, count);
+        System.arraycopy(starts, 0, copy.starts, 0, count);
+        copy.count = count;
+        return copy;
+    }
+
+    private ControlField decodeControlField(int index)
+    {
+        return new ControlField(tags[index], trimFT(start + starts[index], lengths[index]), ControlField.EMPTY_ID);
+    }
+
+    private DataField decodeDataField(int index)
+    {
+        int p = start + starts[index];
+        int end = p + lengths[index];
+
+        char[] content = trimFT(p, lengths[index]);
+        if (content.length >= 2 && indexOf(content, FT) < 0) {
+            // the subfields are parsed by the field when they are requested
+            return new DataField(tags[index], content);
+        }
+
+        char ind1 = BLANK;
+        char ind2 = BLANK;
+        if (lengths[index] >= 2) {
+            ind1 = (char)(data.get(p) & 0xFF);
+            ind2 = (char)(data.get(p + 1) & 0xFF);
+        }
+        DataField field = new DataField(tags[index], ind1, ind2, DataField.EMPTY_ID);
+
+        char code = BLANK;
+        int dataStart = -1;
+        for (int i = p + 2; i < end; i++) {
+            int b = data.get(i);
+            if (b == US) {
+                if (dataStart >= 0) field.add(newSubfield(code, dataStart, i - dataStart));
+                code = i + 1 < end ? (char)(data.get(i + 1) & 0xFF) : BLANK;
+                i++;
+                dataStart = i + 1;
+            } else if (b == FT) {
+                break;
+            }
+        }
+        if (dataStart >= 0 && dataStart <= end) {
+            int dataEnd = dataStart;
+            while (dataEnd < end && data.get(dataEnd) != FT)
+                dataEnd++;
+            field.add(newSubfield(code, dataStart, dataEnd - dataStart));
+        }
+        return field;
+    }
+
+    private static int indexOf(char[] chars, int c)
+    {
+        for (int i = 0; i < chars.length; i++) {
+            if (chars[i] == c) return i;
+        }
+        return -1;
+    }
+
+    private Subfield newSubfield(char code, int position, int dataLength)
+    {
+        return new Subfield(code, toChars(position, dataLength), Subfield.EMPTY_LINK_CODE);
+    }
+
+    private char[] trimFT(int position, int fieldLength)
+    {
+        int end = position + fieldLength;
+        while (end > position && data.get(end - 1) == FT)
+            end--;
+        return toChars(position, end - position);
+    }
+
+    /**
+     * <p>
+     * Decodes field data as UTF-8 if the leader says so and as Latin-1
+     * otherwise.
+     * </p>
+     */
+    private char[] toChars(int position, int dataLength)
+    {
+        if (leader.getCharCodingScheme() != MarcByteReader.UTF8)
+            return MarcByteReader.toChars(data, position, dataLength);
+        char[] chars = new char[dataLength];
+        int count = MarcByteReader.decodeUtf8(data, position, dataLength, chars);
+        return count == dataLength ? chars : Arrays.copyOf(chars, count);
+    }
+
+    private void checkIndex(int index)
+    {
+        if (index < 0 || index >= count) throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + count);
+    }
+
+}
@@ -0,0 +1,49 @@
+/**
+ * Copyright (C) 2019 DIGIBÍS S.L.
+ *
+ * This file is part of MARC4J
+ *
+ * MARC4J is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * MARC4J is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with MARC4J; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.marc4j;
+
+/**
+ * <p>
+ * Receives the records parsed by {@link MarcByteReader} as
+ * {@link RawRecord} views, so fields are only decoded when they are
+ * requested.
+ * </p>
+ *
+ * @see MarcByteReader#setRawRecordHandler(RawRecordHandler)
+ */
+public interface RawRecordHandler
+{
+
+    /**
+     * <p>
+     * Receives notification of a record.
+     * </p>
+     *
+     * <p>
+     * The view is reused for the next record and its bytes may be
+     * overwritten once this method returns: use {@link RawRecord#copy()}
+     * or {@link RawRecord#toRecord()} to keep it.
+     * </p>
+     *
+     * @param record the record view
+     */
+    public abstract void record(RawRecord record);
+
+}
@@ -0,0 +1,51 @@
+/**
+ * Copyright (C) 2019 DIGIBÍS S.L.
+ *
+ * This file is part of MARC4J
+ *
+ * MARC4J is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * MARC4J is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with MARC4J; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.marc4j;
+
+import org.marc4j.marc.Record;
+
+/**
+ * <p>
+ * Transforms records, for instance converting the character set or
+ * normalizing the fields, in the worker threads of a
+ * {@link ConversionPipeline}.
+ * </p>
+ *
+ * <p>
+ * The same instance is called from several threads at the same time,
+ * so it must be thread safe.
+ * </p>
+ *
+ * @see ConversionPipeline
+ */
+public interface RecordProcessor
+{
+
+    /**
+     * <p>
+     * Processes a record. The record can be modified in place.
+     * </p>
+     *
+     * @param record the record
+     * @return {@link Record} - the record to write, or null to drop it
+     */
+    public abstract Record process(Record record);
+
+}
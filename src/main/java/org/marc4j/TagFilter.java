@@ -0,0 +1,150 @@
+/**
+ * Copyright (C) 2019 DIGIBÍS S.L.
+ *
+ * This file is part of MARC4J
+ *
+ * MARC4J is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * MARC4J is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with MARC4J; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.marc4j;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.marc4j.marc.Tag;
+
+/**
+ * <p>
+ * Selects the fields, and optionally the subfields, that a parser
+ * reports.
+ * </p>
+ *
+ * <p>
+ * The parsers skip the fields that are not accepted by their length,
+ * without decoding them and without reporting any event. For the
+ * accepted data fields the subfield codes can be restricted per tag.
+ * </p>
+ *
+ * <p>
+ * A filter must not be modified while it is used by a parser, but it
+ * can be shared by several parsers.
+ * </p>
+ *
+ * @see MarcReader#setTagFilter(TagFilter)
+ * @see MarcByteReader#setTagFilter(TagFilter)
+ */
+public class TagFilter
+{
+
+    /** True if the tags in the set are accepted, false if they are rejected. */
+    private final boolean include;
+
+    /** The numeric tags in the set, indexed by their value. */
+    private final boolean[] numericTags = new boolean[1000];
+
+    /** The non numeric tags in the set. */
+    private final Set<String> otherTags = new HashSet<>();
+
+    /** The accepted subfield codes by tag. */
+    private final Map<String, String> subfieldCodes = new HashMap<>();
+
+    private TagFilter(boolean include, String[] tags)
+    {
+        this.include = include;
+        for (String tag : tags) {
+            int index = Tag.indexOf(tag);
+            if (index >= 0)
+                numericTags[index] = true;
+            else
+                otherTags.add(tag);
+        }
+    }
+
+    /**
+     * <p>
+     * Returns a filter that accepts only the given tags.
+     * </p>
+     *
+     * @param tags the tags to report
+     * @return {@link TagFilter} - the filter
+     */
+    public static TagFilter include(String... tags)
+    {
+        return new TagFilter(true, tags);
+    }
+
+    /**
+     * <p>
+     * Returns a filter that accepts every tag except the given ones.
+     * </p>
+     *
+     * @param tags the tags to skip
+     * @return {@link TagFilter} - the filter
+     */
+    public static TagFilter exclude(String... tags)
+    {
+        return new TagFilter(false, tags);
+    }
+
+    /**
+     * <p>
+     * Restricts the subfields reported for a data field.
+     * </p>
+     *
+     * @param tag the tag name
+     * @param codes the data element identifiers to report,
+     *        or null to report all of them
+     * @return {@link TagFilter} - this filter
+     */
+    public TagFilter setSubfieldCodes(String tag, String codes)
+    {
+        if (codes == null)
+            subfieldCodes.remove(tag);
+        else
+            subfieldCodes.put(tag, codes);
+        return this;
+    }
+
+    /**
+     * <p>
+     * Returns true if the fields with the given tag are reported.
+     * </p>
+     *
+     * @param tag the tag name
+     * @return <code>boolean</code> - true if the field is accepted
+     */
+    public boolean accept(String tag)
+    {
+        int index = Tag.indexOf(tag);
+        boolean found = index >= 0 ? numericTags[index] : otherTags.contains(tag);
+        return found == include;
+    }
+
+    /**
+     * <p>
+     * Returns the subfield codes reported for the given tag.
+     * </p>
+     *
+     * @param tag the tag name
+     * @return {@link String} - the data element identifiers or null
+     *         if all the subfields are reported
+     */
+    public String getSubfieldCodes(String tag)
+    {
+        return subfieldCodes.isEmpty() ? null : subfieldCodes.get(tag);
+    }
+
+}
@@ -0,0 +1,144 @@
+/**
+ * Copyright (C) 2019 DIGIBÍS S.L.
+ *
+ * This file is part of MARC4J
+ *
+ * MARC4J is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * MARC4J is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with MARC4J; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.marc4j.helpers;
+
+import java.util.Arrays;
+
+import org.marc4j.MarcHandler;
+import org.marc4j.MarcSliceHandler;
+import org.marc4j.marc.Leader;
+
+/**
+ * <p>
+ * Adapts a <code>MarcHandler</code> to the <code>MarcSliceHandler</code>
+ * interface, copying every slice into a new character array.
+ * </p>
+ *
+ * @see MarcSliceHandler
+ */
+public class MarcHandlerAdapter
+    implements MarcSliceHandler
+{
+
+    /** The adapted handler */
+    private final MarcHandler handler;
+
+    /**
+     * <p>
+     * Creates a new adapter for the given handler.
+     * </p>
+     *
+     * @param handler the {@link MarcHandler} implementation
+     */
+    public MarcHandlerAdapter(MarcHandler handler)
+    {
+        this.handler = handler;
+    }
+
+    /**
+     * <p>
+     * Returns the given handler if it implements
+     * <code>MarcSliceHandler</code> or an adapter for it.
+     * </p>
+     *
+     * @param handler the {@link MarcHandler} implementation, may be null
+     * @return {@link MarcSliceHandler} - the handler, or null if the
+     *         given handler is null
+     */
+    public static MarcSliceHandler adapt(MarcHandler handler)
+    {
+        if (handler == null) return null;
+        if (handler instanceof MarcSliceHandler) return (MarcSliceHandler)handler;
+        return new MarcHandlerAdapter(handler);
+    }
+
+    /**
+     * <p>
+     * Returns the adapted handler.
+     * </p>
+     *
+     * @return {@link MarcHandler} - the adapted handler
+     */
+    public MarcHandler getHandler()
+    {
+        return handler;
+    }
+
+    @Override
+    public void startCollection()
+    {
+        handler.startCollection();
+    }
+
+    @Override
+    public void endCollection()
+    {
+        handler.endCollection();
+    }
+
+    @Override
+    public void startRecord(Leader leader)
+    {
+        handler.startRecord(leader);
+    }
+
+    @Override
+    public void endRecord()
+    {
+        handler.endRecord();
+    }
+
+    @Override
+    public void controlField(String tag, char[] data, Long id)
+    {
+        handler.controlField(tag, data, id);
+    }
+
+    @Override
+    public void controlField(String tag, char[] buf, int offset, int length, Long id)
+    {
+        handler.controlField(tag, Arrays.copyOfRange(buf, offset, offset + length), id);
+    }
+
+    @Override
+    public void startDataField(String tag, char ind1, char ind2, Long id)
+    {
+        handler.startDataField(tag, ind1, ind2, id);
+    }
+
+    @Override
+    public void endDataField(String tag)
+    {
+        handler.endDataField(tag);
+    }
+
+    @Override
+    public void subfield(char code, char[] data, String linkCode)
+    {
+        handler.subfield(code, data, linkCode);
+    }
+
+    @Override
+    public void subfield(char code, char[] buf, int offset, int length, String linkCode)
+    {
+        handler.subfield(code, Arrays.copyOfRange(buf, offset, offset + length), linkCode);
+    }
+
+}
@@ -20,16 +20,21 @@
  */
 package org.marc4j.helpers;
 
-import org.marc4j.MarcHandler;
+import java.util.Arrays;
+
+import org.marc4j.MarcSliceHandler;
+import org.marc4j.marc.CompactRecord;
 import org.marc4j.marc.ControlField;
 import org.marc4j.marc.DataField;
+import org.marc4j.marc.FieldPool;
 import org.marc4j.marc.Leader;
+import org.marc4j.marc.MarcConstants;
 import org.marc4j.marc.Record;
 import org.marc4j.marc.Subfield;
 
 /**
  * <p>
- * Creates record objects from <code>MarcHandler</code> events and reports
+ * Creates record objects from <code>MarcSliceHandler</code> events and reports
  * events to the <code>RecordHandler</code>.
  * </p>
  *
@@ -39,7 +44,7 @@
  * @see RecordHandler
  */
 public class RecordBuilder
-    implements MarcHandler
+    implements MarcSliceHandler
 {
 
     /** The RecordHandler object. */
@@ -51,6 +56,21 @@
     /** Data field object */
     private DataField datafield;
 
+    /** The builder of compact records, null to build ordinary records */
+    private CompactRecord.Builder compact;
+
+    /** The raw content of the current data field, null to create subfields */
+    private char[] content;
+
+    /** The length of the raw content */
+    private int contentLength;
+
+    /** The id of the current data field */
+    private Long id;
+
+    /** The pool of recycled objects, null to create new objects */
+    private FieldPool pool;
+
     /**
      * <p>
      * Registers the <code>RecordHandler</code> object.
@@ -63,6 +83,68 @@ public void setRecordHandler(RecordHandler recordHandler)
         this.recordHandler = recordHandler;
     }
 
+    /**
+     * <p>
+     * Sets whether {@link CompactRecord} objects are created instead of
+     * ordinary records.
+     * </p>
+     *
+     * <p>
+     * The data of the fields is copied from the slices reported by the
+     * reader into the buffer of the record, so no field objects are
+     * created. Field ids and link codes are not kept. Compact records can
+     * be built with a reader that reuses the leader.
+     * </p>
+     *
+     * @param compact true to create compact records
+     */
+    public void setCompact(boolean compact)
+    {
+        this.compact = compact ? new CompactRecord.Builder() : null;
+    }
+
+    /**
+     * <p>
+     * Sets whether data fields keep their raw content instead of
+     * creating {@link Subfield} objects.
+     * </p>
+     *
+     * <p>
+     * The content is parsed by each field the first time its subfields
+     * are requested, so fields that are only written again are never
+     * parsed. Link codes are not kept.
+     * </p>
+     *
+     * @param lazy true to create data fields from their raw content
+     */
+    public void setLazySubfields(boolean lazy)
+    {
+        this.content = lazy ? new char[256] : null;
+    }
+
+    /**
+     * <p>
+     * Sets whether the same record object, and the same field and
+     * subfield objects, are used again for each record.
+     * </p>
+     *
+     * <p>
+     * <b>Note:</b> the record reported to the <code>RecordHandler</code>
+     * is only valid until <code>record()</code> returns. The handler must
+     * copy anything it keeps, for instance with <code>clone()</code>,
+     * and must not keep the record, its fields, subfields or the arrays
+     * returned by <code>getData()</code>. Compact records and data
+     * fields with raw content are not recycled.
+     * </p>
+     *
+     * @param reuse true to recycle the record objects
+     * @see FieldPool
+     */
+    public void setReuseRecords(boolean reuse)
+    {
+        this.pool = reuse ? new FieldPool() : null;
+    }
+
     /**
      * <p>
      * Reports the start of the file.
@@ -80,6 +162,15 @@ public void startCollection()
      */
     public void startRecord(Leader leader)
     {
+        if (compact != null) {
+            compact.startRecord(leader);
+            return;
+        }
+        if (pool != null) {
+            pool.reset();
+            this.record = pool.record(leader);
+            return;
+        }
         this.record = new Record();
         record.add(leader);
     }
@@ -92,7 +183,28 @@ public void startRecord(Leader leader)
     @Override
     public void controlField(String tag, char[] data, Long id)
     {
-        record.add(new ControlField(tag, data, id));
+        if (compact != null)
+            compact.controlField(tag, data, 0, data.length);
+        else if (pool != null)
+            record.add(pool.controlField(tag, data, 0, data.length, id));
+        else
+            record.add(new ControlField(tag, data, id));
+    }
+
+    /**
+     * <p>
+     * Adds a control field to the record object, copying the slice.
+     * </p>
+     */
+    @Override
+    public void controlField(String tag, char[] buf, int offset, int length, Long id)
+    {
+        if (compact != null)
+            compact.controlField(tag, buf, offset, length);
+        else if (pool != null)
+            record.add(pool.controlField(tag, buf, offset, length, id));
+        else
+            controlField(tag, Arrays.copyOfRange(buf, offset, offset + length), id);
     }
 
     /**
@@ -103,7 +215,18 @@ public void controlField(String tag, char[] data, Long id)
     @Override
     public void startDataField(String tag, char ind1, char ind2, Long id)
     {
-        datafield = new DataField(tag, ind1, ind2, id);
+        if (compact != null) {
+            compact.startDataField(ind1, ind2);
+        } else if (content != null) {
+            content[0] = ind1;
+            content[1] = ind2;
+            contentLength = 2;
+            this.id = id;
+        } else if (pool != null) {
+            datafield = pool.dataField(tag, ind1, ind2, id);
+        } else {
+            datafield = new DataField(tag, ind1, ind2, id);
+        }
     }
 
     /**
@@ -114,7 +237,35 @@ public void startDataField(String tag, char ind1, char ind2, Long id)
     @Override
     public void subfield(char identifier, char[] data, String linkCode)
     {
-        datafield.add(new Subfield(identifier, data, linkCode));
+        if (compact != null || content != null || pool != null)
+            subfield(identifier, data, 0, data.length, linkCode);
+        else
+            datafield.add(new Subfield(identifier, data, linkCode));
+    }
+
+    /**
+     * <p>
+     * Adds a subfield to the data field, copying the slice.
+     * </p>
+     */
+    @Override
+    public void subfield(char identifier, char[] buf, int offset, int length, String linkCode)
+    {
+        if (compact != null) {
+            compact.subfield(identifier, buf, offset, length);
+        } else if (content != null) {
+            if (contentLength + length + 2 > content.length) {
+                content = Arrays.copyOf(content, Math.max(contentLength + length + 2, content.length * 2));
+            }
+            content[contentLength++] = MarcConstants.US;
+            content[contentLength++] = identifier;
+            System.arraycopy(buf, offset, content, contentLength, length);
+            contentLength += length;
+        } else if (pool != null) {
+            datafield.add(pool.subfield(identifier, buf, offset, length, linkCode));
+        } else {
+            subfield(identifier, Arrays.copyOfRange(buf, offset, offset + length), linkCode);
+        }
     }
 
     /**
@@ -124,7 +275,15 @@ public void subfield(char identifier, char[] data, String linkCode)
      */
     public void endDataField(String tag)
     {
-        record.add(datafield);
+        if (compact != null) {
+            compact.endDataField(tag);
+        } else if (content != null) {
+            DataField field = new DataField(tag, Arrays.copyOf(content, contentLength));
+            field.setId(id);
+            record.add(field);
+        } else {
+            record.add(datafield);
+        }
     }
 
     /**
@@ -134,6 +293,7 @@ public void endDataField(String tag)
      */
     public void endRecord()
     {
+        if (compact != null) record = compact.build();
         if (recordHandler != null) recordHandler.record(record);
     }
 
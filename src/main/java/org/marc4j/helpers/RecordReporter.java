@@ -0,0 +1,96 @@
+/**
+ * Copyright (C) 2019 DIGIBÍS S.L.
+ *
+ * This file is part of MARC4J
+ *
+ * MARC4J is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * MARC4J is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with MARC4J; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.marc4j.helpers;
+
+import org.marc4j.MarcHandler;
+import org.marc4j.marc.ControlField;
+import org.marc4j.marc.DataField;
+import org.marc4j.marc.Record;
+import org.marc4j.marc.Subfield;
+
+/**
+ * <p>
+ * Reports record objects as <code>MarcHandler</code> events, so that
+ * records can be written by handlers such as
+ * {@link org.marc4j.util.MarcWriter}.
+ * </p>
+ *
+ * <p>
+ * This is the reverse of {@link RecordBuilder}: control fields are
+ * reported first, then data fields, each in the order of the record.
+ * </p>
+ *
+ * @see RecordBuilder
+ */
+public class RecordReporter
+    implements RecordHandler
+{
+
+    /** The MarcHandler object. */
+    private final MarcHandler handler;
+
+    /**
+     * <p>
+     * Creates a new instance.
+     * </p>
+     *
+     * @param handler the handler receiving the events
+     */
+    public RecordReporter(MarcHandler handler)
+    {
+        this.handler = handler;
+    }
+
+    @Override
+    public void startCollection()
+    {
+        handler.startCollection();
+    }
+
+    /**
+     * <p>
+     * Reports the leader and the fields of a record.
+     * </p>
+     */
+    @Override
+    public void record(Record record)
+    {
+        handler.startRecord(record.getLeader());
+        for (ControlField field : record.getControlFieldList()) {
+            handler.controlField(field.getTag(), field.getData(), field.getId());
+        }
+        for (DataField field : record.getDataFieldList()) {
+            String tag = field.getTag();
+            handler.startDataField(tag, field.getIndicator1(), field.getIndicator2(), field.getId());
+            for (Subfield subfield : field.getSubfieldList()) {
+                handler.subfield(subfield.getCode(), subfield.getData(), subfield.getLinkCode());
+            }
+            handler.endDataField(tag);
+        }
+        handler.endRecord();
+    }
+
+    @Override
+    public void endCollection()
+    {
+        handler.endCollection();
+    }
+
+}
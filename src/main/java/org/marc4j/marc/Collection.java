@@ -20,12 +20,26 @@
  */
 package org.marc4j.marc;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.io.Serializable;
 import java.io.Writer;
+import java.nio.channels.Channels;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 /**
  * <p>
@@ -33,24 +47,149 @@
  * <code>Record</code> objects.
  * </p>
  *
+ * <p>
+ * A collection can be given a memory budget. When the estimated size of
+ * the records kept in memory exceeds the budget, they are written to a
+ * temporary file in the format of {@link RecordCodec} and read back on
+ * demand by {@link #getRecord(int)} and by the iterator, so the number
+ * of records is not limited by the heap.
+ * </p>
+ *
+ * <p>
+ * A spilled record is decoded again each time it is read, so the
+ * records returned for spilled positions are copies: changes made to
+ * them are not kept in the collection, unlike changes made to the
+ * records still in memory. {@link #getSpilledCount()} tells how many
+ * records were spilled.
+ * </p>
+ *
+ * <p>
+ * The temporary file is only deleted by {@link #close()}, so a
+ * collection with a memory budget must be closed once it is no longer
+ * used.
+ * </p>
+ *
  * @author <a href="mailto:mail@bpeters.com">Bas Peters</a>
  * @version $Revision: 1.7 $
  *
  */
 public class Collection
-    implements Serializable
+    implements Serializable, Iterable<Record>, Closeable
 {
 
-    private List list;
+    /** Number of records between the offsets kept for the spill file. */
+    private static final int OFFSET_INTERVAL = 64;
+
+    /** Estimated heap used by a record, not counting its fields. */
+    private static final int RECORD_OVERHEAD = 128;
+
+    /** Estimated heap used by a field, not counting its data. */
+    private static final int FIELD_OVERHEAD = 64;
+
+    /** The records kept in memory, after the spilled ones */
+    private List<Record> list;
+
+    /** The memory budget in bytes, or 0 if the budget is unlimited */
+    private long memoryBudget;
+
+    /** The estimated size of the records kept in memory */
+    private transient long memoryUsed;
+
+    /** The temporary file holding the spilled records */
+    private transient File spillFile;
+
+    /** The number of spilled records */
+    private transient int spilled;
+
+    /** The length of the spill file */
+    private transient long spillLength;
+
+    /** The offset of every OFFSET_INTERVAL-th spilled record */
+    private transient long[] offsets;
+
+    /** The spill file opened for random access */
+    private transient RandomAccessFile spillReader;
+
+    /** The index of the record at the position of the reader */
+    private transient int readerIndex;
+
+    /** The codec of the spilled records */
+    private transient RecordCodec codec;
 
     public Collection()
     {
-        list = new ArrayList();
+        list = new ArrayList<Record>();
+    }
+
+    /**
+     * <p>
+     * Creates a collection that spills its records to a temporary file
+     * when their estimated size exceeds the budget.
+     * </p>
+     *
+     * @param memoryBudget the memory budget in bytes, or 0 for no limit
+     */
+    public Collection(long memoryBudget)
+    {
+        this();
+        setMemoryBudget(memoryBudget);
+    }
+
+    /**
+     * <p>
+     * Sets the memory budget. The records already kept in memory are
+     * spilled when the next record is added, if they exceed the budget.
+     * </p>
+     *
+     * @param memoryBudget the memory budget in bytes, or 0 for no limit
+     */
+    public void setMemoryBudget(long memoryBudget)
+    {
+        if (memoryBudget < 0) {
+            throw new IllegalArgumentException("Invalid memory budget: " + memoryBudget);
+        }
+        this.memoryBudget = memoryBudget;
     }
 
+    /**
+     * <p>
+     * Returns the memory budget.
+     * </p>
+     *
+     * @return <code>long</code> - the memory budget in bytes, or 0 if the
+     *         budget is unlimited
+     */
+    public long getMemoryBudget()
+    {
+        return memoryBudget;
+    }
+
+    /**
+     * <p>
+     * Adds a record to the collection.
+     * </p>
+     *
+     * <p>
+     * When the records kept in memory exceed the memory budget, the
+     * oldest ones are spilled to the temporary file. The record just
+     * added, and the most recent ones that fit in half of the budget,
+     * stay in memory, so they can still be changed. A record that was
+     * spilled is only available as a copy.
+     * </p>
+     *
+     * @param record the record
+     * @throws MarcException if the records could not be spilled; the
+     *         collection is left as it was before the spill
+     */
     public void add(Record record)
     {
         list.add(record);
+        if (memoryBudget > 0) {
+            memoryUsed += estimateSize(record);
+            if (memoryUsed > memoryBudget) {
+                spill();
+            }
+        }
     }
 
     /**
@@ -58,13 +197,19 @@ public void add(Record record)
      * Returns the Record object for the given index.
      * </p>
      *
+     * <p>
+     * A record that was spilled to the temporary file is returned as a
+     * new copy, and changes made to it are not kept.
+     * </p>
+     *
      * @param index the index of the record object
      * @return Record the {@link Record} object
      */
     public Record getRecord(int index)
     {
-        if (list.size() < index) return null;
-        return (Record)list.get(index);
+        if (getSize() < index) return null;
+        if (index < spilled) return readSpilled(index);
+        return list.get(index - spilled);
     }
 
     /**
@@ -76,7 +221,33 @@ public Record getRecord(int index)
      */
     public int getSize()
     {
-        return list.size();
+        return spilled + list.size();
+    }
+
+    /**
+     * <p>
+     * Returns the number of records written to the temporary file.
+     * </p>
+     *
+     * @return <code>int</code> - the number of spilled records
+     */
+    public int getSpilledCount()
+    {
+        return spilled;
+    }
+
+    /**
+     * <p>
+     * Returns an iterator over the records. Spilled records are read
+     * from the temporary file as the iterator reaches them.
+     * </p>
+     *
+     * @return {@link Iterator} - the iterator
+     */
+    public Iterator<Record> iterator()
+    {
+        if (spilled == 0) return list.iterator();
+        return new SpillIterator();
     }
 
     /**
@@ -91,12 +262,261 @@ public int getSize()
     public void marshal(Writer out)
         throws IOException, MarcException
     {
-        for (Iterator i = list.iterator(); i.hasNext();) {
-            Record record = (Record)i.next();
+        for (Record record : this) {
             out.write(record.marshal());
         }
     }
 
+    /**
+     * <p>
+     * Marshals all the records in the collection
+     * and writes the tape format records to the output stream,
+     * encoding the characters as ISO-8859-1.
+     * </p>
+     *
+     * @param out the output stream
+     */
+    public void marshal(OutputStream out)
+        throws IOException, MarcException
+    {
+        RecordMarshaller marshaller = new RecordMarshaller();
+        for (Record record : this) {
+            marshaller.write(record, out);
+        }
+    }
+
+    /**
+     * <p>
+     * Marshals all the records in the collection
+     * and writes the tape format records to the output stream,
+     * encoding the data of the fields with the given encoding.
+     * </p>
+     *
+     * @param out the output stream
+     * @param encoding the name of the encoding
+     */
+    public void marshal(OutputStream out, String encoding)
+        throws IOException, MarcException
+    {
+        RecordMarshaller marshaller = new RecordMarshaller(encoding);
+        for (Record record : this) {
+            marshaller.write(record, out);
+        }
+    }
+
+    /**
+     * <p>
+     * Deletes the temporary file of the spilled records, and removes
+     * all the records.
+     * </p>
+     *
+     * @throws IOException if the file can not be closed
+     */
+    public void close()
+        throws IOException
+    {
+        list.clear();
+        memoryUsed = 0;
+        spilled = 0;
+        spillLength = 0;
+        offsets = null;
+        try {
+            if (spillReader != null) spillReader.close();
+        } finally {
+            spillReader = null;
+            if (spillFile != null) spillFile.delete();
+            spillFile = null;
+        }
+    }
+
+    private void spill()
+    {
+        // the most recent records are kept, up to half of the budget
+        int keep = list.size() - 1;
+        long kept = estimateSize(list.get(keep));
+        while (keep > 0) {
+            long size = estimateSize(list.get(keep - 1));
+            if (kept + size > memoryBudget / 2) break;
+            kept += size;
+            keep--;
+        }
+        if (keep > 0) {
+            spill(list.subList(0, keep));
+            list.subList(0, keep).clear();
+        }
+        memoryUsed = kept;
+    }
+
+    private void spill(List<Record> records)
+    {
+        boolean created = spillFile == null;
+        try {
+            if (spillFile == null) {
+                spillFile = File.createTempFile("marc4j", ".spill");
+                offsets = new long[16];
+                codec = new RecordCodec();
+            }
+            // the counters are only updated once the records are written
+            int count = spilled;
+            long length = spillLength;
+            long[] positions = offsets;
+            RandomAccessFile file = new RandomAccessFile(spillFile, "rw");
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    Channels.newOutputStream(file.getChannel())));
+            try {
+                // drops what a failed spill may have left after the end
+                file.setLength(length);
+                file.seek(length);
+                for (Record record : records) {
+                    if (count % OFFSET_INTERVAL == 0) {
+                        int i = count / OFFSET_INTERVAL;
+                        if (i == positions.length) {
+                            positions = Arrays.copyOf(positions, i * 2);
+                        }
+                        positions[i] = length;
+                    }
+                    length += codec.write(record, out);
+                    count++;
+                }
+            } finally {
+                out.close();
+            }
+            spilled = count;
+            spillLength = length;
+            offsets = positions;
+        } catch (IOException e) {
+            if (created && spillFile != null) {
+                spillFile.delete();
+                spillFile = null;
+            }
+            throw new MarcException("Unable to spill records to disk", e);
+        }
+    }
+
+    private Record readSpilled(int index)
+    {
+        try {
+            if (spillReader == null) {
+                spillReader = new RandomAccessFile(spillFile, "r");
+                readerIndex = 0;
+            }
+            if (index < readerIndex || index - readerIndex >= OFFSET_INTERVAL) {
+                spillReader.seek(offsets[index / OFFSET_INTERVAL]);
+                readerIndex = index - index % OFFSET_INTERVAL;
+            }
+            while (readerIndex < index) {
+                codec.skip(spillReader);
+                readerIndex++;
+            }
+            readerIndex++;
+            return codec.read(spillReader);
+        } catch (IOException e) {
+            throw new MarcException("Unable to read spilled record", e);
+        }
+    }
+
+    private static long estimateSize(Record record)
+    {
+        long size = RECORD_OVERHEAD;
+        for (ControlField field : record.peekControlFields()) {
+            size += FIELD_OVERHEAD + 2L * field.getLength();
+        }
+        for (DataField field : record.peekDataFields()) {
+            size += FIELD_OVERHEAD + 2L * field.getLength();
+        }
+        return size;
+    }
+
+    private void writeObject(ObjectOutputStream out)
+        throws IOException
+    {
+        out.defaultWriteObject();
+        out.writeInt(spilled);
+        if (spilled > 0) {
+            DataInputStream in = openSpillFile();
+            try {
+                for (int i = 0; i < spilled; i++) {
+                    out.writeObject(codec.read(in));
+                }
+            } finally {
+                in.close();
+            }
+        }
+    }
+
+    private void readObject(ObjectInputStream in)
+        throws IOException, ClassNotFoundException
+    {
+        in.defaultReadObject();
+        int count = in.readInt();
+        List<Record> records = list;
+        list = new ArrayList<Record>();
+        for (int i = 0; i < count; i++) {
+            add((Record) in.readObject());
+        }
+        for (Record record : records) {
+            add(record);
+        }
+    }
+
+    private DataInputStream openSpillFile()
+        throws IOException
+    {
+        return new DataInputStream(new BufferedInputStream(new FileInputStream(spillFile)));
+    }
+
+    /**
+     * Iterates over the spilled records, reading the temporary file
+     * sequentially, and then over the records kept in memory.
+     */
+    private class SpillIterator
+        implements Iterator<Record>
+    {
+        /** The index of the next record */
+        private int next;
+
+        /** The number of records spilled when the iterator was created */
+        private final int count = spilled;
+
+        /** The spill file, while spilled records remain */
+        private DataInputStream in;
+
+        /** The codec of the spilled records */
+        private final RecordCodec reader = new RecordCodec();
+
+        public boolean hasNext()
+        {
+            return next < getSize();
+        }
+
+        public Record next()
+        {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            if (next >= count) {
+                return getRecord(next++);
+            }
+            try {
+                if (in == null) in = openSpillFile();
+                Record record = reader.read(in);
+                next++;
+                if (next == count) {
+                    in.close();
+                    in = null;
+                }
+                return record;
+            } catch (IOException e) {
+                throw new MarcException("Unable to read spilled record", e);
+            }
+        }
+
+        public void remove()
+        {
+            throw new UnsupportedOperationException();
+        }
+    }
+
     @Override
     public String toString()
     {
@@ -0,0 +1,672 @@
+/**
+ * Copyright (C) 2019 DIGIBÍS S.L.
+ *
+ * This file is part of MARC4J
+ *
+ * MARC4J is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * MARC4J is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with MARC4J; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.marc4j.marc;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * <p>
+ * A record that keeps its leader and the data of all its fields in a
+ * single <code>char[]</code>, with an array of tags and an array of
+ * starting positions.
+ * </p>
+ *
+ * <p>
+ * A record with fifty fields and two hundred subfields is a handful of
+ * objects instead of hundreds, which allows to hold millions of records
+ * in memory. The fields are read through the usual getters: each call
+ * creates {@link ControlField} and {@link DataField} objects with copies
+ * of the data, so changes made to them are not
+ * reflected in the record. The lists returned by
+ * {@link #getControlFieldList()} and {@link #getDataFieldList()} are read
+ * only views.
+ * </p>
+ *
+ * <p>
+ * Adding fields or setting the field lists turns the record into an
+ * ordinary record: the fields are decoded once into the lists of
+ * {@link Record} and the buffer is released. The leader is kept as an
+ * object once it is requested, so changes made to it are kept.
+ * </p>
+ *
+ * <p>
+ * Field ids and subfield link codes are not kept, as in tape format.
+ * Use a {@link CompactRecord.Builder} to create records from parser
+ * events without creating the fields.
+ * </p>
+ */
+public class CompactRecord
+    extends Record
+{
+
+    private static final long serialVersionUID = 1L;
+
+    /** The data element identifier. */
+    private static final char US = MarcConstants.US;
+
+    /** The leader, decoded when requested. */
+    private Leader leader;
+
+    /** The leader followed by the data of the fields, or null once decoded. */
+    private char[] data;
+
+    /** The tags of the fields, control fields first. */
+    private String[] tags;
+
+    /** The starting positions of the fields, plus the end of the last one. */
+    private int[] starts;
+
+    /** The number of control fields. */
+    private int controlCount;
+
+    /**
+     * <p>
+     * Creates a compact copy of a record.
+     * </p>
+     *
+     * @param record the record
+     * @throws MarcException if the record contains no leader
+     */
+    public CompactRecord(Record record)
+    {
+        this(Builder.copyOf(record));
+    }
+
+    private CompactRecord(Builder builder)
+    {
+        int count = builder.count;
+        this.data = Arrays.copyOf(builder.data, builder.starts[count]);
+        this.tags = Arrays.copyOf(builder.tags, count);
+        this.starts = Arrays.copyOf(builder.starts, count + 1);
+        this.controlCount = builder.controlCount;
+    }
+
+    private CompactRecord()
+    {
+    }
+
+    /**
+     * <p>
+     * Returns true while the fields are held in the buffer.
+     * </p>
+     *
+     * @return <code>boolean</code> - false once the record was modified
+     */
+    public boolean isCompact()
+    {
+        return data != null;
+    }
+
+    @Override
+    public Leader getLeader()
+    {
+        if (data == null) {
+            return super.getLeader();
+        }
+        if (leader == null) {
+            Leader ldr = new Leader();
+            ldr.unmarshal(data, 0);
+            leader = ldr;
+        }
+        return leader;
+    }
+
+    @Override
+    public void add(Leader leader)
+    {
+        if (data == null) {
+            super.add(leader);
+        } else {
+            this.leader = leader;
+        }
+    }
+
+    @Override
+    public void add(ControlField field)
+    {
+        decode();
+        super.add(field);
+    }
+
+    @Override
+    public void add(DataField field)
+    {
+        decode();
+        super.add(field);
+    }
+
+    @Override
+    public ControlField getControlNumberField()
+    {
+        if (data == null) {
+            return super.getControlNumberField();
+        }
+        return hasControlNumberField() ? controlField(0) : null;
+    }
+
+    @Override
+    public String getControlNumber()
+    {
+        if (data == null) {
+            return super.getControlNumber();
+        }
+        if (!hasControlNumberField()) {
+            return null;
+        }
+        return new String(data, starts[0], starts[1] - starts[0]);
+    }
+
+    @Override
+    public boolean hasControlNumberField()
+    {
+        if (data == null) {
+            return super.hasControlNumberField();
+        }
+        return controlCount > 0 && Tag.isControlNumberField(tags[0]);
+    }
+
+    @Override
+    public ControlField getControlField(String tag)
+    {
+        if (data == null) {
+            return super.getControlField(tag);
+        }
+        if (!Tag.isControlField(tag)) {
+            return null;
+        }
+        int i = indexOf(tag, 0, controlCount);
+        return i < 0 ? null : controlField(i);
+    }
+
+    @Override
+    public List<ControlField> getControlFields(String tag)
+    {
+        if (data == null) {
+            return super.getControlFields(tag);
+        }
+        List<ControlField> fields = new ArrayList<>();
+        for (int i = indexOf(tag, 0, controlCount); i >= 0; i = indexOf(tag, i + 1, controlCount)) {
+            fields.add(controlField(i));
+        }
+        return fields;
+    }
+
+    @Override
+    public DataField getDataField(String tag)
+    {
+        if (data == null) {
+            return super.getDataField(tag);
+        }
+        if (!Tag.isDataField(tag)) {
+            return null;
+        }
+        int i = indexOf(tag, controlCount, tags.length);
+        return i < 0 ? null : dataField(i);
+    }
+
+    @Override
+    public List<DataField> getDataFields(String tag)
+    {
+        if (data == null) {
+            return super.getDataFields(tag);
+        }
+        List<DataField> fields = new ArrayList<>();
+        for (int i = indexOf(tag, controlCount, tags.length); i >= 0; i = indexOf(tag, i + 1, tags.length)) {
+            fields.add(dataField(i));
+        }
+        return fields;
+    }
+
+    @Override
+    public boolean hasVariableField(String tag)
+    {
+        if (data == null) {
+            return super.hasVariableField(tag);
+        }
+        return indexOf(tag, 0, tags.length) >= 0;
+    }
+
+    @Override
+    public List<VariableField> getVariableFields(String tag)
+    {
+        if (data == null) {
+            return super.getVariableFields(tag);
+        }
+        List<VariableField> fields = new ArrayList<>();
+        for (int i = indexOf(tag, 0, tags.length); i >= 0; i = indexOf(tag, i + 1, tags.length)) {
+            fields.add(field(i));
+        }
+        return fields;
+    }
+
+    @Override
+    public List<ControlField> getControlFieldList()
+    {
+        if (data == null) {
+            return super.getControlFieldList();
+        }
+        return new FieldView<>(ControlField.class, 0, controlCount);
+    }
+
+    @Override
+    public void setControlFieldList(List<ControlField> newList)
+    {
+        decode();
+        super.setControlFieldList(newList);
+    }
+
+    @Override
+    public List<DataField> getDataFieldList()
+    {
+        if (data == null) {
+            return super.getDataFieldList();
+        }
+        return new FieldView<>(DataField.class, controlCount, tags.length);
+    }
+
+    @Override
+    public void setDataFieldList(List<DataField> newList)
+    {
+        decode();
+        super.setDataFieldList(newList);
+    }
+
+    @Override
+    public List<VariableField> getVariableFieldList()
+    {
+        if (data == null) {
+            return super.getVariableFieldList();
+        }
+        return new FieldView<>(VariableField.class, 0, tags.length);
+    }
+
+    @Override
+    public void setVariableFieldList(List<VariableField> newList)
+    {
+        decode();
+        super.setVariableFieldList(newList);
+    }
+
+    @Override
+    List<ControlField> peekControlFields()
+    {
+        return data == null ? super.peekControlFields() : getControlFieldList();
+    }
+
+    @Override
+    List<DataField> peekDataFields()
+    {
+        return data == null ? super.peekDataFields() : getDataFieldList();
+    }
+
+    @Override
+    public Record cloneShared()
+    {
+        if (data == null) {
+            return super.cloneShared();
+        }
+        return (Record)clone();
+    }
+
+    @Override
+    public Object clone()
+    {
+        if (data == null) {
+            return super.clone();
+        }
+        // the buffer is never modified, so it is shared
+        CompactRecord copy = new CompactRecord();
+        copy.data = data;
+        copy.tags = tags;
+        copy.starts = starts;
+        copy.controlCount = controlCount;
+        copy.leader = leader == null ? null : (Leader)leader.clone();
+        return copy;
+    }
+
+    private int indexOf(String tag, int from, int to)
+    {
+        tag = Tag.valueOf(tag);
+        for (int i = from; i < to; i++) {
+            if (tags[i] == tag || tags[i].equals(tag)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private VariableField field(int i)
+    {
+        return i < controlCount ? controlField(i) : dataField(i);
+    }
+
+    private ControlField controlField(int i)
+    {
+        return new ControlField(tags[i], Arrays.copyOfRange(data, starts[i], starts[i + 1]));
+    }
+
+    private DataField dataField(int i)
+    {
+        // the subfields are parsed by the field when they are requested
+        return new DataField(tags[i], Arrays.copyOfRange(data, starts[i], starts[i + 1]));
+    }
+
+    /**
+     * Moves the fields to the lists of the superclass and releases the
+     * buffer.
+     */
+    private void decode()
+    {
+        if (data == null) {
+            return;
+        }
+        Leader ldr = getLeader();
+        List<ControlField> controlFields = new ArrayList<>(controlCount);
+        for (int i = 0; i < controlCount; i++) {
+            controlFields.add(controlField(i));
+        }
+        List<DataField> dataFields = new ArrayList<>(tags.length - controlCount);
+        for (int i = controlCount; i < tags.length; i++) {
+            dataFields.add(dataField(i));
+        }
+        data = null;
+        tags = null;
+        starts = null;
+        leader = null;
+        super.add(ldr);
+        super.setControlFieldList(controlFields);
+        super.setDataFieldList(dataFields);
+    }
+
+    /**
+     * A read only list that decodes the fields on demand.
+     */
+    private final class FieldView<T extends VariableField>
+        extends AbstractList<T>
+        implements RandomAccess
+    {
+
+        private final Class<T> type;
+
+        private final int from;
+
+        private final int to;
+
+        FieldView(Class<T> type, int from, int to)
+        {
+            this.type = type;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public T get(int i)
+        {
+            if (i < 0 || i >= to - from) {
+                throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + (to - from));
+            }
+            return type.cast(field(from + i));
+        }
+
+        @Override
+        public int size()
+        {
+            return to - from;
+        }
+    }
+
+    /**
+     * <p>
+     * Creates compact records from the leader and the data of the
+     * fields, without creating field objects.
+     * </p>
+     *
+     * <p>
+     * The buffers of a builder are reused for all the records it
+     * creates; an instance is not thread safe.
+     * </p>
+     */
+    public static class Builder
+    {
+
+        /** Initial size of the data buffer. */
+        private static final int BUFFER_SIZE = 4096;
+
+        /** Initial number of fields. */
+        private static final int FIELD_COUNT = 64;
+
+        private char[] data = new char[BUFFER_SIZE];
+
+        private String[] tags = new String[FIELD_COUNT];
+
+        private int[] starts = new int[FIELD_COUNT + 1];
+
+        private boolean[] control = new boolean[FIELD_COUNT];
+
+        private int count;
+
+        private int controlCount;
+
+        private int length;
+
+        /**
+         * <p>
+         * Starts a new record.
+         * </p>
+         *
+         * @param leader the leader
+         * @throws MarcException if the leader is null or does not fit in
+         *         24 characters
+         */
+        public void startRecord(Leader leader)
+        {
+            if (leader == null) {
+                throw new MarcException("Record contains no leader");
+            }
+            leader.marshal(data, 0);
+            length = Leader.LENGTH;
+            count = 0;
+            controlCount = 0;
+            starts[0] = length;
+        }
+
+        /**
+         * <p>
+         * Adds a control field.
+         * </p>
+         *
+         * @param tag the tag name
+         * @param buf the buffer holding the data
+         * @param offset the offset of the data
+         * @param len the length of the data
+         */
+        public void controlField(String tag, char[] buf, int offset, int len)
+        {
+            ensureCapacity(len);
+            System.arraycopy(buf, offset, data, length, len);
+            length += len;
+            endField(tag, true);
+        }
+
+        /**
+         * <p>
+         * Starts a data field.
+         * </p>
+         *
+         * @param ind1 the first indicator
+         * @param ind2 the second indicator
+         */
+        public void startDataField(char ind1, char ind2)
+        {
+            ensureCapacity(2);
+            data[length++] = ind1;
+            data[length++] = ind2;
+        }
+
+        /**
+         * <p>
+         * Adds a subfield to the current data field.
+         * </p>
+         *
+         * @param code the data element identifier
+         * @param buf the buffer holding the data
+         * @param offset the offset of the data
+         * @param len the length of the data
+         */
+        public void subfield(char code, char[] buf, int offset, int len)
+        {
+            ensureCapacity(len + 2);
+            data[length++] = US;
+            data[length++] = code;
+            System.arraycopy(buf, offset, data, length, len);
+            length += len;
+        }
+
+        /**
+         * <p>
+         * Ends the current data field.
+         * </p>
+         *
+         * @param tag the tag name
+         */
+        public void endDataField(String tag)
+        {
+            endField(tag, false);
+        }
+
+        /**
+         * Adds a data field from its raw content: the indicators
+         * followed by the delimited subfields.
+         */
+        void dataField(String tag, char[] buf, int offset, int len)
+        {
+            ensureCapacity(len);
+            System.arraycopy(buf, offset, data, length, len);
+            length += len;
+            endField(tag, false);
+        }
+
+        /**
+         * <p>
+         * Returns the record built since the last call to
+         * {@link #startRecord(Leader)}.
+         * </p>
+         *
+         * @return {@link CompactRecord} - the record
+         */
+        public CompactRecord build()
+        {
+            if (!isOrdered()) {
+                reorder();
+            }
+            return new CompactRecord(this);
+        }
+
+        private void endField(String tag, boolean isControl)
+        {
+            if (count == tags.length) {
+                int size = count * 2;
+                tags = Arrays.copyOf(tags, size);
+                starts = Arrays.copyOf(starts, size + 1);
+                control = Arrays.copyOf(control, size);
+            }
+            tags[count] = Tag.valueOf(tag);
+            control[count] = isControl;
+            if (isControl) controlCount++;
+            starts[++count] = length;
+        }
+
+        /** The control number field first, then control fields, then data fields. */
+        private boolean isOrdered()
+        {
+            for (int i = 0; i < count; i++) {
+                if (control[i] != i < controlCount) return false;
+                if (i > 0 && control[i] && Tag.isControlNumberField(tags[i])) return false;
+            }
+            return true;
+        }
+
+        private void reorder()
+        {
+            int[] order = new int[count];
+            int n = 0;
+            for (int i = 0; i < count; i++) {
+                if (control[i] && Tag.isControlNumberField(tags[i])) order[n++] = i;
+            }
+            for (int i = 0; i < count; i++) {
+                if (control[i] && !Tag.isControlNumberField(tags[i])) order[n++] = i;
+            }
+            for (int i = 0; i < count; i++) {
+                if (!control[i]) order[n++] = i;
+            }
+            char[] newData = new char[data.length];
+            String[] newTags = new String[tags.length];
+            int[] newStarts = new int[starts.length];
+            boolean[] newControl = new boolean[control.length];
+            System.arraycopy(data, 0, newData, 0, Leader.LENGTH);
+            int p = Leader.LENGTH;
+            newStarts[0] = p;
+            for (int i = 0; i < count; i++) {
+                int field = order[i];
+                int len = starts[field + 1] - starts[field];
+                System.arraycopy(data, starts[field], newData, p, len);
+                p += len;
+                newTags[i] = tags[field];
+                newControl[i] = control[field];
+                newStarts[i + 1] = p;
+            }
+            data = newData;
+            tags = newTags;
+            starts = newStarts;
+            control = newControl;
+        }
+
+        private void ensureCapacity(int len)
+        {
+            if (length + len > data.length) {
+                data = Arrays.copyOf(data, Math.max(length + len, data.length * 2));
+            }
+        }
+
+        static Builder copyOf(Record record)
+        {
+            Builder builder = new Builder();
+            builder.startRecord(record.getLeader());
+            for (ControlField field : record.peekControlFields()) {
+                char[] buf = field.getData();
+                builder.controlField(field.getTag(), buf, 0, buf.length);
+            }
+            for (DataField field : record.peekDataFields()) {
+                builder.startDataField(field.getIndicator1(), field.getIndicator2());
+                for (Subfield subfield : field.peekSubfields()) {
+                    char[] buf = subfield.getData();
+                    builder.subfield(subfield.getCode(), buf, 0, buf.length);
+                }
+                builder.endDataField(field.getTag());
+            }
+            return builder;
+        }
+    }
+
+}
@@ -224,7 +224,7 @@ public String marshal()
      */
     public int getLength()
     {
-        return this.marshal().length();
+        return data.length + 1;
     }
 
     /*
@@ -53,6 +53,13 @@
  * method.
  * </p>
  *
+ * <p>
+ * A data field created from its raw content keeps the content and only
+ * splits it into {@link Subfield} objects the first time the subfields
+ * are requested. Until then {@link #marshal()} returns the content
+ * as it is.
+ * </p>
+ *
  * @author <a href="mailto:mail@bpeters.com">Bas Peters</a>
  * @version $Revision: 1.6 $
  *
@@ -64,15 +71,27 @@
 
     private static final long serialVersionUID = 1L;
 
+    /** The data element delimiter. */
+    private static final char US = MarcConstants.US;
+
     /** The first indicator value. */
     private char ind1;
 
     /** The second indicator value. */
     private char ind2;
 
-    /** A collection of data elements. */
+    /** A collection of data elements, null until the content is parsed. */
     private ArrayList<Subfield> list;
 
+    /** The raw content, null once it is parsed. */
+    private char[] content;
+
+    /** Whether the content is shared with a clone. */
+    private transient boolean contentShared;
+
+    /** Whether the subfields may be shared with a copy made by cloneShared(). */
+    private transient boolean subfieldsShared;
+
     /**
      * <p>
      * Default constructor.
@@ -133,6 +152,33 @@ public DataField(String tag, char ind1, char ind2, Long id)
         this.setId(id);
     }
 
+    /**
+     * <p>
+     * Creates a new <code>DataField</code> instance from the raw
+     * content of the field: the indicators followed by the delimited
+     * data elements, without the field terminator.
+     * </p>
+     *
+     * <p>
+     * The content is not copied and it is not parsed until the
+     * subfields are requested.
+     * </p>
+     *
+     * @param tag the tag name
+     * @param content the raw content
+     * @throws MarcException when the content has no indicators
+     */
+    public DataField(String tag, char[] content)
+    {
+        super(tag);
+        if (content.length < 2) {
+            throw new MarcException("Data field " + tag + " contains no indicators");
+        }
+        setIndicator1(content[0]);
+        setIndicator2(content[1]);
+        this.content = content;
+    }
+
     /**
      * <p>
      * Registers the tag.
@@ -177,6 +223,7 @@ public void setIndicator1(char ind1)
     {
         Verifier.checkDataElement(ind1);
         this.ind1 = ind1;
+        if (content != null) ownContent()[0] = ind1;
     }
 
     /**
@@ -191,6 +238,7 @@ public void setIndicator2(char ind2)
     {
         Verifier.checkDataElement(ind2);
         this.ind2 = ind2;
+        if (content != null) ownContent()[1] = ind2;
     }
 
     /**
@@ -204,7 +252,7 @@ public void setIndicator2(char ind2)
      */
     public void add(Subfield subfield)
     {
-        list.add(subfield);
+        subfields().add(subfield);
     }
 
     /**
@@ -241,7 +289,14 @@ public char getIndicator2()
      */
     public List<Subfield> getSubfieldList()
     {
-        return list;
+        ArrayList<Subfield> subfields = subfields();
+        if (subfieldsShared) {
+            for (int i = 0, n = subfields.size(); i < n; i++) {
+                own(subfields, i);
+            }
+            subfieldsShared = false;
+        }
+        return subfields;
     }
 
     /**
@@ -255,9 +310,9 @@ public List<Subfield> getSubfieldList()
      */
     public Subfield getSubfield(char code)
     {
-        for (Iterator<Subfield> i = list.iterator(); i.hasNext();) {
-            Subfield sf = i.next();
-            if (sf.getCode() == code) return sf;
+        ArrayList<Subfield> subfields = subfields();
+        for (int i = 0, n = subfields.size(); i < n; i++) {
+            if (subfields.get(i).getCode() == code) return subfieldsShared ? own(subfields, i) : subfields.get(i);
         }
         return null;
     }
@@ -272,6 +327,13 @@ public Subfield getSubfield(char code)
      */
     public boolean hasSubfield(char code)
     {
+        if (content != null) {
+            // the content is searched without parsing it
+            for (int i = 2; i < content.length - 1; i++) {
+                if (content[i] == US && content[i + 1] == code) return true;
+            }
+            return false;
+        }
         for (Iterator<Subfield> i = list.iterator(); i.hasNext();) {
             Subfield sf = i.next();
             if (sf.getCode() == code) return true;
@@ -298,6 +360,8 @@ public boolean hasSubfield(char code)
      */
     public void setSubfieldList(List<Subfield> newList)
     {
+        content = null;
+        subfieldsShared = false;
         if (newList == null) {
             list = new ArrayList<Subfield>();
             return;
@@ -324,6 +388,9 @@ public void setSubfieldList(List<Subfield> newList)
      */
     public String marshal()
     {
+        if (content != null) {
+            return new StringBuilder(content.length + 1).append(content).append(FT).toString();
+        }
         StringBuffer dataField = new StringBuffer().append(ind1).append(ind2);
         Iterator<Subfield> iterator = list.iterator();
         while (iterator.hasNext()) {
@@ -344,7 +411,87 @@ public String marshal()
      */
     public int getLength()
     {
-        return this.marshal().length();
+        if (content != null) {
+            return content.length + 1;
+        }
+        int length = 3;
+        for (Subfield subfield : list) {
+            length += subfield.getLength();
+        }
+        return length;
+    }
+
+    /**
+     * <p>
+     * Returns the raw content while it is not parsed.
+     * </p>
+     *
+     * @return <code>char[]</code> - the content, or null once the
+     *         subfields were requested
+     */
+    char[] getContent()
+    {
+        return content;
+    }
+
+    /**
+     * <p>
+     * Returns the subfields without copying the subfields shared with a
+     * copy made by {@link #cloneShared()}. The subfields must not be
+     * modified.
+     * </p>
+     *
+     * @return {@link List} - the subfields
+     */
+    List<Subfield> peekSubfields()
+    {
+        return subfields();
+    }
+
+    private Subfield own(ArrayList<Subfield> subfields, int i)
+    {
+        Subfield subfield = subfields.get(i);
+        Subfield owned = subfield.own();
+        if (owned != subfield) subfields.set(i, owned);
+        return owned;
+    }
+
+    private char[] ownContent()
+    {
+        if (contentShared) {
+            content = content.clone();
+            contentShared = false;
+        }
+        return content;
+    }
+
+    private ArrayList<Subfield> subfields()
+    {
+        if (content != null) {
+            list = parse(content);
+            content = null;
+        }
+        return list;
+    }
+
+    private static ArrayList<Subfield> parse(char[] content)
+    {
+        ArrayList<Subfield> subfields = new ArrayList<>();
+        int end = content.length;
+        int i = 2;
+        while (i < end && content[i] != US) {
+            i++;
+        }
+        while (i + 1 < end) {
+            char code = content[i + 1];
+            int start = i + 2;
+            i = start;
+            while (i < end && content[i] != US) {
+                i++;
+            }
+            subfields.add(new Subfield(code, Arrays.copyOfRange(content, start, i), Subfield.EMPTY_LINK_CODE));
+        }
+        return subfields;
     }
 
     /*
@@ -353,21 +500,62 @@ public int getLength()
     @Override
     public Object clone()
     {
+        // el contenido sin analizar se comparte hasta que se modifique
+        if (this.content != null) {
+            DataField instance = new DataField(this.getTag(), this.content);
+            this.contentShared = true;
+            instance.contentShared = true;
+            return instance;
+        }
+
         // Creamos una nueva instancia
         DataField instance = new DataField(this.getTag(), this.ind1, this.ind2, DataField.EMPTY_ID);
 
         // Recorremos la lista de subcampos y clonamos cada uno de ellos
         if (this.list != null) {
-            ArrayList<Subfield> newList = new ArrayList<>();
-            for (Iterator<Subfield> it = this.list.iterator(); it.hasNext();)
-                newList.add((Subfield)it.next().clone());
-            instance.setSubfieldList(newList);
+            ArrayList<Subfield> newList = new ArrayList<>(this.list.size());
+            for (Subfield subfield : this.list) {
+                newList.add((Subfield)subfield.clone());
+            }
+            instance.list = newList;
         }
 
         // Devolvemos la nueva instancia
         return instance;
     }
 
+    /**
+     * <p>
+     * Returns a copy of the data field that shares the subfields with
+     * this field until they are handed out.
+     * </p>
+     * <p>
+     * Both fields copy a shared subfield the first time
+     * {@link #getSubfieldList()} or {@link #getSubfield(char)} hands it
+     * out, so a change made through one field is not seen by the other.
+     * Subfields obtained before the copy was made must not be modified,
+     * since they may be the ones kept by the copy. The copy has no id.
+     * </p>
+     * @return <code>Object</code> - the copy
+     */
+    @Override
+    public Object cloneShared()
+    {
+        if (this.content != null) {
+            return clone();
+        }
+        DataField instance = new DataField(this.getTag(), this.ind1, this.ind2, DataField.EMPTY_ID);
+        ArrayList<Subfield> newList = new ArrayList<>(this.list.size());
+        for (Subfield subfield : this.list) {
+            subfield.share();
+            newList.add(subfield);
+        }
+        instance.list = newList;
+        this.subfieldsShared = true;
+        instance.subfieldsShared = true;
+        return instance;
+    }
+
     @Override
     public boolean equals(Object obj)
     {
@@ -381,7 +569,7 @@ public boolean equals(Object obj)
             .append(this.getId(), that.getId())
             .append(this.ind1, that.ind1)
             .append(this.ind2, that.ind2)
-            .append(this.list, that.list) // ArrayList.equals hace un deep equals
+            .append(this.subfields(), that.subfields()) // ArrayList.equals hace un deep equals
             .isEquals();
     }
 
@@ -393,7 +581,7 @@ public int hashCode()
             .append(this.getId())
             .append(this.ind1)
             .append(this.ind2)
-            .append(this.list)
+            .append(this.subfields())
             .toHashCode();
     }
 
@@ -410,7 +598,7 @@ public String toString()
             .append(getIndicator2())
             .append(this.getId() != null ? (", id: ") + this.getId() : "")
             .append(",\n        Elements: ")
-            .append(Arrays.toString(list.toArray()))
+            .append(Arrays.toString(subfields().toArray()))
             .append(" ] ");
         return sb.toString();
     }
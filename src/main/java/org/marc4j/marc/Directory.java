@@ -123,7 +123,7 @@ public String marshal()
      */
     public int getLength()
     {
-        return this.marshal().length();
+        return directory.length() + 1;
     }
 
 }
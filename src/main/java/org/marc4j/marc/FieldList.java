@@ -0,0 +1,313 @@
+/**
+ * Copyright (C) 2019 DIGIBÍS S.L.
+ *
+ * This file is part of MARC4J
+ *
+ * MARC4J is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * MARC4J is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with MARC4J; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.marc4j.marc;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * <p>
+ * A list of variable fields that keeps an index of the positions of the
+ * fields by tag.
+ * </p>
+ *
+ * <p>
+ * The index is built on the first lookup and rebuilt on the first lookup
+ * after the list is modified, so adding many fields costs nothing until
+ * the fields are searched. Replacing a field with <code>set</code> counts
+ * as a modification. Changing the tag of a field that is already in the
+ * list is not detected.
+ * </p>
+ *
+ * <p>
+ * The fields of a list created by {@link #share()} are shared with the
+ * original list. The record owning the list calls {@link #own(int)}
+ * before handing a field out, so a shared field is copied only when it
+ * may be modified.
+ * </p>
+ *
+ * @param <T> the type of the fields
+ */
+class FieldList<T extends VariableField>
+    extends ArrayList<T>
+{
+
+    private static final long serialVersionUID = 1L;
+
+    /** The positions of the fields by tag; the first element is the count. */
+    private transient Map<String, int[]> index;
+
+    /** The modification count when the index was built. */
+    private transient int indexModCount;
+
+    /** Whether the fields may be shared with another list. */
+    private transient boolean shared;
+
+    /**
+     * <p>
+     * Creates an empty list.
+     * </p>
+     */
+    FieldList()
+    {
+    }
+
+    /**
+     * <p>
+     * Creates a list with the fields of the given collection.
+     * </p>
+     *
+     * @param fields the fields
+     */
+    FieldList(Collection<? extends T> fields)
+    {
+        super(fields);
+    }
+
+    /**
+     * <p>
+     * Creates an empty list with the given capacity.
+     * </p>
+     *
+     * @param capacity the initial capacity
+     */
+    FieldList(int capacity)
+    {
+        super(capacity);
+    }
+
+    @Override
+    public T set(int i, T field)
+    {
+        modCount++;
+        return super.set(i, field);
+    }
+
+    /**
+     * <p>
+     * Returns the first field with the given tag.
+     * </p>
+     *
+     * @param tag the tag name
+     * @return the field, or null if there is no such field
+     */
+    T getFirst(String tag)
+    {
+        int[] positions = positions(tag);
+        if (positions == null) return null;
+        return shared ? own(positions[1]) : get(positions[1]);
+    }
+
+    /**
+     * <p>
+     * Returns true if the list contains a field with the given tag.
+     * </p>
+     *
+     * @param tag the tag name
+     * @return <code>boolean</code> - true if there is such a field
+     */
+    boolean contains(String tag)
+    {
+        return positions(tag) != null;
+    }
+
+    /**
+     * <p>
+     * Returns a read only view of the fields with the given tag.
+     * </p>
+     *
+     * <p>
+     * The view reflects the list when it was created; it must not be
+     * used once the list is modified.
+     * </p>
+     *
+     * @param tag the tag name
+     * @return {@link List} - the fields, in the order of the list
+     */
+    List<T> getAll(String tag)
+    {
+        int[] positions = positions(tag);
+        if (positions == null) return Collections.emptyList();
+        if (shared) {
+            for (int i = 1; i <= positions[0]; i++) {
+                own(positions[i]);
+            }
+        }
+        return new View<>(this, positions);
+    }
+
+    /**
+     * <p>
+     * Returns a new list with a clone of each field. The index is shared
+     * with the copy, since the tags are the same.
+     * </p>
+     *
+     * @return {@link FieldList} - the new list
+     */
+    @SuppressWarnings("unchecked")
+    FieldList<T> copy()
+    {
+        FieldList<T> copy = new FieldList<>(size());
+        for (int i = 0, n = size(); i < n; i++) {
+            copy.add((T)get(i).clone());
+        }
+        if (index != null && indexModCount == modCount) {
+            copy.index = index;
+            copy.indexModCount = copy.modCount;
+        }
+        return copy;
+    }
+
+    /**
+     * <p>
+     * Returns the field at the given position, replacing it with a copy
+     * first if it is shared with another list.
+     * </p>
+     *
+     * @param i the position
+     * @return the field
+     */
+    @SuppressWarnings("unchecked")
+    T own(int i)
+    {
+        T field = get(i);
+        if (!shared) return field;
+        T owned = (T)field.own();
+        if (owned != field) {
+            // same tag, so the index is still valid
+            super.set(i, owned);
+        }
+        return owned;
+    }
+
+    /**
+     * <p>
+     * Replaces every shared field with a copy.
+     * </p>
+     */
+    void ownAll()
+    {
+        if (!shared) return;
+        for (int i = 0, n = size(); i < n; i++) {
+            own(i);
+        }
+        shared = false;
+    }
+
+    /**
+     * <p>
+     * Returns a new list with the same fields, shared with this list.
+     * Fields with an id are cloned, so the copies have no id as with
+     * {@link #copy()}.
+     * </p>
+     *
+     * @return {@link FieldList} - the new list
+     */
+    @SuppressWarnings("unchecked")
+    FieldList<T> share()
+    {
+        FieldList<T> copy = new FieldList<>(size());
+        for (int i = 0, n = size(); i < n; i++) {
+            T field = get(i);
+            if (field.getId() == null) {
+                field.share();
+                copy.add(field);
+            } else {
+                copy.add((T)field.clone());
+            }
+        }
+        shared = true;
+        copy.shared = true;
+        if (index != null && indexModCount == modCount) {
+            copy.index = index;
+            copy.indexModCount = copy.modCount;
+        }
+        return copy;
+    }
+
+    private int[] positions(String tag)
+    {
+        if (index == null || indexModCount != modCount) {
+            index = buildIndex();
+            indexModCount = modCount;
+        }
+        return index.get(Tag.valueOf(tag));
+    }
+
+    private Map<String, int[]> buildIndex()
+    {
+        Map<String, int[]> map = new HashMap<>();
+        for (int i = 0, n = size(); i < n; i++) {
+            String tag = get(i).getTag();
+            int[] positions = map.get(tag);
+            if (positions == null) {
+                positions = new int[2];
+                map.put(tag, positions);
+            } else if (positions[0] + 1 == positions.length) {
+                positions = Arrays.copyOf(positions, positions.length * 2);
+                map.put(tag, positions);
+            }
+            positions[++positions[0]] = i;
+        }
+        return map;
+    }
+
+    /**
+     * A read only list of the fields at the given positions.
+     */
+    private static final class View<T>
+        extends AbstractList<T>
+        implements RandomAccess
+    {
+
+        private final List<T> list;
+
+        private final int[] positions;
+
+        View(List<T> list, int[] positions)
+        {
+            this.list = list;
+            this.positions = positions;
+        }
+
+        @Override
+        public T get(int i)
+        {
+            if (i < 0 || i >= positions[0]) {
+                throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + positions[0]);
+            }
+            return list.get(positions[i + 1]);
+        }
+
+        @Override
+        public int size()
+        {
+            return positions[0];
+        }
+    }
+
+}
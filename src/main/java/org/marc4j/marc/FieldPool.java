@@ -0,0 +1,204 @@
+/**
+ * Copyright (C) 2019 DIGIBÍS S.L.
+ *
+ * This file is part of MARC4J
+ *
+ * MARC4J is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * MARC4J is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with MARC4J; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.marc4j.marc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <p>
+ * Recycles a record and its fields, so that a reader building one record
+ * after another does not create new objects for each record.
+ * </p>
+ *
+ * <p>
+ * The objects returned by the pool since the last call to
+ * {@link #reset()} are handed out again after the next one, with new
+ * values. Whoever receives the record must copy anything it keeps: the
+ * record, its fields, subfields and data arrays. A copy made with
+ * <code>clone()</code> is safe, since it holds copies of the fields and
+ * of their data, never the pooled objects. A copy made with
+ * <code>cloneShared()</code> is safe as well: the pool does not recycle
+ * an object that is still shared with the copy and creates a new one
+ * instead.
+ * </p>
+ *
+ * @see org.marc4j.helpers.RecordBuilder#setReuseRecords(boolean)
+ */
+public class FieldPool
+{
+
+    /** The recycled record */
+    private Record record;
+
+    /** The control fields */
+    private final List<ControlField> controlFields = new ArrayList<>();
+
+    /** The data fields */
+    private final List<DataField> dataFields = new ArrayList<>();
+
+    /** The subfields */
+    private final List<Subfield> subfields = new ArrayList<>();
+
+    /** The number of control fields handed out */
+    private int controlCount;
+
+    /** The number of data fields handed out */
+    private int dataCount;
+
+    /** The number of subfields handed out */
+    private int subfieldCount;
+
+    /**
+     * <p>
+     * Makes every object of the pool available again.
+     * </p>
+     */
+    public void reset()
+    {
+        controlCount = 0;
+        dataCount = 0;
+        subfieldCount = 0;
+    }
+
+    /**
+     * <p>
+     * Returns the recycled record, without fields.
+     * </p>
+     *
+     * @param leader the leader of the record
+     * @return {@link Record} - the record
+     */
+    public Record record(Leader leader)
+    {
+        if (record == null) {
+            record = new Record();
+        } else {
+            record.reset();
+        }
+        record.add(leader);
+        return record;
+    }
+
+    /**
+     * <p>
+     * Returns a control field with the given values, copying the slice
+     * of data.
+     * </p>
+     *
+     * @param tag the tag
+     * @param buf the buffer holding the data
+     * @param offset the offset of the data
+     * @param length the length of the data
+     * @param id the id of the field
+     * @return {@link ControlField} - the field
+     */
+    public ControlField controlField(String tag, char[] buf, int offset, int length, Long id)
+    {
+        ControlField field = controlCount < controlFields.size() ? controlFields.get(controlCount) : null;
+        if (field == null || field.isShared()) {
+            field = new ControlField(tag, Arrays.copyOfRange(buf, offset, offset + length), id);
+            set(controlFields, controlCount++, field);
+            return field;
+        }
+        controlCount++;
+        field.setTag(tag);
+        field.setData(copy(field.getData(), buf, offset, length));
+        field.setId(id);
+        return field;
+    }
+
+    /**
+     * <p>
+     * Returns a data field with the given values and no subfields.
+     * </p>
+     *
+     * @param tag the tag
+     * @param ind1 the first indicator
+     * @param ind2 the second indicator
+     * @param id the id of the field
+     * @return {@link DataField} - the field
+     */
+    public DataField dataField(String tag, char ind1, char ind2, Long id)
+    {
+        DataField field = dataCount < dataFields.size() ? dataFields.get(dataCount) : null;
+        if (field == null || field.isShared()) {
+            field = new DataField(tag, ind1, ind2, id);
+            set(dataFields, dataCount++, field);
+            return field;
+        }
+        dataCount++;
+        field.setTag(tag);
+        field.setIndicator1(ind1);
+        field.setIndicator2(ind2);
+        field.setId(id);
+        field.peekSubfields().clear();
+        return field;
+    }
+
+    /**
+     * <p>
+     * Returns a subfield with the given values, copying the slice of
+     * data.
+     * </p>
+     *
+     * @param code the data element identifier
+     * @param buf the buffer holding the data
+     * @param offset the offset of the data
+     * @param length the length of the data
+     * @param linkCode the link code
+     * @return {@link Subfield} - the subfield
+     */
+    public Subfield subfield(char code, char[] buf, int offset, int length, String linkCode)
+    {
+        Subfield subfield = subfieldCount < subfields.size() ? subfields.get(subfieldCount) : null;
+        if (subfield == null || subfield.isShared()) {
+            subfield = new Subfield(code, Arrays.copyOfRange(buf, offset, offset + length), linkCode);
+            set(subfields, subfieldCount++, subfield);
+            return subfield;
+        }
+        subfieldCount++;
+        subfield.setCode(code);
+        subfield.setData(copy(subfield.getData(), buf, offset, length));
+        subfield.setLinkCode(linkCode);
+        return subfield;
+    }
+
+    private static <T> void set(List<T> pool, int i, T element)
+    {
+        if (i < pool.size()) {
+            pool.set(i, element);
+        } else {
+            pool.add(element);
+        }
+    }
+
+    private static char[] copy(char[] data, char[] buf, int offset, int length)
+    {
+        // the array is reused when it has the same length, as fixed
+        // length fields and codes often have
+        if (data == null || data.length != length) {
+            return Arrays.copyOfRange(buf, offset, offset + length);
+        }
+        System.arraycopy(buf, offset, data, 0, length);
+        return data;
+    }
+}
@@ -21,9 +21,11 @@
 package org.marc4j.marc;
 
 import java.io.Serializable;
-import java.text.DecimalFormat;
 import java.util.Arrays;
 
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+
 /**
  * <p>
  * <code>Leader</code> defines behaviour for the record label
@@ -49,6 +51,14 @@
  * This structure is returned by the {@link #marshal()} method.
  * </p>
  *
+ * <p>
+ * The leader can also be parsed from and written to a window of a
+ * <code>char[]</code> or <code>byte[]</code> buffer without creating
+ * intermediate strings. A parser can refill the same instance for every
+ * record: the implementation defined and entry map arrays are then
+ * overwritten in place.
+ * </p>
+ *
  * @author <a href="mailto:mail@bpeters.com">Bas Peters</a>
  * @version $Revision: 1.10 $
  *
@@ -59,6 +69,12 @@
 
     private static final long serialVersionUID = 1L;
 
+    /** The length of the leader. */
+    public static final int LENGTH = 24;
+
+    /** DIGIT ZERO. */
+    private static final char ZERO = 0x0030;
+
     /** The logical record length. */
     private int recordLength;
 
@@ -89,9 +105,6 @@
     /** Entry map. */
     private char[] entryMap;
 
-    /** number format for both record length and base address of data */
-    DecimalFormat df = new DecimalFormat("00000");
-
     public Leader()
     {
     }
@@ -385,41 +398,78 @@ public char[] getEntryMap()
     public void unmarshal(final String ldr)
         throws MarcException
     {
-        try {
-            String s;
-            s = ldr.substring(0, 5);
-            if (this.isInteger(s)) {
-                this.setRecordLength(Integer.parseInt(s));
-            } else {
-                this.setRecordLength(0);
-            }
-            this.setRecordStatus(ldr.charAt(5));
-            this.setTypeOfRecord(ldr.charAt(6));
-            this.setImplDefined1(ldr.substring(7, 9).toCharArray());
-            this.setCharCodingScheme(ldr.charAt(9));
-            s = String.valueOf(ldr.charAt(10));
-            if (this.isInteger(s)) {
-                this.setIndicatorCount(Integer.parseInt(s));
-            } else {
-                this.setIndicatorCount(2);
-            }
-            s = String.valueOf(ldr.charAt(10));
-            if (this.isInteger(s)) {
-                this.setSubfieldCodeLength(Integer.parseInt(s));
-            } else {
-                this.setSubfieldCodeLength(2);
-            }
-            s = ldr.substring(12, 17);
-            if (this.isInteger(s)) {
-                this.setBaseAddressOfData(Integer.parseInt(s));
-            } else {
-                this.setBaseAddressOfData(0);
-            }
-            this.setImplDefined2(ldr.substring(17, 20).toCharArray());
-            this.setEntryMap(ldr.substring(20, 24).toCharArray());
-        } catch (NumberFormatException e) {
-            throw new MarcException("Unable to parse leader", e);
-        }
+        if (ldr.length() < LENGTH) throw new MarcException("Unable to parse leader");
+        char[] buf = new char[LENGTH];
+        ldr.getChars(0, LENGTH, buf, 0);
+        this.unmarshal(buf, 0);
+    }
+
+    /**
+     * <p>
+     * Parses the leader from 24 characters of a buffer.
+     * </p>
+     *
+     * <p>
+     * Record length and base address of data are defaulted to 0, and
+     * indicator count and subfield code length to 2, if they are not
+     * integer values.
+     * </p>
+     *
+     * @param ldr the buffer
+     * @param offset the position of the leader in the buffer
+     * @throws MarcException if the buffer holds less than 24 characters
+     *         from the given position
+     */
+    public void unmarshal(final char[] ldr, int offset)
+        throws MarcException
+    {
+        if (offset < 0 || ldr.length - offset < LENGTH) throw new MarcException("Unable to parse leader");
+        int value = parseNumber(ldr, offset, 5);
+        this.setRecordLength(value < 0 ? 0 : value);
+        this.setRecordStatus(ldr[offset + 5]);
+        this.setTypeOfRecord(ldr[offset + 6]);
+        this.setImplDefined1(copy(ldr, offset + 7, this.implDefined1, 2));
+        this.setCharCodingScheme(ldr[offset + 9]);
+        value = parseNumber(ldr, offset + 10, 1);
+        this.setIndicatorCount(value < 0 ? 2 : value);
+        value = parseNumber(ldr, offset + 11, 1);
+        this.setSubfieldCodeLength(value < 0 ? 2 : value);
+        value = parseNumber(ldr, offset + 12, 5);
+        this.setBaseAddressOfData(value < 0 ? 0 : value);
+        this.setImplDefined2(copy(ldr, offset + 17, this.implDefined2, 3));
+        this.setEntryMap(copy(ldr, offset + 20, this.entryMap, 4));
+    }
+
+    /**
+     * <p>
+     * Parses the leader from 24 bytes of a buffer, decoded as Latin-1
+     * characters.
+     * </p>
+     *
+     * @param ldr the buffer
+     * @param offset the position of the leader in the buffer
+     * @throws MarcException if the buffer holds less than 24 bytes
+     *         from the given position
+     * @see #unmarshal(char[], int)
+     */
+    public void unmarshal(final byte[] ldr, int offset)
+        throws MarcException
+    {
+        if (offset < 0 || ldr.length - offset < LENGTH) throw new MarcException("Unable to parse leader");
+        int value = parseNumber(ldr, offset, 5);
+        this.setRecordLength(value < 0 ? 0 : value);
+        this.setRecordStatus((char)(ldr[offset + 5] & 0xFF));
+        this.setTypeOfRecord((char)(ldr[offset + 6] & 0xFF));
+        this.setImplDefined1(copy(ldr, offset + 7, this.implDefined1, 2));
+        this.setCharCodingScheme((char)(ldr[offset + 9] & 0xFF));
+        value = parseNumber(ldr, offset + 10, 1);
+        this.setIndicatorCount(value < 0 ? 2 : value);
+        value = parseNumber(ldr, offset + 11, 1);
+        this.setSubfieldCodeLength(value < 0 ? 2 : value);
+        value = parseNumber(ldr, offset + 12, 5);
+        this.setBaseAddressOfData(value < 0 ? 0 : value);
+        this.setImplDefined2(copy(ldr, offset + 17, this.implDefined2, 3));
+        this.setEntryMap(copy(ldr, offset + 20, this.entryMap, 4));
     }
 
     /**
@@ -432,45 +482,173 @@ public void unmarshal(final String ldr)
      */
     public String marshal()
     {
-        return new StringBuffer()
-            .append(this.df.format(this.recordLength).toString())
-            .append(this.recordStatus)
+        StringBuilder sb = new StringBuilder(LENGTH);
+        appendNumber(sb, this.recordLength, 5);
+        sb.append(this.recordStatus)
             .append(this.typeOfRecord)
             .append(this.implDefined1)
             .append(this.charCodingScheme)
             .append(this.indicatorCount)
-            .append(this.subfieldCodeLength)
-            .append(this.df.format(this.baseAddressOfData).toString())
-            .append(this.implDefined2)
+            .append(this.subfieldCodeLength);
+        appendNumber(sb, this.baseAddressOfData, 5);
+        return sb.append(this.implDefined2)
             .append(this.entryMap)
             .toString();
     }
 
-    private boolean isInteger(String value)
+    /**
+     * <p>
+     * Writes the record label into 24 characters of a buffer.
+     * </p>
+     *
+     * @param buf the buffer
+     * @param offset the position of the leader in the buffer
+     * @throws MarcException if a value does not fit its positions
+     */
+    public void marshal(char[] buf, int offset)
+        throws MarcException
+    {
+        checkFixedWidth();
+        writeNumber(buf, offset, this.recordLength, 5);
+        buf[offset + 5] = this.recordStatus;
+        buf[offset + 6] = this.typeOfRecord;
+        System.arraycopy(this.implDefined1, 0, buf, offset + 7, 2);
+        buf[offset + 9] = this.charCodingScheme;
+        writeNumber(buf, offset + 10, this.indicatorCount, 1);
+        writeNumber(buf, offset + 11, this.subfieldCodeLength, 1);
+        writeNumber(buf, offset + 12, this.baseAddressOfData, 5);
+        System.arraycopy(this.implDefined2, 0, buf, offset + 17, 3);
+        System.arraycopy(this.entryMap, 0, buf, offset + 20, 4);
+    }
+
+    /**
+     * <p>
+     * Writes the record label into 24 bytes of a buffer, encoding the
+     * characters as Latin-1.
+     * </p>
+     *
+     * @param buf the buffer
+     * @param offset the position of the leader in the buffer
+     * @throws MarcException if a value does not fit its positions
+     */
+    public void marshal(byte[] buf, int offset)
+        throws MarcException
+    {
+        checkFixedWidth();
+        writeNumber(buf, offset, this.recordLength, 5);
+        buf[offset + 5] = (byte)this.recordStatus;
+        buf[offset + 6] = (byte)this.typeOfRecord;
+        write(buf, offset + 7, this.implDefined1);
+        buf[offset + 9] = (byte)this.charCodingScheme;
+        writeNumber(buf, offset + 10, this.indicatorCount, 1);
+        writeNumber(buf, offset + 11, this.subfieldCodeLength, 1);
+        writeNumber(buf, offset + 12, this.baseAddressOfData, 5);
+        write(buf, offset + 17, this.implDefined2);
+        write(buf, offset + 20, this.entryMap);
+    }
+
+    private void checkFixedWidth()
+    {
+        if (this.recordLength < 0 || this.recordLength > 99999)
+            throw new MarcException("Record length does not fit the leader: " + this.recordLength);
+        if (this.baseAddressOfData < 0 || this.baseAddressOfData > 99999)
+            throw new MarcException("Base address of data does not fit the leader: " + this.baseAddressOfData);
+        if (this.indicatorCount < 0 || this.indicatorCount > 9 || this.subfieldCodeLength < 0
+            || this.subfieldCodeLength > 9)
+            throw new MarcException("Indicator count or subfield code length does not fit the leader");
+        if (this.implDefined1.length != 2 || this.implDefined2.length != 3 || this.entryMap.length != 4)
+            throw new MarcException("Implementation defined values or entry map do not fit the leader");
+    }
+
+    /**
+     * <p>
+     * Parses a fixed width number of digits, returning -1 if a
+     * character is not a digit.
+     * </p>
+     */
+    private static int parseNumber(char[] buf, int offset, int width)
+    {
+        int value = 0;
+        for (int i = offset; i < offset + width; i++) {
+            int digit = buf[i] - ZERO;
+            if (digit < 0 || digit > 9) return -1;
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private static int parseNumber(byte[] buf, int offset, int width)
+    {
+        int value = 0;
+        for (int i = offset; i < offset + width; i++) {
+            int digit = buf[i] - ZERO;
+            if (digit < 0 || digit > 9) return -1;
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private static void writeNumber(char[] buf, int offset, int value, int width)
+    {
+        for (int i = offset + width - 1; i >= offset; i--) {
+            buf[i] = (char)(ZERO + value % 10);
+            value /= 10;
+        }
+    }
+
+    private static void writeNumber(byte[] buf, int offset, int value, int width)
+    {
+        for (int i = offset + width - 1; i >= offset; i--) {
+            buf[i] = (byte)(ZERO + value % 10);
+            value /= 10;
+        }
+    }
+
+    /**
+     * <p>
+     * Appends a number padded with zeros to the given width, as the
+     * pattern "00000" of <code>DecimalFormat</code> did.
+     * </p>
+     */
+    private static void appendNumber(StringBuilder sb, int value, int width)
+    {
+        if (value < 0) {
+            sb.append('-');
+            value = -value;
+        }
+        for (int digits = 10, i = 1; i < width; i++, digits *= 10) {
+            if (value < digits) sb.append(ZERO);
+        }
+        sb.append(value);
+    }
+
+    private static void write(byte[] buf, int offset, char[] chars)
     {
-        int len = value.length();
-        if (len == 0) {
-            return false;
+        for (int i = 0; i < chars.length; i++) {
+            buf[offset + i] = (byte)chars[i];
         }
-        int i = 0;
-        do {
-            switch (value.charAt(i)) {
-                case '0':
-                case '1':
-                case '2':
-                case '3':
-                case '4':
-                case '5':
-                case '6':
-                case '7':
-                case '8':
-                case '9':
-                    break;
-                default:
-                    return false;
-            }
-        } while (++i < len);
-        return true;
+    }
+
+    /**
+     * <p>
+     * Copies characters into the given array, or into a new one if it
+     * does not have the given length.
+     * </p>
+     */
+    private static char[] copy(char[] src, int offset, char[] dest, int length)
+    {
+        if (dest == null || dest.length != length) dest = new char[length];
+        System.arraycopy(src, offset, dest, 0, length);
+        return dest;
+    }
+
+    private static char[] copy(byte[] src, int offset, char[] dest, int length)
+    {
+        if (dest == null || dest.length != length) dest = new char[length];
+        for (int i = 0; i < length; i++) {
+            dest[i] = (char)(src[offset + i] & 0xFF);
+        }
+        return dest;
     }
 
     /*
@@ -501,6 +679,45 @@ public Object clone()
         }
     }
 
+    @Override
+    public boolean equals(Object obj)
+    {
+        if (obj == null) return false;
+        if (obj == this) return true;
+        if (obj.getClass() != getClass()) return false;
+
+        Leader that = (Leader)obj;
+        return new EqualsBuilder()
+            .append(this.recordLength, that.recordLength)
+            .append(this.recordStatus, that.recordStatus)
+            .append(this.typeOfRecord, that.typeOfRecord)
+            .append(this.implDefined1, that.implDefined1)
+            .append(this.charCodingScheme, that.charCodingScheme)
+            .append(this.indicatorCount, that.indicatorCount)
+            .append(this.subfieldCodeLength, that.subfieldCodeLength)
+            .append(this.baseAddressOfData, that.baseAddressOfData)
+            .append(this.implDefined2, that.implDefined2)
+            .append(this.entryMap, that.entryMap)
+            .isEquals();
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return new HashCodeBuilder()
+            .append(this.recordLength)
+            .append(this.recordStatus)
+            .append(this.typeOfRecord)
+            .append(this.implDefined1)
+            .append(this.charCodingScheme)
+            .append(this.indicatorCount)
+            .append(this.subfieldCodeLength)
+            .append(this.baseAddressOfData)
+            .append(this.implDefined2)
+            .append(this.entryMap)
+            .toHashCode();
+    }
+
     @Override
     public String toString()
     {
@@ -515,7 +732,6 @@ public String toString()
         builder.append(",  baseAddressOfData=").append(this.baseAddressOfData);
         builder.append(",  implDefined2=").append(Arrays.toString(this.implDefined2));
         builder.append(",  entryMap=").append(Arrays.toString(this.entryMap));
-        builder.append(",  df=").append(this.df);
         builder.append("]");
         return builder.toString();
     }
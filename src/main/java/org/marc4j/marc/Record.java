@@ -20,13 +20,19 @@
  */
 package org.marc4j.marc;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Serializable;
-import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
 
 /**
  * <p>
@@ -71,10 +77,10 @@
     private Leader leader;
 
     /** A collection of control fields. */
-    private List<ControlField> controlFieldList = new ArrayList<>();
+    private List<ControlField> controlFieldList = new FieldList<>();
 
     /** A collection of data fields. */
-    private List<DataField> dataFieldList = new ArrayList<>();
+    private List<DataField> dataFieldList = new FieldList<>();
 
     /**
      * <p>
@@ -181,7 +187,7 @@ public ControlField getControlNumberField()
     {
         ControlField cf = this.controlFieldList.get(0);
         if (cf.getTag().equals("001")) {
-            return cf;
+            return this.controlFields().own(0);
         }
         return null;
     }
@@ -219,14 +225,25 @@ public ControlField getControlField(String tag)
         if (!Tag.isControlField(tag)) {
             return null;
         }
+        return this.controlFields().getFirst(tag);
+    }
 
-        for (ControlField controlField : this.controlFieldList) {
-            ControlField cf = controlField;
-            if (cf.getTag().equals(tag)) {
-                return cf;
-            }
-        }
-        return null;
+    /**
+     * <p>
+     * Returns the control fields for the given tag.
+     * </p>
+     *
+     * <p>
+     * The list is a read only view of the control fields of the record
+     * and must not be used after the record is modified.
+     * </p>
+     *
+     * @param tag the tag name
+     * @return {@link List} - the control fields, empty if there are none
+     */
+    public List<ControlField> getControlFields(String tag)
+    {
+        return this.controlFields().getAll(tag);
     }
 
     /**
@@ -239,14 +256,29 @@ public ControlField getControlField(String tag)
      */
     public boolean hasVariableField(String tag)
     {
-        List<VariableField> list = this.getVariableFieldList();
-        for (VariableField variableField : list) {
-            VariableField vf = variableField;
-            if (vf.getTag().equals(tag)) {
-                return true;
-            }
+        return this.controlFields().contains(tag) || this.dataFields().contains(tag);
+    }
+
+    /**
+     * <p>
+     * Returns the variable fields for the given tag.
+     * </p>
+     *
+     * <p>
+     * The list is a read only view of the fields of the record and must
+     * not be used after the record is modified.
+     * </p>
+     *
+     * @param tag the tag name
+     * @return {@link List} - the variable fields, empty if there are none
+     */
+    public List<VariableField> getVariableFields(String tag)
+    {
+        List<? extends VariableField> fields = this.controlFields().getAll(tag);
+        if (fields.isEmpty()) {
+            fields = this.dataFields().getAll(tag);
         }
-        return false;
+        return Collections.unmodifiableList(fields);
     }
 
     /**
@@ -262,14 +294,25 @@ public DataField getDataField(String tag)
         if (!Tag.isDataField(tag)) {
             return null;
         }
+        return this.dataFields().getFirst(tag);
+    }
 
-        for (DataField dataField : this.dataFieldList) {
-            DataField df = dataField;
-            if (df.getTag().equals(tag)) {
-                return df;
-            }
-        }
-        return null;
+    /**
+     * <p>
+     * Returns the data fields for the given tag.
+     * </p>
+     *
+     * <p>
+     * The list is a read only view of the data fields of the record
+     * and must not be used after the record is modified.
+     * </p>
+     *
+     * @param tag the tag name
+     * @return {@link List} - the data fields, empty if there are none
+     */
+    public List<DataField> getDataFields(String tag)
+    {
+        return this.dataFields().getAll(tag);
     }
 
     /**
@@ -310,6 +353,7 @@ public boolean hasControlNumberField()
      */
     public List<ControlField> getControlFieldList()
     {
+        this.controlFields().ownAll();
         return this.controlFieldList;
     }
 
@@ -333,10 +377,10 @@ public List<ControlField> getControlFieldList()
     public void setControlFieldList(List<ControlField> newList)
     {
         if (newList == null) {
-            this.controlFieldList = new ArrayList<>();
+            this.controlFieldList = new FieldList<>();
             return;
         }
-        this.controlFieldList = new ArrayList<>();
+        this.controlFieldList = new FieldList<>();
         for (ControlField controlField : newList) {
             Object obj = controlField;
             if (obj instanceof ControlField) {
@@ -358,6 +402,7 @@ public void setControlFieldList(List<ControlField> newList)
      */
     public List<DataField> getDataFieldList()
     {
+        this.dataFields().ownAll();
         return this.dataFieldList;
     }
 
@@ -381,10 +426,10 @@ public List<DataField> getDataFieldList()
     public void setDataFieldList(List<DataField> newList)
     {
         if (newList == null) {
-            this.dataFieldList = new ArrayList<>();
+            this.dataFieldList = new FieldList<>();
             return;
         }
-        this.dataFieldList = new ArrayList<>();
+        this.dataFieldList = new FieldList<>();
         for (DataField dataField : newList) {
             this.add(dataField);
         }
@@ -411,7 +456,9 @@ public void setDataFieldList(List<DataField> newList)
      */
     public List<VariableField> getVariableFieldList()
     {
-        List<VariableField> variableFields = new ArrayList<>();
+        List<VariableField> variableFields = new ArrayList<>(this.controlFieldList.size() + this.dataFieldList.size());
+        this.controlFields().ownAll();
+        this.dataFields().ownAll();
         for (ControlField controlField : this.controlFieldList) {
             variableFields.add(controlField);
         }
@@ -442,12 +489,12 @@ public List<VariableField> getVariableFieldList()
     public void setVariableFieldList(List<VariableField> newList)
     {
         if (newList == null) {
-            this.controlFieldList = new ArrayList<>();
-            this.dataFieldList = new ArrayList<>();
+            this.controlFieldList = new FieldList<>();
+            this.dataFieldList = new FieldList<>();
             return;
         }
-        this.controlFieldList = new ArrayList<>();
-        this.dataFieldList = new ArrayList<>();
+        this.controlFieldList = new FieldList<>();
+        this.dataFieldList = new FieldList<>();
         for (VariableField variableField : newList) {
             Object obj = variableField;
             if (obj instanceof ControlField) {
@@ -479,7 +526,8 @@ public String marshal()
     {
 
         // throw exception if record contains no leader
-        if (this.leader == null) {
+        Leader leader = this.getLeader();
+        if (leader == null) {
             throw new MarcException("Record contains no leader");
         }
 
@@ -492,14 +540,14 @@ public String marshal()
         Directory directory = new Directory();
 
         // append control fields to directory and data
-        for (ControlField controlField : this.controlFieldList) {
+        for (ControlField controlField : this.peekControlFields()) {
             ControlField cf = controlField;
             directory.add(cf.getTag(), cf.getLength());
             data.append(cf.marshal());
         }
 
         // append data fields to directory and data
-        for (DataField dataField : this.dataFieldList) {
+        for (DataField dataField : this.peekDataFields()) {
             DataField df = dataField;
             directory.add(df.getTag(), df.getLength());
             data.append(df.marshal());
@@ -508,11 +556,11 @@ public String marshal()
         // add base address of data and logical record length tp the leader
         int baseAddress = 24 + directory.getLength();
         int recordLength = baseAddress + data.length() + 1;
-        this.leader.setRecordLength(recordLength);
-        this.leader.setBaseAddressOfData(baseAddress);
+        leader.setRecordLength(recordLength);
+        leader.setBaseAddressOfData(baseAddress);
 
         // return record in tape format
-        return this.leader.marshal() + directory.marshal() + data + Record.RT;
+        return leader.marshal() + directory.marshal() + data + Record.RT;
     }
 
     /**
@@ -525,81 +573,198 @@ public String marshal()
      * Variable fields are sorted by tag name.
      * </p>
      *
+     * <p>
+     * Directory lengths and starting positions are counted in bytes of
+     * the given encoding, so the result is only meaningful once it is
+     * encoded again with the same encoding. To write records to a
+     * stream use {@link #marshal(OutputStream, String)} instead.
+     * </p>
+     *
      * @param encoding charset enconding used to calculate the
      *        datafield length.
      * @return <code>String</code> - the MARC record
      * @throws MarcException if the record contains no leader or no
+     *         control number field, or if the encoding is not supported
+     */
+    public String marshal(String encoding)
+    {
+        if (StringUtils.isBlank(encoding)) {
+            return marshal();
+        }
+        RecordMarshaller marshaller = new RecordMarshaller(encoding);
+        marshaller.marshal(this);
+        return new String(marshaller.toByteArray(), marshaller.getCharset());
+    }
+
+    /**
+     * <p>
+     * Writes the record in tape format to an output stream, encoding
+     * the characters as ISO-8859-1.
+     * </p>
+     *
+     * <p>
+     * To write many records reuse a {@link RecordMarshaller} instead.
+     * </p>
+     *
+     * @param out the output stream
+     * @throws IOException if an I/O error occurs
+     * @throws MarcException if the record contains no leader or no
      *         control number field
      */
-    /*
-     * NOTA IMPORTANTE: Se sobrecarga el m�todo original marshal haciendo
-     * una copia del original. En el m�todo original se podr�a utilizar
-     * este pas�ndole un encoding null, pero no se hace para evitar que
-     * pudiese haber posibles errores con una clase que se utiliza en
-     * bastantes sitios.
+    public void marshal(OutputStream out)
+        throws IOException
+    {
+        new RecordMarshaller().write(this, out);
+    }
+
+    /**
+     * <p>
+     * Writes the record in tape format to an output stream, encoding
+     * the data of the fields with the given encoding.
+     * </p>
+     *
+     * @param out the output stream
+     * @param encoding the name of the encoding
+     * @throws IOException if an I/O error occurs
+     * @throws MarcException if the record contains no leader or no
+     *         control number field, or if the encoding is not supported
      */
-    public String marshal(String encoding)
+    public void marshal(OutputStream out, String encoding)
+        throws IOException
     {
+        new RecordMarshaller(encoding).write(this, out);
+    }
 
-        // throw exception if record contains no leader
-        if (this.leader == null) {
-            throw new MarcException("Record contains no leader");
-        }
+    /**
+     * <p>
+     * Writes the record in the binary format of {@link RecordCodec}.
+     * </p>
+     *
+     * <p>
+     * To write many records reuse a {@link RecordCodec} instead.
+     * </p>
+     *
+     * @param out the output
+     * @throws IOException if an I/O error occurs
+     */
+    public void writeTo(DataOutput out)
+        throws IOException
+    {
+        new RecordCodec().write(this, out);
+    }
 
-        // throw exception if record contains no control number field
-        if (!this.hasControlNumberField()) {
-            throw new MarcException("Record contains no control number field (tag 001)");
-        }
+    /**
+     * <p>
+     * Reads a record written by {@link #writeTo(DataOutput)}.
+     * </p>
+     *
+     * @param in the input
+     * @return {@link Record} - the record
+     * @throws IOException if an I/O error occurs
+     * @throws MarcException if the data is not a record in a supported
+     *         version of the format
+     */
+    public static Record readFrom(DataInput in)
+        throws IOException
+    {
+        return new RecordCodec().read(in);
+    }
 
-        StringBuilder data = new StringBuilder();
-        Directory directory = new Directory();
+    @Override
+    public boolean equals(Object obj)
+    {
+        if (obj == null) return false;
+        if (obj == this) return true;
+        if (!(obj instanceof Record)) return false;
+
+        Record that = (Record)obj;
+        return new EqualsBuilder()
+            .append(this.getLeader(), that.getLeader())
+            .append(this.peekControlFields(), that.peekControlFields())
+            .append(this.peekDataFields(), that.peekDataFields())
+            .isEquals();
+    }
 
-        try {
-            // append control fields to directory and data
-            for (ControlField controlField : this.controlFieldList) {
-                ControlField cf = controlField;
-                int fieldLength = 0;
-                if (StringUtils.isNotBlank(encoding)) {
-                    fieldLength = cf.marshal().getBytes(encoding).length;
-                } else {
-                    fieldLength = cf.getLength();
-                }
-                directory.add(cf.getTag(), fieldLength);
-                data.append(cf.marshal());
-            }
+    @Override
+    public int hashCode()
+    {
+        return new HashCodeBuilder()
+            .append(this.getLeader())
+            .append(this.peekControlFields())
+            .append(this.peekDataFields())
+            .toHashCode();
+    }
 
-            // append data fields to directory and data
-            for (DataField dataField : this.dataFieldList) {
-                DataField df = dataField;
-                int fieldLength = 0;
-                if (StringUtils.isNotBlank(encoding)) {
-                    fieldLength = df.marshal().getBytes(encoding).length;
-                } else {
-                    fieldLength = df.getLength();
-                }
-                directory.add(df.getTag(), fieldLength);
-                data.append(df.marshal());
-            }
+    /**
+     * <p>
+     * Removes the leader and the fields, so the record can be filled
+     * again by a {@link FieldPool}.
+     * </p>
+     */
+    void reset()
+    {
+        this.leader = null;
+        this.controlFields().clear();
+        this.dataFields().clear();
+    }
 
-            // add base address of data and logical record length tp the leader
-            int baseAddress = 24 + directory.getLength();
-            int recordLength = baseAddress + data.length() + 1;
-            if (StringUtils.isNotBlank(encoding)) {
-                recordLength = baseAddress + data.toString().getBytes(encoding).length + 1;
-            }
-            this.leader.setRecordLength(recordLength);
-            this.leader.setBaseAddressOfData(baseAddress);
+    /**
+     * <p>
+     * Returns the control fields without copying the fields shared with
+     * a copy made by {@link #cloneShared()}. The fields must not be
+     * modified.
+     * </p>
+     * @return {@link List} - the control fields
+     */
+    List<ControlField> peekControlFields()
+    {
+        return this.controlFieldList;
+    }
 
-        } catch (UnsupportedEncodingException ex) {
-            throw new MarcException("Error getting the bytes of a string with encoding " + encoding, ex);
+    /**
+     * <p>
+     * Returns the data fields without copying the fields shared with a
+     * copy made by {@link #cloneShared()}. The fields must not be
+     * modified.
+     * </p>
+     * @return {@link List} - the data fields
+     */
+    List<DataField> peekDataFields()
+    {
+        return this.dataFieldList;
+    }
+
+    private FieldList<ControlField> controlFields()
+    {
+        // records serialized before the index was added hold plain lists
+        if (!(this.controlFieldList instanceof FieldList)) {
+            this.controlFieldList = new FieldList<>(this.controlFieldList);
         }
+        return (FieldList<ControlField>)this.controlFieldList;
+    }
 
-        // return record in tape format
-        return this.leader.marshal() + directory.marshal() + data + Record.RT;
+    private FieldList<DataField> dataFields()
+    {
+        if (!(this.dataFieldList instanceof FieldList)) {
+            this.dataFieldList = new FieldList<>(this.dataFieldList);
+        }
+        return (FieldList<DataField>)this.dataFieldList;
     }
 
-    /*
-     * @see java.lang.Object#clone()
+    /**
+     * <p>
+     * Returns a copy of the record.
+     * </p>
+     *
+     * <p>
+     * The leader and every field are copied, and the copies of the
+     * fields have no id. The tag index and the raw content of unparsed
+     * data fields are shared with the copy; a data field copies its
+     * content before an indicator is changed. To copy the fields only
+     * when they are requested use {@link #cloneShared()}.
+     * </p>
+     *
+     * @return <code>Object</code> - the copy
      */
     @Override
     public Object clone()
@@ -611,21 +776,50 @@ public Object clone()
             throw new MarcException("Unssoported clone method.", ex);
         }
 
-        instance.leader = (Leader)this.leader.clone();
-        if (this.controlFieldList != null) {
-            ArrayList<ControlField> newList = new ArrayList<>();
-            for (ControlField controlField : this.controlFieldList) {
-                newList.add((ControlField)controlField.clone());
-            }
-            instance.setControlFieldList(newList);
+        if (this.leader != null) {
+            instance.leader = (Leader)this.leader.clone();
         }
-        if (this.dataFieldList != null) {
-            ArrayList<DataField> newList = new ArrayList<>();
-            for (DataField dataField : this.dataFieldList) {
-                newList.add((DataField)dataField.clone());
-            }
-            instance.setDataFieldList(newList);
+        instance.controlFieldList = this.controlFields().copy();
+        instance.dataFieldList = this.dataFields().copy();
+        return instance;
+    }
+
+    /**
+     * <p>
+     * Returns a copy of the record that shares the fields with this
+     * record until they are handed out.
+     * </p>
+     * <p>
+     * Only the leader is copied at once. Both records copy a shared
+     * field the first time one of their getters hands it out, such as
+     * {@link #getDataField(String)} or {@link #getDataFieldList()}, so a
+     * record that is copied several times and changed in a few fields
+     * only pays for the fields that are requested. Data fields share
+     * their subfields in the same way. Fields with an id are copied at
+     * once, without the id, as {@link #clone()} does.
+     * </p>
+     * <p>
+     * <b>Note:</b> fields and subfields obtained from this record before
+     * the copy was made must not be modified, since they may be the ones
+     * kept by the copy. Use {@link #clone()} when such references are
+     * still in use.
+     * </p>
+     * @return {@link Record} - the copy
+     */
+    public Record cloneShared()
+    {
+        Record instance;
+        try {
+            instance = (Record)super.clone();
+        } catch (CloneNotSupportedException ex) {
+            throw new MarcException("Unssoported clone method.", ex);
+        }
+
+        if (this.leader != null) {
+            instance.leader = (Leader)this.leader.clone();
         }
+        instance.controlFieldList = this.controlFields().share();
+        instance.dataFieldList = this.dataFields().share();
         return instance;
     }
 
@@ -634,13 +828,13 @@ public String toString()
     {
         return new StringBuilder()
             .append("RECORD \n leader:[ ")
-            .append(this.leader)
+            .append(this.getLeader())
             .append(" ]")
             .append("\n controlFieldList:[ ")
-            .append(Arrays.toString(this.controlFieldList.toArray()))
+            .append(Arrays.toString(this.peekControlFields().toArray()))
             .append(" ] ")
             .append("\n dataFieldList:[ ")
-            .append(Arrays.toString(this.dataFieldList.toArray()))
+            .append(Arrays.toString(this.peekDataFields().toArray()))
             .append(" ] ")
             .toString();
     }
@@ -0,0 +1,363 @@
+/**
+ * Copyright (C) 2019 DIGIBÍS S.L.
+ *
+ * This file is part of MARC4J
+ *
+ * MARC4J is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * MARC4J is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with MARC4J; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.marc4j.marc;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * <p>
+ * Stores records outside the Java heap, for collections too large to be
+ * kept as <code>Record</code> objects.
+ * </p>
+ *
+ * <p>
+ * Records are encoded with a {@link RecordCodec} and appended to direct
+ * buffers, or to the regions of a memory mapped file, of a fixed size.
+ * {@link #add(Record)} returns a handle to the stored record, and the
+ * handles are kept in direct buffers too, so the heap used by an arena
+ * does not grow with the number of records. A record is rebuilt on
+ * demand by {@link #get(int)} or {@link #getRecord(long)}, or as a
+ * {@link CompactRecord} by {@link #getCompactRecord(int)}.
+ * </p>
+ *
+ * <p>
+ * Stored records can not be modified or removed. An arena is not thread
+ * safe.
+ * </p>
+ *
+ * @see RecordCodec
+ */
+public class RecordArena
+    implements Iterable<Record>, Closeable
+{
+
+    /** The default size of the buffers. */
+    public static final int DEFAULT_ARENA_SIZE = 64 * 1024 * 1024;
+
+    /** The number of handles in a buffer of the index. */
+    private static final int INDEX_CHUNK = 1 << 16;
+
+    /** The size of the buffers */
+    private final int arenaSize;
+
+    /** The mapped file, or null when the buffers are direct */
+    private final FileChannel channel;
+
+    /** The length of the mapped file */
+    private long mappedLength;
+
+    /** The buffers holding the records */
+    private final List<ByteBuffer> arenas = new ArrayList<ByteBuffer>();
+
+    /** The buffer records are appended to */
+    private ByteBuffer current;
+
+    /** The buffers holding the handles */
+    private final List<LongBuffer> index = new ArrayList<LongBuffer>();
+
+    /** The number of records */
+    private int size;
+
+    /** The number of bytes used by the records */
+    private long usedBytes;
+
+    /** The codec */
+    private final RecordCodec codec = new RecordCodec();
+
+    /** The builder of compact records */
+    private final CompactRecord.Builder compactBuilder = new CompactRecord.Builder();
+
+    /**
+     * <p>
+     * Creates an arena of direct buffers of the default size.
+     * </p>
+     */
+    public RecordArena()
+    {
+        this(DEFAULT_ARENA_SIZE);
+    }
+
+    /**
+     * <p>
+     * Creates an arena of direct buffers of the given size.
+     * </p>
+     *
+     * @param arenaSize the size of the buffers
+     */
+    public RecordArena(int arenaSize)
+    {
+        if (arenaSize <= 0) {
+            throw new IllegalArgumentException("Invalid arena size: " + arenaSize);
+        }
+        this.arenaSize = arenaSize;
+        this.channel = null;
+    }
+
+    /**
+     * <p>
+     * Creates an arena that maps regions of the given size of a file. The
+     * file is truncated.
+     * </p>
+     *
+     * @param fileName the name of the file
+     * @param arenaSize the size of the regions
+     * @throws IOException if the file can not be opened
+     */
+    public RecordArena(String fileName, int arenaSize)
+        throws IOException
+    {
+        if (arenaSize <= 0) {
+            throw new IllegalArgumentException("Invalid arena size: " + arenaSize);
+        }
+        this.arenaSize = arenaSize;
+        RandomAccessFile file = new RandomAccessFile(fileName, "rw");
+        boolean opened = false;
+        try {
+            file.setLength(0);
+            this.channel = file.getChannel();
+            opened = true;
+        } finally {
+            // the channel closes the file once it is open
+            if (!opened) file.close();
+        }
+    }
+
+    /**
+     * <p>
+     * Stores a record.
+     * </p>
+     *
+     * @param record the record
+     * @return <code>long</code> - the handle of the stored record
+     */
+    public long add(Record record)
+    {
+        if (size == Integer.MAX_VALUE) {
+            throw new MarcException("Arena is full");
+        }
+        int length = codec.encode(record);
+        int needed = length + 4;
+        if (current == null || current.remaining() < needed) {
+            current = newArena(Math.max(needed, arenaSize));
+            arenas.add(current);
+        }
+        long handle = (long)(arenas.size() - 1) << 32 | current.position();
+        current.putInt(length);
+        codec.copyTo(current);
+        usedBytes += needed;
+
+        if (size % INDEX_CHUNK == 0) {
+            index.add(ByteBuffer.allocateDirect(INDEX_CHUNK * 8).asLongBuffer());
+        }
+        index.get(size / INDEX_CHUNK).put(size % INDEX_CHUNK, handle);
+        size++;
+        return handle;
+    }
+
+    /**
+     * <p>
+     * Stores the records of a collection.
+     * </p>
+     *
+     * @param records the records
+     */
+    public void addAll(Iterable<? extends Record> records)
+    {
+        for (Record record : records) {
+            add(record);
+        }
+    }
+
+    /**
+     * <p>
+     * Returns the number of records.
+     * </p>
+     *
+     * @return <code>int</code> - the number of records
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * <p>
+     * Returns the number of bytes used by the records, not counting the
+     * unused space at the end of the buffers.
+     * </p>
+     *
+     * @return <code>long</code> - the number of bytes
+     */
+    public long getUsedBytes()
+    {
+        return usedBytes;
+    }
+
+    /**
+     * <p>
+     * Returns the handle of the record at the given position.
+     * </p>
+     *
+     * @param i the position, in the order the records were added
+     * @return <code>long</code> - the handle
+     */
+    public long getHandle(int i)
+    {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+        }
+        return index.get(i / INDEX_CHUNK).get(i % INDEX_CHUNK);
+    }
+
+    /**
+     * <p>
+     * Rebuilds the record at the given position.
+     * </p>
+     *
+     * @param i the position, in the order the records were added
+     * @return {@link Record} - a new record
+     */
+    public Record get(int i)
+    {
+        return getRecord(getHandle(i));
+    }
+
+    /**
+     * <p>
+     * Rebuilds the record at the given position as a
+     * {@link CompactRecord}.
+     * </p>
+     *
+     * @param i the position, in the order the records were added
+     * @return {@link CompactRecord} - a new record
+     */
+    public CompactRecord getCompactRecord(int i)
+    {
+        ByteBuffer buffer = getBuffer(getHandle(i));
+        return codec.decodeCompact(buffer, buffer.getInt(), compactBuilder);
+    }
+
+    /**
+     * <p>
+     * Rebuilds the record with the given handle.
+     * </p>
+     *
+     * @param handle a handle returned by {@link #add(Record)}
+     * @return {@link Record} - a new record
+     */
+    public Record getRecord(long handle)
+    {
+        ByteBuffer buffer = getBuffer(handle);
+        return codec.decode(buffer, buffer.getInt());
+    }
+
+    /**
+     * <p>
+     * Returns an iterator over the records, which rebuilds each record as
+     * it is returned.
+     * </p>
+     *
+     * @return {@link Iterator} - the iterator
+     */
+    @Override
+    public Iterator<Record> iterator()
+    {
+        return new Iterator<Record>() {
+            private int next;
+
+            @Override
+            public boolean hasNext()
+            {
+                return next < size;
+            }
+
+            @Override
+            public Record next()
+            {
+                if (next >= size) {
+                    throw new NoSuchElementException();
+                }
+                return get(next++);
+            }
+
+            @Override
+            public void remove()
+            {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * <p>
+     * Releases the buffers and closes the mapped file. The direct
+     * buffers are freed when they are garbage collected.
+     * </p>
+     *
+     * @throws IOException if the file can not be closed
+     */
+    @Override
+    public void close()
+        throws IOException
+    {
+        arenas.clear();
+        index.clear();
+        current = null;
+        size = 0;
+        usedBytes = 0;
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    private ByteBuffer getBuffer(long handle)
+    {
+        int arena = (int)(handle >>> 32);
+        if (arena >= arenas.size()) {
+            throw new MarcException("Invalid record handle: " + handle);
+        }
+        ByteBuffer buffer = arenas.get(arena).duplicate();
+        buffer.position((int)handle);
+        return buffer;
+    }
+
+    private ByteBuffer newArena(int capacity)
+    {
+        if (channel == null) {
+            return ByteBuffer.allocateDirect(capacity);
+        }
+        try {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, mappedLength, capacity);
+            mappedLength += capacity;
+            return buffer;
+        } catch (IOException e) {
+            throw new MarcException("Unable to map record arena", e);
+        }
+    }
+}
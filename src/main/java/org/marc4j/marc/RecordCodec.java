@@ -0,0 +1,628 @@
+/**
+ * Copyright (C) 2019 DIGIBÍS S.L.
+ *
+ * This file is part of MARC4J
+ *
+ * MARC4J is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * MARC4J is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with MARC4J; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.marc4j.marc;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <p>
+ * Writes and reads records in a compact binary format, as a faster
+ * alternative to Java serialization for records that are written to
+ * temporary files or sent to other processes.
+ * </p>
+ *
+ * <p>
+ * A record is written as a version byte, the length of the data as a
+ * variable length integer and the data: the leader, the control fields
+ * and the data fields. Numbers are written as variable length integers,
+ * numeric tags as their value and character data as one byte per
+ * character when every character is in the ISO-8859-1 range, or two
+ * bytes otherwise. No class descriptors are written. Field ids and link
+ * codes are kept, and data fields whose subfields were not parsed are
+ * written and read back as raw content.
+ * </p>
+ *
+ * <p>
+ * A file of records starts with the header written by
+ * {@link #writeHeader(DataOutput)}, followed by the records.
+ * </p>
+ *
+ * <p>
+ * An instance reuses its buffers, so it should be reused for all the
+ * records written to or read from the same stream. It is not thread
+ * safe.
+ * </p>
+ *
+ * @see Record#writeTo(DataOutput)
+ * @see Record#readFrom(DataInput)
+ */
+public class RecordCodec
+{
+
+    /** The version of the format written. */
+    public static final int VERSION = 1;
+
+    /** The first bytes of a file of records. */
+    private static final int MAGIC = 0x4D344A52;
+
+    /** The record has a leader. */
+    private static final int HAS_LEADER = 1;
+
+    /** The field has an id. */
+    private static final int HAS_ID = 1;
+
+    /** The data field is written as raw content. */
+    private static final int RAW = 2;
+
+    /** The subfield has a link code. */
+    private static final int HAS_LINK_CODE = 1;
+
+    /** Initial size of the buffers. */
+    private static final int BUFFER_SIZE = 8192;
+
+    /** The buffer holding the record being written. */
+    private byte[] out = new byte[BUFFER_SIZE];
+
+    /** The write position. */
+    private int outPos;
+
+    /** The buffer holding the record being read. */
+    private byte[] in = new byte[BUFFER_SIZE];
+
+    /** The read position. */
+    private int inPos;
+
+    /** The end of the record being read. */
+    private int inEnd;
+
+    /** The characters read by {@link #readCharsToBuffer()}. */
+    private char[] chars = new char[256];
+
+    /**
+     * <p>
+     * Writes the header of a file of records.
+     * </p>
+     *
+     * @param output the output
+     * @throws IOException if an I/O error occurs
+     */
+    public void writeHeader(DataOutput output)
+        throws IOException
+    {
+        output.writeInt(MAGIC);
+        output.writeByte(VERSION);
+    }
+
+    /**
+     * <p>
+     * Reads the header of a file of records.
+     * </p>
+     *
+     * @param input the input
+     * @throws IOException if an I/O error occurs
+     * @throws MarcException if the input is not a file of records in a
+     *         supported version of the format
+     */
+    public void readHeader(DataInput input)
+        throws IOException
+    {
+        if (input.readInt() != MAGIC) {
+            throw new MarcException("Not a file of records");
+        }
+        int version = input.readUnsignedByte();
+        if (version != VERSION) {
+            throw new MarcException("Unsupported record format version " + version);
+        }
+    }
+
+    /**
+     * <p>
+     * Writes a record.
+     * </p>
+     *
+     * @param record the record
+     * @param output the output
+     * @return <code>int</code> - the number of bytes written
+     * @throws IOException if an I/O error occurs
+     */
+    public int write(Record record, DataOutput output)
+        throws IOException
+    {
+        encode(record);
+        output.writeByte(VERSION);
+        int written = 2 + outPos;
+        int length = outPos;
+        while ((length & ~0x7F) != 0) {
+            output.writeByte((length & 0x7F) | 0x80);
+            length >>>= 7;
+            written++;
+        }
+        output.writeByte(length);
+        output.write(out, 0, outPos);
+        return written;
+    }
+
+    /**
+     * <p>
+     * Reads a record.
+     * </p>
+     *
+     * @param input the input
+     * @return {@link Record} - the record
+     * @throws java.io.EOFException if the input ends before the record
+     * @throws IOException if an I/O error occurs
+     * @throws MarcException if the version is not supported or the data
+     *         is not a valid record
+     */
+    public Record read(DataInput input)
+        throws IOException
+    {
+        int length = readLength(input);
+        ensureInputCapacity(length);
+        input.readFully(in, 0, length);
+        return decode(length);
+    }
+
+    /**
+     * <p>
+     * Skips a record without decoding it.
+     * </p>
+     *
+     * @param input the input
+     * @throws java.io.EOFException if the input ends before the record
+     * @throws IOException if an I/O error occurs
+     * @throws MarcException if the version is not supported
+     */
+    void skip(DataInput input)
+        throws IOException
+    {
+        int length = readLength(input);
+        if (input.skipBytes(length) != length) {
+            throw new EOFException();
+        }
+    }
+
+    private int readLength(DataInput input)
+        throws IOException
+    {
+        int version = input.readUnsignedByte();
+        if (version != VERSION) {
+            throw new MarcException("Unsupported record format version " + version);
+        }
+        int length = 0;
+        for (int shift = 0;; shift += 7) {
+            int b = input.readUnsignedByte();
+            length |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) break;
+            if (shift > 21) throw new MarcException("Invalid record length");
+        }
+        return length;
+    }
+
+    /**
+     * <p>
+     * Encodes the body of a record, without version and length, into
+     * the buffer.
+     * </p>
+     *
+     * @param record the record
+     * @return <code>int</code> - the length of the body
+     */
+    int encode(Record record)
+    {
+        outPos = 0;
+        encodeRecord(record);
+        return outPos;
+    }
+
+    /**
+     * <p>
+     * Copies the body encoded by the last call to
+     * {@link #encode(Record)} to a buffer.
+     * </p>
+     *
+     * @param dst the buffer
+     */
+    void copyTo(ByteBuffer dst)
+    {
+        dst.put(out, 0, outPos);
+    }
+
+    /**
+     * <p>
+     * Decodes the body of a record from a buffer.
+     * </p>
+     *
+     * @param src the buffer, positioned at the body
+     * @param length the length of the body
+     * @return {@link Record} - the record
+     */
+    Record decode(ByteBuffer src, int length)
+    {
+        ensureInputCapacity(length);
+        src.get(in, 0, length);
+        return decode(length);
+    }
+
+    /**
+     * <p>
+     * Decodes the body of a record from a buffer into a compact record,
+     * without creating field objects. Field ids and link codes are
+     * dropped, as in {@link CompactRecord#CompactRecord(Record)}.
+     * </p>
+     *
+     * @param src the buffer, positioned at the body
+     * @param length the length of the body
+     * @param builder the builder of the record
+     * @return {@link CompactRecord} - the record
+     * @throws MarcException if the record contains no leader
+     */
+    CompactRecord decodeCompact(ByteBuffer src, int length, CompactRecord.Builder builder)
+    {
+        ensureInputCapacity(length);
+        src.get(in, 0, length);
+        inPos = 0;
+        inEnd = length;
+        builder.startRecord((readInt() & HAS_LEADER) != 0 ? readLeader() : null);
+
+        for (int i = 0, n = readInt(); i < n; i++) {
+            int flags = readInt();
+            String tag = readTag();
+            if ((flags & HAS_ID) != 0) readId();
+            int len = Math.max(readCharsToBuffer(), 0);
+            builder.controlField(tag, chars, 0, len);
+        }
+
+        for (int i = 0, n = readInt(); i < n; i++) {
+            int flags = readInt();
+            String tag = readTag();
+            if ((flags & HAS_ID) != 0) readId();
+            if ((flags & RAW) != 0) {
+                int len = readCharsToBuffer();
+                builder.dataField(tag, chars, 0, len);
+                continue;
+            }
+            char ind1 = (char)readInt();
+            char ind2 = (char)readInt();
+            builder.startDataField(ind1, ind2);
+            for (int j = 0, m = readInt(); j < m; j++) {
+                int code = readInt();
+                if ((code & HAS_LINK_CODE) != 0) readCharsToBuffer();
+                int len = Math.max(readCharsToBuffer(), 0);
+                builder.subfield((char)(code >>> 1), chars, 0, len);
+            }
+            builder.endDataField(tag);
+        }
+        if (inPos != inEnd) {
+            throw new MarcException("Invalid record data");
+        }
+        return builder.build();
+    }
+
+    private Record decode(int length)
+    {
+        inPos = 0;
+        inEnd = length;
+        Record record = decodeRecord();
+        if (inPos != inEnd) {
+            throw new MarcException("Invalid record data");
+        }
+        return record;
+    }
+
+    private void ensureInputCapacity(int length)
+    {
+        if (length > in.length) {
+            in = new byte[Math.max(length, in.length * 2)];
+        }
+    }
+
+    private void encodeRecord(Record record)
+    {
+        Leader leader = record.getLeader();
+        writeInt(leader != null ? HAS_LEADER : 0);
+        if (leader != null) {
+            writeInt(leader.getRecordLength());
+            writeInt(leader.getRecordStatus());
+            writeInt(leader.getTypeOfRecord());
+            writeChars(leader.getImplDefined1());
+            writeInt(leader.getCharCodingScheme());
+            writeInt(leader.getIndicatorCount());
+            writeInt(leader.getSubfieldCodeLength());
+            writeInt(leader.getBaseAddressOfData());
+            writeChars(leader.getImplDefined2());
+            writeChars(leader.getEntryMap());
+        }
+
+        List<ControlField> controlFields = record.peekControlFields();
+        writeInt(controlFields.size());
+        for (ControlField field : controlFields) {
+            writeFieldHeader(field, 0);
+            writeChars(field.getData());
+        }
+
+        List<DataField> dataFields = record.peekDataFields();
+        writeInt(dataFields.size());
+        for (DataField field : dataFields) {
+            char[] content = field.getContent();
+            if (content != null) {
+                writeFieldHeader(field, RAW);
+                writeChars(content);
+                continue;
+            }
+            writeFieldHeader(field, 0);
+            writeInt(field.getIndicator1());
+            writeInt(field.getIndicator2());
+            List<Subfield> subfields = field.peekSubfields();
+            writeInt(subfields.size());
+            for (Subfield subfield : subfields) {
+                String linkCode = subfield.getLinkCode();
+                writeInt(subfield.getCode() << 1 | (linkCode != null ? HAS_LINK_CODE : 0));
+                if (linkCode != null) writeChars(linkCode.toCharArray());
+                writeChars(subfield.getData());
+            }
+        }
+    }
+
+    private Record decodeRecord()
+    {
+        Record record = new Record();
+        if ((readInt() & HAS_LEADER) != 0) {
+            record.add(readLeader());
+        }
+
+        for (int i = 0, n = readInt(); i < n; i++) {
+            int flags = readInt();
+            String tag = readTag();
+            Long id = (flags & HAS_ID) != 0 ? readId() : ControlField.EMPTY_ID;
+            ControlField field = new ControlField();
+            if (tag != null) field.setTag(tag);
+            field.setId(id);
+            char[] data = readChars();
+            if (data != null) field.setData(data);
+            record.add(field);
+        }
+
+        for (int i = 0, n = readInt(); i < n; i++) {
+            int flags = readInt();
+            String tag = readTag();
+            Long id = (flags & HAS_ID) != 0 ? readId() : DataField.EMPTY_ID;
+            DataField field;
+            if ((flags & RAW) != 0) {
+                field = new DataField(tag, readChars());
+            } else {
+                field = tag != null ? new DataField(tag) : new DataField();
+                field.setIndicator1((char)readInt());
+                field.setIndicator2((char)readInt());
+                for (int j = 0, m = readInt(); j < m; j++) {
+                    int code = readInt();
+                    String linkCode = Subfield.EMPTY_LINK_CODE;
+                    if ((code & HAS_LINK_CODE) != 0) linkCode = new String(readChars());
+                    Subfield subfield = new Subfield();
+                    subfield.setCode((char)(code >>> 1));
+                    subfield.setLinkCode(linkCode);
+                    char[] data = readChars();
+                    if (data != null) subfield.setData(data);
+                    field.add(subfield);
+                }
+            }
+            field.setId(id);
+            record.add(field);
+        }
+        return record;
+    }
+
+    private Leader readLeader()
+    {
+        Leader leader = new Leader();
+        leader.setRecordLength(readInt());
+        leader.setRecordStatus((char)readInt());
+        leader.setTypeOfRecord((char)readInt());
+        char[] chars = readChars();
+        if (chars != null) leader.setImplDefined1(chars);
+        leader.setCharCodingScheme((char)readInt());
+        leader.setIndicatorCount(readInt());
+        leader.setSubfieldCodeLength(readInt());
+        leader.setBaseAddressOfData(readInt());
+        chars = readChars();
+        if (chars != null) leader.setImplDefined2(chars);
+        chars = readChars();
+        if (chars != null) leader.setEntryMap(chars);
+        return leader;
+    }
+
+    private void writeFieldHeader(VariableField field, int flags)
+    {
+        Long id = field.getId();
+        writeInt(flags | (id != null ? HAS_ID : 0));
+        String tag = field.getTag();
+        int value = Tag.indexOf(tag);
+        if (value >= 0) {
+            writeInt(value + 1);
+        } else {
+            writeInt(0);
+            writeChars(tag == null ? null : tag.toCharArray());
+        }
+        if (id != null) {
+            long v = id.longValue();
+            writeLong((v << 1) ^ (v >> 63));
+        }
+    }
+
+    private String readTag()
+    {
+        int value = readInt();
+        if (value > 1000) {
+            throw new MarcException("Invalid record data: tag " + (value - 1));
+        }
+        if (value > 0) {
+            return Tag.valueOf(value - 1);
+        }
+        char[] tag = readChars();
+        return tag == null ? null : Tag.valueOf(new String(tag));
+    }
+
+    private Long readId()
+    {
+        long v = readLong();
+        return Long.valueOf((v >>> 1) ^ -(v & 1));
+    }
+
+    /**
+     * Writes a length and a flag telling whether the characters take one
+     * byte or two, followed by the characters; null is written as 0.
+     */
+    private void writeChars(char[] chars)
+    {
+        if (chars == null) {
+            writeInt(0);
+            return;
+        }
+        boolean wide = false;
+        for (int i = 0; i < chars.length && !wide; i++) {
+            wide = chars[i] > 0xFF;
+        }
+        writeInt((chars.length << 1 | (wide ? 1 : 0)) + 1);
+        ensureCapacity(wide ? chars.length * 2 : chars.length);
+        if (wide) {
+            for (int i = 0; i < chars.length; i++) {
+                out[outPos++] = (byte)(chars[i] >>> 8);
+                out[outPos++] = (byte)chars[i];
+            }
+        } else {
+            for (int i = 0; i < chars.length; i++) {
+                out[outPos++] = (byte)chars[i];
+            }
+        }
+    }
+
+    private char[] readChars()
+    {
+        int header = readInt();
+        if (header == 0) {
+            return null;
+        }
+        header--;
+        int length = header >>> 1;
+        boolean wide = (header & 1) != 0;
+        char[] chars = new char[length];
+        readChars(chars, length, wide);
+        return chars;
+    }
+
+    /**
+     * Reads characters into a buffer reused by the calls, and returns
+     * their number, or -1 for null.
+     */
+    private int readCharsToBuffer()
+    {
+        int header = readInt();
+        if (header == 0) {
+            return -1;
+        }
+        header--;
+        int length = header >>> 1;
+        if (length > chars.length) {
+            chars = new char[Math.max(length, chars.length * 2)];
+        }
+        readChars(chars, length, (header & 1) != 0);
+        return length;
+    }
+
+    private void readChars(char[] dst, int length, boolean wide)
+    {
+        checkAvailable(wide ? length * 2L : length);
+        if (wide) {
+            for (int i = 0; i < length; i++) {
+                dst[i] = (char)((in[inPos] & 0xFF) << 8 | in[inPos + 1] & 0xFF);
+                inPos += 2;
+            }
+        } else {
+            for (int i = 0; i < length; i++) {
+                dst[i] = (char)(in[inPos++] & 0xFF);
+            }
+        }
+    }
+
+    private void writeInt(int value)
+    {
+        ensureCapacity(5);
+        while ((value & ~0x7F) != 0) {
+            out[outPos++] = (byte)((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out[outPos++] = (byte)value;
+    }
+
+    private void writeLong(long value)
+    {
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            out[outPos++] = (byte)((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out[outPos++] = (byte)value;
+    }
+
+    private int readInt()
+    {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            checkAvailable(1);
+            int b = in[inPos++];
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new MarcException("Invalid record data");
+    }
+
+    private long readLong()
+    {
+        long value = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            checkAvailable(1);
+            int b = in[inPos++];
+            value |= (long)(b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new MarcException("Invalid record data");
+    }
+
+    private void checkAvailable(long count)
+    {
+        if (inPos + count > inEnd) {
+            throw new MarcException("Invalid record data: unexpected end of record");
+        }
+    }
+
+    private void ensureCapacity(int count)
+    {
+        if (outPos + count > out.length) {
+            out = Arrays.copyOf(out, Math.max(outPos + count, out.length * 2));
+        }
+    }
+
+}
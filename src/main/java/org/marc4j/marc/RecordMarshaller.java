@@ -0,0 +1,324 @@
+/**
+ * Copyright (C) 2019 DIGIBÍS S.L.
+ *
+ * This file is part of MARC4J
+ *
+ * MARC4J is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * MARC4J is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with MARC4J; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.marc4j.marc;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.List;
+
+/**
+ * <p>
+ * Serializes records in tape format (ISO 2709) straight into a reusable
+ * byte buffer.
+ * </p>
+ *
+ * <p>
+ * The number of directory entries is known before the fields are
+ * written, so the data of each field is written once at its final
+ * position and its directory entry is filled in as soon as its length
+ * is known. No intermediate <code>String</code> is created.
+ * </p>
+ *
+ * <p>
+ * By default characters are written as ISO-8859-1 bytes, so lengths in
+ * bytes are the same as the lengths in characters of
+ * {@link Record#marshal()}; characters out of that range are written as
+ * '?'. With any other encoding, such as UTF-8, the data of each field is
+ * encoded once into the buffer and the directory lengths and starting
+ * positions are taken from the encoded byte count. Characters that
+ * cannot be encoded are replaced.
+ * </p>
+ *
+ * <p>
+ * As {@link Record#marshal()} does, the record length and the base
+ * address of data of the leader are updated. An instance is not thread
+ * safe, but it should be reused for all the records written to the same
+ * output.
+ * </p>
+ */
+public class RecordMarshaller
+{
+
+    /** The record terminator. */
+    private static final byte RT = MarcConstants.RT;
+
+    /** The field terminator. */
+    private static final byte FT = MarcConstants.FT;
+
+    /** The data element identifier. */
+    private static final byte US = MarcConstants.US;
+
+    /** The directory entry length. */
+    private static final int DIR_ENTRY_LENGTH = 12;
+
+    /** Initial size of the buffer. */
+    private static final int BUFFER_SIZE = 8192;
+
+    /** The buffer holding the last record. */
+    private byte[] buffer = new byte[BUFFER_SIZE];
+
+    /** The buffer wrapped as a ByteBuffer. */
+    private ByteBuffer wrapped = ByteBuffer.wrap(buffer);
+
+    /** Length of the last record in bytes. */
+    private int length = 0;
+
+    /** The output encoding. */
+    private final Charset charset;
+
+    /** The encoder, null when writing ISO-8859-1. */
+    private final CharsetEncoder encoder;
+
+    /**
+     * <p>
+     * Creates a new instance that writes ISO-8859-1 bytes.
+     * </p>
+     */
+    public RecordMarshaller()
+    {
+        this.charset = Charset.forName("ISO-8859-1");
+        this.encoder = null;
+    }
+
+    /**
+     * <p>
+     * Creates a new instance that writes the data of the fields in the
+     * given encoding.
+     * </p>
+     *
+     * @param encoding the name of the encoding
+     * @throws MarcException if the encoding is not supported
+     */
+    public RecordMarshaller(String encoding)
+        throws MarcException
+    {
+        try {
+            this.charset = Charset.forName(encoding);
+        } catch (IllegalArgumentException ex) {
+            throw new MarcException("Unsupported encoding " + encoding, ex);
+        }
+        if ("ISO-8859-1".equals(charset.name())) {
+            this.encoder = null;
+        } else {
+            this.encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+    }
+
+    /**
+     * <p>
+     * Returns the output encoding.
+     * </p>
+     *
+     * @return {@link Charset} - the encoding
+     */
+    public Charset getCharset()
+    {
+        return charset;
+    }
+
+    /**
+     * <p>
+     * Serializes a record into the buffer.
+     * </p>
+     *
+     * @param record the record
+     * @return <code>int</code> - the record length in bytes
+     * @throws MarcException if the record contains no leader or no
+     *         control number field, or if a length does not fit the
+     *         leader or the directory
+     */
+    public int marshal(Record record)
+        throws MarcException
+    {
+        Leader leader = record.getLeader();
+        if (leader == null) {
+            throw new MarcException("Record contains no leader");
+        }
+        if (!record.hasControlNumberField()) {
+            throw new MarcException("Record contains no control number field (tag 001)");
+        }
+
+        List<ControlField> controlFields = record.peekControlFields();
+        List<DataField> dataFields = record.peekDataFields();
+        int baseAddress = Leader.LENGTH + (controlFields.size() + dataFields.size()) * DIR_ENTRY_LENGTH + 1;
+        ensureCapacity(baseAddress);
+
+        int entry = Leader.LENGTH;
+        int p = baseAddress;
+        for (ControlField field : controlFields) {
+            char[] data = field.getData();
+            ensureCapacity(p + maxBytes(data.length) + 2);
+            int start = p;
+            p = write(data, p);
+            buffer[p++] = FT;
+            writeEntry(entry, field.getTag(), p - start, start - baseAddress);
+            entry += DIR_ENTRY_LENGTH;
+        }
+        for (DataField field : dataFields) {
+            int start = p;
+            char[] content = field.getContent();
+            if (content != null) {
+                // the field was not parsed, so its content is written as it is
+                ensureCapacity(p + maxBytes(content.length) + 2);
+                p = write(content, p);
+            } else {
+                ensureCapacity(p + 4);
+                buffer[p++] = (byte)field.getIndicator1();
+                buffer[p++] = (byte)field.getIndicator2();
+                for (Subfield subfield : field.peekSubfields()) {
+                    char[] data = subfield.getData();
+                    ensureCapacity(p + maxBytes(data.length) + 4);
+                    buffer[p++] = US;
+                    buffer[p++] = (byte)subfield.getCode();
+                    p = write(data, p);
+                }
+            }
+            buffer[p++] = FT;
+            writeEntry(entry, field.getTag(), p - start, start - baseAddress);
+            entry += DIR_ENTRY_LENGTH;
+        }
+        buffer[entry] = FT;
+        buffer[p++] = RT;
+
+        leader.setRecordLength(p);
+        leader.setBaseAddressOfData(baseAddress);
+        leader.marshal(buffer, 0);
+        length = p;
+        return length;
+    }
+
+    /**
+     * <p>
+     * Serializes a record and writes it to an output stream.
+     * </p>
+     *
+     * @param record the record
+     * @param out the output stream
+     * @throws IOException if an I/O error occurs
+     */
+    public void write(Record record, OutputStream out)
+        throws IOException
+    {
+        marshal(record);
+        out.write(buffer, 0, length);
+    }
+
+    /**
+     * <p>
+     * Serializes a record and writes it to a channel.
+     * </p>
+     *
+     * @param record the record
+     * @param channel the channel
+     * @throws IOException if an I/O error occurs
+     */
+    public void write(Record record, WritableByteChannel channel)
+        throws IOException
+    {
+        marshal(record);
+        wrapped.clear();
+        wrapped.limit(length);
+        while (wrapped.hasRemaining()) {
+            channel.write(wrapped);
+        }
+    }
+
+    /**
+     * <p>
+     * Returns a copy of the last serialized record.
+     * </p>
+     *
+     * @return <code>byte[]</code> - the record in tape format
+     */
+    public byte[] toByteArray()
+    {
+        byte[] bytes = new byte[length];
+        System.arraycopy(buffer, 0, bytes, 0, length);
+        return bytes;
+    }
+
+    private int write(char[] data, int p)
+    {
+        if (encoder != null) return encode(data, p);
+        for (int i = 0; i < data.length; i++) {
+            char c = data[i];
+            buffer[p++] = c <= 0xFF ? (byte)c : (byte)'?';
+        }
+        return p;
+    }
+
+    private int encode(char[] data, int p)
+    {
+        wrapped.limit(buffer.length);
+        wrapped.position(p);
+        encoder.reset();
+        CoderResult result = encoder.encode(CharBuffer.wrap(data), wrapped, true);
+        if (result.isUnderflow()) result = encoder.flush(wrapped);
+        if (!result.isUnderflow()) {
+            throw new MarcException("Unable to encode field data as " + charset.name());
+        }
+        return wrapped.position();
+    }
+
+    private int maxBytes(int chars)
+    {
+        if (encoder == null) return chars;
+        return (int)Math.ceil(chars * (double)encoder.maxBytesPerChar()) + 16;
+    }
+
+    private void writeEntry(int entry, String tag, int fieldLength, int start)
+    {
+        if (fieldLength > 9999) throw new MarcException("Field " + tag + " is longer than 9999 bytes");
+        if (start > 99999) throw new MarcException("Field " + tag + " starts beyond position 99999");
+        for (int i = 0; i < 3; i++) {
+            buffer[entry + i] = (byte)tag.charAt(i);
+        }
+        writeNumber(entry + 3, fieldLength, 4);
+        writeNumber(entry + 7, start, 5);
+    }
+
+    private void writeNumber(int offset, int value, int width)
+    {
+        for (int i = offset + width - 1; i >= offset; i--) {
+            buffer[i] = (byte)('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    private void ensureCapacity(int capacity)
+    {
+        if (capacity > buffer.length) {
+            byte[] larger = new byte[Math.max(capacity, buffer.length * 2)];
+            System.arraycopy(buffer, 0, larger, 0, buffer.length);
+            buffer = larger;
+            wrapped = ByteBuffer.wrap(buffer);
+        }
+    }
+
+}
@@ -68,6 +68,9 @@
     /** A code if the subfield has a link with another Record */
     private String linkCode;
 
+    /** The number of other owners sharing this instance. */
+    private transient int shares;
+
     /** Default constructor */
     public Subfield()
     {
@@ -230,6 +233,58 @@ public String marshal()
         return new StringBuffer().append(US).append(code).append(data).toString();
     }
 
+    /**
+     * <p>
+     * Returns the length of the serialized form of the subfield.
+     * </p>
+     *
+     * @return <code>int</code> - the subfield length
+     */
+    public int getLength()
+    {
+        return data.length + 2;
+    }
+
+    /**
+     * <p>
+     * Registers one more owner of this instance.
+     * </p>
+     *
+     * @see VariableField#share()
+     */
+    void share()
+    {
+        shares++;
+    }
+
+    /**
+     * <p>
+     * Returns this instance if it has a single owner, or a copy
+     * otherwise.
+     * </p>
+     *
+     * @return {@link Subfield} - an instance that can be modified
+     * @see VariableField#own()
+     */
+    Subfield own()
+    {
+        if (shares == 0) return this;
+        shares--;
+        return (Subfield)clone();
+    }
+
+    /**
+     * <p>
+     * Returns true if other owners share this instance.
+     * </p>
+     *
+     * @return <code>boolean</code> - true if the instance is shared
+     */
+    boolean isShared()
+    {
+        return shares != 0;
+    }
+
     /*
      * @see java.lang.Object#clone()
      */
@@ -20,6 +20,8 @@
  */
 package org.marc4j.marc;
 
+import java.nio.ByteBuffer;
+
 /**
  * <p>
  * <code>Tag</code> defines behaviour for a MARC tag.
@@ -32,6 +34,14 @@
  * ASCII alphabetic characters (uppercase or lowercase, but not both).
  * </p>
  *
+ * <p>
+ * The numeric tags 000-999 have a canonical, interned
+ * <code>String</code> instance that the parsers and the fields share,
+ * so parsing a record does not create a new string per directory entry
+ * and comparing with a tag literal usually succeeds by identity.
+ * Other tags, such as local alphabetic tags, are created on demand.
+ * </p>
+ *
  * @author <a href="mailto:mail@bpeters.com">Bas Peters</a>
  * @version $Revision: 1.5 $
  *
@@ -42,6 +52,118 @@
     /** DIGIT ZERO. */
     private static final char ZERO = 0x0030;
 
+    /** The canonical numeric tags, indexed by their value. */
+    private static final String[] TAGS = new String[1000];
+
+    static {
+        for (int i = 0; i < TAGS.length; i++) {
+            char[] tag = { (char)(ZERO + i / 100), (char)(ZERO + i / 10 % 10), (char)(ZERO + i % 10) };
+            TAGS[i] = new String(tag).intern();
+        }
+    }
+
+    /**
+     * <p>
+     * Returns the tag made of the given characters, using the canonical
+     * instance for numeric tags.
+     * </p>
+     *
+     * @param c0 the first character
+     * @param c1 the second character
+     * @param c2 the third character
+     * @return {@link String} - the tag name
+     */
+    public static String valueOf(char c0, char c1, char c2)
+    {
+        int d0 = c0 - ZERO;
+        int d1 = c1 - ZERO;
+        int d2 = c2 - ZERO;
+        if (d0 >= 0 && d0 <= 9 && d1 >= 0 && d1 <= 9 && d2 >= 0 && d2 <= 9) return TAGS[d0 * 100 + d1 * 10 + d2];
+        return new String(new char[] { c0, c1, c2 });
+    }
+
+    /**
+     * <p>
+     * Returns the tag held in the three characters at the given
+     * position of a buffer.
+     * </p>
+     *
+     * @param buf the buffer
+     * @param offset the position of the tag
+     * @return {@link String} - the tag name
+     */
+    public static String valueOf(char[] buf, int offset)
+    {
+        return valueOf(buf[offset], buf[offset + 1], buf[offset + 2]);
+    }
+
+    /**
+     * <p>
+     * Returns the tag held in the three bytes at the given position of
+     * a buffer, decoded as Latin-1 characters.
+     * </p>
+     *
+     * @param buf the buffer
+     * @param offset the position of the tag
+     * @return {@link String} - the tag name
+     */
+    public static String valueOf(ByteBuffer buf, int offset)
+    {
+        return valueOf((char)(buf.get(offset) & 0xFF), (char)(buf.get(offset + 1) & 0xFF),
+            (char)(buf.get(offset + 2) & 0xFF));
+    }
+
+    /**
+     * <p>
+     * Returns the canonical instance of a numeric tag, or the given
+     * tag if it is not numeric.
+     * </p>
+     *
+     * @param tag the tag name
+     * @return {@link String} - the tag name
+     */
+    public static String valueOf(String tag)
+    {
+        int index = indexOf(tag);
+        return index >= 0 ? TAGS[index] : tag;
+    }
+
+    /**
+     * <p>
+     * Returns the canonical instance of the tag with the given numeric
+     * value.
+     * </p>
+     *
+     * @param value the value between 0 and 999
+     * @return {@link String} - the tag name
+     * @throws IllegalArgumentException if the value is out of range
+     * @see #indexOf(String)
+     */
+    public static String valueOf(int value)
+    {
+        if (value < 0 || value >= TAGS.length) throw new IllegalArgumentException("Invalid tag value: " + value);
+        return TAGS[value];
+    }
+
+    /**
+     * <p>
+     * Returns the numeric value of a tag.
+     * </p>
+     *
+     * @param tag the tag name
+     * @return <code>int</code> - the value between 0 and 999, or -1 if
+     *         the tag is not numeric
+     */
+    public static int indexOf(String tag)
+    {
+        if (tag == null || tag.length() != 3) return -1;
+        int d0 = tag.charAt(0) - ZERO;
+        int d1 = tag.charAt(1) - ZERO;
+        int d2 = tag.charAt(2) - ZERO;
+        if (d0 >= 0 && d0 <= 9 && d1 >= 0 && d1 <= 9 && d2 >= 0 && d2 <= 9) return d0 * 100 + d1 * 10 + d2;
+        return -1;
+    }
+
     /**
      * <p>
      * Returns true if the given value is a valid tag value.
@@ -81,8 +203,7 @@ public static boolean isValid(String tag)
     public static boolean isControlNumberField(String tag)
     {
         Verifier.checkTag(tag);
-        if (!tag.equals("001")) return false;
-        return true;
+        return TAGS[1].equals(tag);
     }
 
     /**
@@ -122,9 +243,7 @@ public static boolean isControlField(String tag)
      */
     public static boolean isDataField(String tag)
     {
-        Verifier.checkTag(tag);
-        if (!isControlField(tag)) return true;
-        return false;
+        return !isControlField(tag);
     }
 
 }
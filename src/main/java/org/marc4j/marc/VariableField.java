@@ -60,6 +60,9 @@
     /** The tag name. */
     private String tag;
 
+    /** The number of other owners sharing this instance. */
+    private transient int shares;
+
     /**
      * <p>
      * Default constructor.
@@ -91,7 +94,7 @@ public VariableField(String tag)
     public void setTag(String tag)
     {
         if (!Tag.isValid(tag)) throw new IllegalTagException(tag);
-        this.tag = tag;
+        this.tag = Tag.valueOf(tag);
     }
 
     /**
@@ -122,6 +125,58 @@ public void setId(Long id)
         this.id = id;
     }
 
+    /**
+     * <p>
+     * Returns the copy made when a field shared by
+     * {@link Record#cloneShared()} is handed out. The default is the
+     * same as <code>clone()</code>.
+     * </p>
+     *
+     * @return <code>Object</code> - the copy
+     */
+    Object cloneShared()
+    {
+        return clone();
+    }
+
+    /**
+     * <p>
+     * Registers one more owner of this instance, so that the owners
+     * copy it before handing it out.
+     * </p>
+     */
+    void share()
+    {
+        shares++;
+    }
+
+    /**
+     * <p>
+     * Returns this instance if it has a single owner, or a copy
+     * otherwise. The last owner keeps the original instance.
+     * </p>
+     *
+     * @return {@link VariableField} - an instance that can be modified
+     */
+    VariableField own()
+    {
+        if (shares == 0) return this;
+        shares--;
+        return (VariableField)cloneShared();
+    }
+
+    /**
+     * <p>
+     * Returns true if other owners share this instance.
+     * </p>
+     *
+     * @return <code>boolean</code> - true if the instance is shared
+     */
+    boolean isShared()
+    {
+        return shares != 0;
+    }
+
     public abstract Object clone();
 
     public abstract boolean equals(Object obj);
@@ -31,8 +31,10 @@
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.sax.SAXResult;
 import javax.xml.transform.sax.SAXSource;
+import javax.xml.transform.stream.StreamResult;
 
 import org.marc4j.MarcReader;
+import org.marc4j.util.CharacterConverter;
 import org.xml.sax.SAXException;
 import org.xml.sax.XMLReader;
 
@@ -89,6 +91,13 @@ public void convert(Source source, Result result)
      * into a <code>Result</code>.
      * </p>
      *
+     * <p>
+     * Without a stylesheet, a <code>SAXSource</code> reading with a
+     * {@link MarcXmlReader} into a <code>StreamResult</code> with an
+     * output stream is written by a {@link MarcXmlSerializer} instead of
+     * an identity transformer.
+     * </p>
+     *
      * @param stylesheet the stylesheet {@link Source} object
      * @param source the {@link Source} object
      * @param result the {@link Result} object
@@ -98,6 +107,8 @@ public void convert(Source stylesheet, Source source, Result result)
     {
         if (result instanceof MarcResult) {
             convert(stylesheet, (SAXSource)source, (MarcResult)result);
+        } else if (stylesheet == null && isSerializable(source, result)) {
+            serialize((SAXSource)source, (StreamResult)result);
         } else {
             if (stylesheet != null) {
                 Templates templates = tryCache(stylesheet);
@@ -127,6 +138,30 @@ private void convert(Source stylesheet, SAXSource source, MarcResult result)
         }
     }
 
+    private boolean isSerializable(Source source, Result result)
+    {
+        return source instanceof SAXSource && ((SAXSource)source).getXMLReader() instanceof MarcXmlReader
+            && result instanceof StreamResult && ((StreamResult)result).getOutputStream() != null;
+    }
+
+    private void serialize(SAXSource source, StreamResult result)
+        throws TransformerException, SAXException
+    {
+        MarcXmlReader reader = (MarcXmlReader)source.getXMLReader();
+        MarcXmlSerializer serializer = new MarcXmlSerializer(result.getOutputStream());
+        serializer.setPrettyPrinting(reader.getFeature("http://marc4j.org/features/pretty-printing"));
+        serializer.setDoctype((DoctypeDecl)reader.getProperty("http://marc4j.org/properties/document-type-declaration"));
+        serializer.setSchemaLocation((String)reader.getProperty("http://marc4j.org/properties/schema-location"));
+        serializer.setCharacterConverter(
+            (CharacterConverter)reader.getProperty("http://marc4j.org/properties/character-conversion"));
+        reader.parse(source.getInputSource(), serializer);
+        try {
+            serializer.flush();
+        } catch (IOException e) {
+            throw new TransformerException("Unable to write the MARCXML output", e);
+        }
+    }
+
     private void convert(MarcSource source, MarcResult result)
         throws IOException
     {
@@ -24,11 +24,13 @@
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.net.URL;
+import java.util.Arrays;
 
 import org.apache.log4j.Category;
 import org.marc4j.MarcHandler;
 // import org.marc4j.ErrorHandler;
 import org.marc4j.MarcReader;
+import org.marc4j.MarcSliceHandler;
 import org.marc4j.marc.Leader;
 import org.marc4j.util.CharacterConverter;
 import org.marc4j.util.CharacterConverterLoader;
@@ -61,7 +63,7 @@
  * @see ContentHandler
  */
 public class MarcXmlReader
-    implements XMLReader, MarcHandler
+    implements XMLReader, MarcSliceHandler
 {
 
     private static Category log = Category.getInstance(MarcXmlReader.class.getName());
@@ -317,6 +319,21 @@ public void parse(InputSource input)
         else
             ch = new DefaultHandler();
 
+        parse(input, this);
+    }
+
+    /**
+     * <p>
+     * Sends the input source to the <code>MarcReader</code>, reporting
+     * the events to the given handler instead of the content handler.
+     * </p>
+     *
+     * @param input the {@link InputSource}
+     * @param handler the {@link MarcHandler} receiving the events
+     * @see MarcXmlSerializer
+     */
+    void parse(InputSource input, MarcHandler handler)
+    {
         try {
             // Convert the InputSource into a BufferedReader.
             BufferedReader br = null;
@@ -336,7 +353,7 @@ public void parse(InputSource input)
             MarcReader marcReader = new MarcReader();
 
             // Register the MarcHandler implementation.
-            marcReader.setMarcHandler(this);
+            marcReader.setMarcHandler(handler);
 
             // Register the ErrorHandler implementation.
             if (eh != null) marcReader.setErrorHandler(eh);
@@ -410,28 +427,39 @@ public void startRecord(Leader leader)
             ch.startElement(NS_URI, "record", "record", EMPTY_ATTS);
             if (prettyPrinting) ch.ignorableWhitespace("\n    ".toCharArray(), 0, 5);
 
-            // Se mira si el tipo y el nivel de la cabecera son correctos.
-            // Si no es as� se modifican para que sean monograf�a
-            Leader leaderCorrecto = null;
-            if (this.isCorrectoTipoActual(leader)) {
-                if (this.isCorrectoNivelBibliografico(leader)) {
-                    leaderCorrecto = leader;
-                } else {
-                    leaderCorrecto = new Leader(leader.marshal());
-                    setNivelBibliograficoMonografia(leaderCorrecto);
-                }
+            writeElement(NS_URI, "leader", "leader", EMPTY_ATTS, getLeaderCorrecto(leader).marshal());
+        } catch (SAXException se) {
+            log.error("Se ha producido un error al añadir los elementos de inicio de registro", se);
+        }
+    }
+
+    /**
+     * Devuelve la cabecera con el tipo y el nivel bibliográfico corregidos
+     *
+     * @param leader
+     * @return
+     */
+    static Leader getLeaderCorrecto(Leader leader)
+    {
+        // Se mira si el tipo y el nivel de la cabecera son correctos.
+        // Si no es as� se modifican para que sean monograf�a
+        Leader leaderCorrecto = null;
+        if (isCorrectoTipoActual(leader)) {
+            if (isCorrectoNivelBibliografico(leader)) {
+                leaderCorrecto = leader;
             } else {
                 leaderCorrecto = new Leader(leader.marshal());
-                setTipoMonografia(leaderCorrecto);
-                if (!this.isCorrectoNivelBibliografico(leaderCorrecto)) {
-                    setNivelBibliograficoMonografia(leaderCorrecto);
-                }
+                setNivelBibliograficoMonografia(leaderCorrecto);
+            }
+        } else {
+            leaderCorrecto = new Leader(leader.marshal());
+            setTipoMonografia(leaderCorrecto);
+            if (!isCorrectoNivelBibliografico(leaderCorrecto)) {
+                setNivelBibliograficoMonografia(leaderCorrecto);
             }
-
-            writeElement(NS_URI, "leader", "leader", EMPTY_ATTS, leaderCorrecto.marshal());
-        } catch (SAXException se) {
-            log.error("Se ha producido un error al añadir los elementos de inicio de registro", se);
         }
+
+        return leaderCorrecto;
     }
 
     /**
@@ -445,12 +473,29 @@ public void startRecord(Leader leader)
      */
     @Override
     public void controlField(String tag, char[] data, Long id)
+    {
+        controlField(tag, data, 0, data.length, id);
+    }
+
+    /**
+     * <p>
+     * Reports a control field node (001-009) from a slice of a buffer.
+     * </p>
+     *
+     * @param tag the tag name
+     * @param buf the buffer holding the data element
+     * @param offset the position of the data element in the buffer
+     * @param length the number of characters of the data element
+     * @param id the field id if exists.
+     */
+    @Override
+    public void controlField(String tag, char[] buf, int offset, int length, Long id)
     {
         try {
             AttributesImpl atts = new AttributesImpl();
             atts.addAttribute("", "tag", "tag", "CDATA", tag);
             if (prettyPrinting) ch.ignorableWhitespace("\n    ".toCharArray(), 0, 5);
-            writeElement(NS_URI, "controlfield", "controlfield", atts, data);
+            writeElement(NS_URI, "controlfield", "controlfield", atts, buf, offset, length);
         } catch (SAXException se) {
             log.error("Se ha producido un error al añadir el nodo control", se);
         }
@@ -471,8 +516,8 @@ public void startDataField(String tag, char ind1, char ind2, Long id)
     {
         try {
             // Se modifican los indicadores si no son v�lidos
-            ind1 = this.getIndicadorValido(ind1);
-            ind2 = this.getIndicadorValido(ind2);
+            ind1 = getIndicadorValido(ind1);
+            ind2 = getIndicadorValido(ind2);
 
             AttributesImpl atts = new AttributesImpl();
             atts.addAttribute("", "tag", "tag", "CDATA", tag);
@@ -496,6 +541,23 @@ public void startDataField(String tag, char ind1, char ind2, Long id)
      */
     @Override
     public void subfield(char code, char[] data, String linkCode)
+    {
+        subfield(code, data, 0, data.length, linkCode);
+    }
+
+    /**
+     * <p>
+     * Reports a subfield node from a slice of a buffer.
+     * </p>
+     *
+     * @param code the data element identifier
+     * @param buf the buffer holding the data element
+     * @param offset the position of the data element in the buffer
+     * @param length the number of characters of the data element
+     * @param linkCode a code if the subfield has a link with another Record
+     */
+    @Override
+    public void subfield(char code, char[] buf, int offset, int length, String linkCode)
     {
         try {
             AttributesImpl atts = new AttributesImpl();
@@ -503,10 +565,10 @@ public void subfield(char code, char[] data, String linkCode)
             if (prettyPrinting) ch.ignorableWhitespace("\n      ".toCharArray(), 0, 7);
             ch.startElement(NS_URI, "subfield", "subfield", atts);
             if (charconv != null) {
-                char[] unicodeData = charconv.convert(data);
+                char[] unicodeData = charconv.convert(Arrays.copyOfRange(buf, offset, offset + length));
                 ch.characters(unicodeData, 0, unicodeData.length);
             } else {
-                ch.characters(data, 0, data.length);
+                ch.characters(buf, offset, length);
             }
             ch.endElement(NS_URI, "subfield", "subfield");
         } catch (SAXException se) {
@@ -577,9 +639,16 @@ private void writeElement(String uri, String localName, String qName, Attributes
 
     private void writeElement(String uri, String localName, String qName, Attributes atts, char[] content)
         throws SAXException
+    {
+        writeElement(uri, localName, qName, atts, content, 0, content.length);
+    }
+
+    private void writeElement(String uri, String localName, String qName, Attributes atts, char[] content,
+        int offset, int length)
+        throws SAXException
     {
         ch.startElement(uri, localName, qName, atts);
-        ch.characters(content, 0, content.length);
+        ch.characters(content, offset, length);
         ch.endElement(uri, localName, qName);
     }
 
@@ -602,7 +671,7 @@ private void setCharacterConverter(boolean convert)
      * @param leader
      * @return
      */
-    private boolean isCorrectoTipoActual(Leader leader)
+    private static boolean isCorrectoTipoActual(Leader leader)
     {
         char tipo = leader.getTypeOfRecord();
         switch (tipo) {
@@ -639,7 +708,7 @@ private boolean isCorrectoTipoActual(Leader leader)
      * @param leader
      * @return
      */
-    private Leader setTipoMonografia(Leader leader)
+    private static Leader setTipoMonografia(Leader leader)
     {
         leader.setTypeOfRecord('a');
         return leader;
@@ -652,7 +721,7 @@ private Leader setTipoMonografia(Leader leader)
      * @param leader
      * @return
      */
-    private boolean isCorrectoNivelBibliografico(Leader leader)
+    private static boolean isCorrectoNivelBibliografico(Leader leader)
     {
         char tipo = leader.getImplDefined1()[0];
         switch (tipo) {
@@ -680,7 +749,7 @@ private boolean isCorrectoNivelBibliografico(Leader leader)
      * @param leader
      * @return
      */
-    private Leader setNivelBibliograficoMonografia(Leader leader)
+    private static Leader setNivelBibliograficoMonografia(Leader leader)
     {
         char implDefined[] = leader.getImplDefined1();
         // Si la posici�n 7 es #, se cambia a ' '
@@ -700,7 +769,7 @@ private Leader setNivelBibliograficoMonografia(Leader leader)
      * @param indicador
      * @return
      */
-    private char getIndicadorValido(char indicador)
+    static char getIndicadorValido(char indicador)
     {
         indicador = Character.toLowerCase(indicador);
         if (!Character.isLetterOrDigit(indicador)) {
@@ -0,0 +1,460 @@
+/**
+ * Copyright (C) 2019 DIGIBÍS S.L.
+ *
+ * This file is part of MARC4J
+ *
+ * MARC4J is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * MARC4J is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with MARC4J; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.marc4j.marcxml;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import org.apache.log4j.Category;
+import org.marc4j.MarcSliceHandler;
+import org.marc4j.marc.Leader;
+import org.marc4j.util.CharacterConverter;
+
+/**
+ * <p>
+ * Implements the <code>MarcSliceHandler</code> interface to write
+ * MARCXML encoded in UTF-8 directly to an output stream.
+ * </p>
+ *
+ * <p>
+ * The output is the same document that {@link MarcXmlReader} reports
+ * to an identity transformer, including the corrections of the leader
+ * and the indicators, but the markup and the escaped data are encoded
+ * into a reusable buffer without creating SAX events, attributes or a
+ * <code>Transformer</code>. The output stream is flushed, but not
+ * closed, at the end of the collection.
+ * </p>
+ *
+ * <p>
+ * Errors writing to the output are logged, and the first one is thrown
+ * by {@link #flush()} and {@link #close()}.
+ * </p>
+ *
+ * @see MarcXmlReader
+ * @see Converter
+ */
+public class MarcXmlSerializer
+    implements MarcSliceHandler, Flushable, Closeable
+{
+
+    private static Category log = Category.getInstance(MarcXmlSerializer.class.getName());
+
+    /** Namespace for MARCXML */
+    private static final String NS_URI = "http://www.loc.gov/MARC21/slim";
+
+    /** Namespace for W3C XML Schema instance */
+    private static final String NS_XSI = "http://www.w3.org/2001/XMLSchema-instance";
+
+    /** The longest sequence of bytes written for a single character */
+    private static final int MAX_CHAR_BYTES = 10;
+
+    /** The output stream */
+    private final OutputStream out;
+
+    /** The output buffer */
+    private byte[] buf = new byte[8192];
+
+    /** The number of bytes in the buffer */
+    private int count;
+
+    /** Enables pretty printing */
+    private boolean prettyPrinting = true;
+
+    /** {@link DoctypeDecl} object */
+    private DoctypeDecl doctype = null;
+
+    /** Schema location */
+    private String schemaLocation = null;
+
+    /** The character conversion option */
+    private CharacterConverter charconv = null;
+
+    /** The first error writing to the output */
+    private IOException error;
+
+    /**
+     * <p>
+     * Creates a new instance writing to the given output stream.
+     * </p>
+     *
+     * @param out the {@link OutputStream} object
+     */
+    public MarcXmlSerializer(OutputStream out)
+    {
+        this.out = out;
+    }
+
+    /**
+     * <p>
+     * Enables or disables pretty printing, enabled by default.
+     * </p>
+     *
+     * @param prettyPrinting true to indent the elements
+     */
+    public void setPrettyPrinting(boolean prettyPrinting)
+    {
+        this.prettyPrinting = prettyPrinting;
+    }
+
+    /**
+     * <p>
+     * Sets the document type declaration, written unless a schema
+     * location is set.
+     * </p>
+     *
+     * @param doctype the {@link DoctypeDecl} object
+     */
+    public void setDoctype(DoctypeDecl doctype)
+    {
+        this.doctype = doctype;
+    }
+
+    /**
+     * <p>
+     * Sets the W3C XML Schema location of the root element.
+     * </p>
+     *
+     * @param schemaLocation the schema location
+     */
+    public void setSchemaLocation(String schemaLocation)
+    {
+        this.schemaLocation = schemaLocation;
+    }
+
+    /**
+     * <p>
+     * Sets the character conversion table, applied to the data of the
+     * subfields.
+     * </p>
+     *
+     * @param charconv the character converter
+     */
+    public void setCharacterConverter(CharacterConverter charconv)
+    {
+        this.charconv = charconv;
+    }
+
+    @Override
+    public void startCollection()
+    {
+        writeMarkup("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        if (doctype != null && schemaLocation == null) {
+            writeMarkup("<!DOCTYPE ");
+            writeMarkup(doctype.getName());
+            if (doctype.getPublicId() != null) {
+                writeMarkup(" PUBLIC \"");
+                writeMarkup(doctype.getPublicId());
+                writeMarkup("\" \"");
+            } else {
+                writeMarkup(" SYSTEM \"");
+            }
+            writeMarkup(doctype.getSystemId());
+            writeMarkup("\">\n");
+        }
+        writeMarkup("<collection");
+        // The prefix mapping reported by MarcXmlReader declares the
+        // namespace even together with a document type declaration
+        writeAttribute("xmlns", NS_URI);
+        if (schemaLocation != null) {
+            writeAttribute("xmlns:xsi", NS_XSI);
+            writeAttribute("xsi:schemaLocation", schemaLocation);
+        }
+        writeMarkup(">");
+    }
+
+    @Override
+    public void startRecord(Leader leader)
+    {
+        if (prettyPrinting) writeMarkup("\n  ");
+        writeMarkup("<record>");
+        if (prettyPrinting) writeMarkup("\n    ");
+        writeMarkup("<leader>");
+        writeText(MarcXmlReader.getLeaderCorrecto(leader).marshal());
+        writeMarkup("</leader>");
+    }
+
+    @Override
+    public void controlField(String tag, char[] data, Long id)
+    {
+        controlField(tag, data, 0, data.length, id);
+    }
+
+    @Override
+    public void controlField(String tag, char[] buf, int offset, int length, Long id)
+    {
+        if (prettyPrinting) writeMarkup("\n    ");
+        writeMarkup("<controlfield");
+        writeAttribute("tag", tag);
+        writeMarkup(">");
+        writeText(buf, offset, length, false);
+        writeMarkup("</controlfield>");
+    }
+
+    @Override
+    public void startDataField(String tag, char ind1, char ind2, Long id)
+    {
+        if (prettyPrinting) writeMarkup("\n    ");
+        writeMarkup("<datafield");
+        writeAttribute("tag", tag);
+        writeAttribute("ind1", MarcXmlReader.getIndicadorValido(ind1));
+        writeAttribute("ind2", MarcXmlReader.getIndicadorValido(ind2));
+        writeMarkup(">");
+    }
+
+    @Override
+    public void subfield(char code, char[] data, String linkCode)
+    {
+        subfield(code, data, 0, data.length, linkCode);
+    }
+
+    @Override
+    public void subfield(char code, char[] buf, int offset, int length, String linkCode)
+    {
+        if (prettyPrinting) writeMarkup("\n      ");
+        writeMarkup("<subfield");
+        writeAttribute("code", code);
+        writeMarkup(">");
+        if (charconv != null) {
+            char[] converted = charconv.convert(Arrays.copyOfRange(buf, offset, offset + length));
+            writeText(converted, 0, converted.length, false);
+        } else {
+            writeText(buf, offset, length, false);
+        }
+        writeMarkup("</subfield>");
+    }
+
+    @Override
+    public void endDataField(String tag)
+    {
+        // MarcXmlReader always reports this whitespace
+        writeMarkup("\n    ");
+        writeMarkup("</datafield>");
+    }
+
+    @Override
+    public void endRecord()
+    {
+        if (prettyPrinting) writeMarkup("\n  ");
+        writeMarkup("</record>");
+    }
+
+    @Override
+    public void endCollection()
+    {
+        if (prettyPrinting) writeMarkup("\n");
+        writeMarkup("</collection>");
+        try {
+            flushBuffer();
+            out.flush();
+        } catch (IOException e) {
+            log.error("Se ha producido un error al finalizar la colección", e);
+            if (error == null) error = e;
+        }
+    }
+
+    /**
+     * <p>
+     * Writes the buffered output and flushes the output stream.
+     * </p>
+     *
+     * @throws IOException the first error writing to the output
+     */
+    @Override
+    public void flush()
+        throws IOException
+    {
+        try {
+            flushBuffer();
+            out.flush();
+        } catch (IOException e) {
+            if (error == null) error = e;
+        }
+        if (error != null) throw error;
+    }
+
+    /**
+     * <p>
+     * Writes the buffered output and closes the output stream.
+     * </p>
+     *
+     * @throws IOException the first error writing to the output
+     */
+    @Override
+    public void close()
+        throws IOException
+    {
+        try {
+            flushBuffer();
+            out.close();
+        } catch (IOException e) {
+            if (error == null) error = e;
+        }
+        if (error != null) throw error;
+    }
+
+    private void writeAttribute(String name, String value)
+    {
+        writeMarkup(" ");
+        writeMarkup(name);
+        writeMarkup("=\"");
+        for (int i = 0; i < value.length(); i++) {
+            writeChar(value.charAt(i), true);
+        }
+        writeMarkup("\"");
+    }
+
+    private void writeAttribute(String name, char value)
+    {
+        writeMarkup(" ");
+        writeMarkup(name);
+        writeMarkup("=\"");
+        writeChar(value, true);
+        writeMarkup("\"");
+    }
+
+    /**
+     * Writes markup made of ASCII characters without escaping.
+     */
+    private void writeMarkup(String markup)
+    {
+        int length = markup.length();
+        if (count + length > buf.length) {
+            writeBuffer();
+            if (length > buf.length) buf = new byte[length];
+        }
+        for (int i = 0; i < length; i++) {
+            buf[count++] = (byte)markup.charAt(i);
+        }
+    }
+
+    private void writeText(String text)
+    {
+        for (int i = 0; i < text.length(); i++) {
+            writeChar(text.charAt(i), false);
+        }
+    }
+
+    private void writeText(char[] data, int offset, int length, boolean attribute)
+    {
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            char c = data[i];
+            if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(data[i + 1])) {
+                if (count + MAX_CHAR_BYTES > buf.length) writeBuffer();
+                int cp = Character.toCodePoint(c, data[++i]);
+                buf[count++] = (byte)(0xF0 | (cp >> 18));
+                buf[count++] = (byte)(0x80 | ((cp >> 12) & 0x3F));
+                buf[count++] = (byte)(0x80 | ((cp >> 6) & 0x3F));
+                buf[count++] = (byte)(0x80 | (cp & 0x3F));
+            } else {
+                writeChar(c, attribute);
+            }
+        }
+    }
+
+    /**
+     * Writes a character escaped and encoded in UTF-8. Unpaired
+     * surrogates are replaced with a question mark.
+     */
+    private void writeChar(char c, boolean attribute)
+    {
+        if (count + MAX_CHAR_BYTES > buf.length) writeBuffer();
+        byte[] b = buf;
+        if (c >= 0x80) {
+            if (Character.isSurrogate(c)) {
+                b[count++] = '?';
+            } else if (c < 0x800) {
+                b[count++] = (byte)(0xC0 | (c >> 6));
+                b[count++] = (byte)(0x80 | (c & 0x3F));
+            } else {
+                b[count++] = (byte)(0xE0 | (c >> 12));
+                b[count++] = (byte)(0x80 | ((c >> 6) & 0x3F));
+                b[count++] = (byte)(0x80 | (c & 0x3F));
+            }
+            return;
+        }
+        switch (c) {
+            case '<':
+                writeEscape("&lt;");
+                break;
+            case '>':
+                writeEscape("&gt;");
+                break;
+            case '&':
+                writeEscape("&amp;");
+                break;
+            case '"':
+                if (attribute) writeEscape("&quot;");
+                else b[count++] = '"';
+                break;
+            case '\t':
+            case '\n':
+                if (attribute) writeCharRef(c);
+                else b[count++] = (byte)c;
+                break;
+            default:
+                if (c < 0x20 || c == 0x7F) writeCharRef(c);
+                else b[count++] = (byte)c;
+        }
+    }
+
+    private void writeEscape(String escape)
+    {
+        for (int i = 0; i < escape.length(); i++) {
+            buf[count++] = (byte)escape.charAt(i);
+        }
+    }
+
+    private void writeCharRef(char c)
+    {
+        buf[count++] = '&';
+        buf[count++] = '#';
+        if (c >= 100) buf[count++] = (byte)('0' + c / 100);
+        if (c >= 10) buf[count++] = (byte)('0' + c / 10 % 10);
+        buf[count++] = (byte)('0' + c % 10);
+        buf[count++] = ';';
+    }
+
+    private void writeBuffer()
+    {
+        try {
+            flushBuffer();
+        } catch (IOException e) {
+            log.error("Se ha producido un error al escribir en la salida", e);
+            if (error == null) error = e;
+            count = 0;
+        }
+    }
+
+    private void flushBuffer()
+        throws IOException
+    {
+        if (error != null) {
+            // the output is already incomplete
+            count = 0;
+        } else if (count > 0) {
+            out.write(buf, 0, count);
+            count = 0;
+        }
+    }
+}
@@ -0,0 +1,276 @@
+/**
+ * Copyright (C) 2019 DIGIBÍS S.L.
+ *
+ * This file is part of MARC4J
+ *
+ * MARC4J is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * MARC4J is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with MARC4J; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.marc4j.util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * <p>
+ * An output stream that writes to a channel from a background thread,
+ * so that the thread producing the data does not wait for each write.
+ * </p>
+ *
+ * <p>
+ * The stream has two buffers: the caller fills one while the
+ * background thread writes the other to the channel. When the buffer
+ * being filled is full the buffers are swapped, and the caller only
+ * waits if the other buffer has not been written yet.
+ * </p>
+ *
+ * <p>
+ * An <code>IOException</code> of the background thread is thrown to the
+ * caller by the next {@link #write(int)} that swaps the buffers, and by
+ * {@link #flush()} and {@link #close()}. Once an error occurred the
+ * data that follows is discarded. The stream is not thread safe: it
+ * must be written by a single thread.
+ * </p>
+ *
+ * @see MarcWriter#MarcWriter(java.nio.channels.FileChannel, String)
+ * @see TaggedWriter#TaggedWriter(java.nio.channels.FileChannel, String)
+ */
+public class AsyncOutputStream
+    extends OutputStream
+{
+
+    /** The default size of each buffer. */
+    public static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+
+    /** The channel */
+    private final WritableByteChannel channel;
+
+    /** The buffer being filled */
+    private ByteBuffer filling;
+
+    /** The buffer being written by the background thread, or null */
+    private ByteBuffer pending;
+
+    /** The buffer that can be filled next, or null while it is pending */
+    private ByteBuffer spare;
+
+    /** The first error of the background thread */
+    private IOException error;
+
+    /** Whether the stream was closed */
+    private boolean closed;
+
+    /** Guards the buffers shared with the background thread */
+    private final Object lock = new Object();
+
+    /** The background thread */
+    private final Thread thread;
+
+    /**
+     * <p>
+     * Creates a new instance with buffers of the default size.
+     * </p>
+     *
+     * @param channel the channel
+     */
+    public AsyncOutputStream(WritableByteChannel channel)
+    {
+        this(channel, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * <p>
+     * Creates a new instance.
+     * </p>
+     *
+     * @param channel the channel
+     * @param bufferSize the size of each buffer
+     */
+    public AsyncOutputStream(WritableByteChannel channel, int bufferSize)
+    {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("Invalid buffer size: " + bufferSize);
+        }
+        this.channel = channel;
+        this.filling = ByteBuffer.allocateDirect(bufferSize);
+        this.spare = ByteBuffer.allocateDirect(bufferSize);
+        this.thread = new Thread(new Runnable() {
+            public void run()
+            {
+                drain();
+            }
+        }, "marc4j-async-output");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void write(int b)
+        throws IOException
+    {
+        if (closed) throw new IOException("Stream closed");
+        if (!filling.hasRemaining()) swap(false);
+        filling.put((byte)b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len)
+        throws IOException
+    {
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (closed) throw new IOException("Stream closed");
+        while (len > 0) {
+            if (!filling.hasRemaining()) swap(false);
+            int n = Math.min(len, filling.remaining());
+            filling.put(b, off, n);
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * <p>
+     * Writes the buffered data and waits until it is written to the
+     * channel.
+     * </p>
+     *
+     * @throws IOException if the background thread failed to write
+     */
+    @Override
+    public void flush()
+        throws IOException
+    {
+        if (closed) {
+            checkError();
+            return;
+        }
+        swap(true);
+    }
+
+    /**
+     * <p>
+     * Writes the buffered data, stops the background thread and closes
+     * the channel.
+     * </p>
+     *
+     * @throws IOException if the background thread failed to write, or
+     *         the channel can not be closed
+     */
+    @Override
+    public void close()
+        throws IOException
+    {
+        if (closed) {
+            checkError();
+            return;
+        }
+        try {
+            swap(true);
+        } finally {
+            synchronized (lock) {
+                closed = true;
+                lock.notifyAll();
+            }
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            channel.close();
+        }
+    }
+
+    /**
+     * Hands the buffer being filled to the background thread, waiting
+     * for the other buffer first, and optionally until it is written.
+     */
+    private void swap(boolean wait)
+        throws IOException
+    {
+        synchronized (lock) {
+            try {
+                while (pending != null) {
+                    lock.wait();
+                }
+                checkError();
+                if (filling.position() > 0) {
+                    filling.flip();
+                    pending = filling;
+                    filling = spare;
+                    spare = null;
+                    lock.notifyAll();
+                }
+                while (wait && pending != null) {
+                    lock.wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+            checkError();
+        }
+    }
+
+    private void checkError()
+        throws IOException
+    {
+        synchronized (lock) {
+            if (error != null) throw error;
+        }
+    }
+
+    /**
+     * Writes the buffers handed by the caller until the stream is
+     * closed.
+     */
+    private void drain()
+    {
+        while (true) {
+            ByteBuffer buffer;
+            boolean failed;
+            synchronized (lock) {
+                while (pending == null && !closed) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        // only stopped by close
+                    }
+                }
+                if (pending == null) return;
+                buffer = pending;
+                failed = error != null;
+            }
+            try {
+                while (!failed && buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            } catch (IOException e) {
+                synchronized (lock) {
+                    error = e;
+                }
+            }
+            buffer.clear();
+            synchronized (lock) {
+                spare = buffer;
+                pending = null;
+                lock.notifyAll();
+            }
+        }
+    }
+}
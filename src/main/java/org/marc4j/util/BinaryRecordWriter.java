@@ -0,0 +1,149 @@
+/**
+ * Copyright (C) 2019 DIGIBÍS S.L.
+ *
+ * This file is part of MARC4J
+ *
+ * MARC4J is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * MARC4J is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with MARC4J; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.marc4j.util;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.marc4j.helpers.RecordHandler;
+import org.marc4j.marc.MarcException;
+import org.marc4j.marc.Record;
+import org.marc4j.marc.RecordCodec;
+
+/**
+ * <p>
+ * Writes records to a file in the binary format of {@link RecordCodec}.
+ * </p>
+ *
+ * <p>
+ * Implements <code>RecordHandler</code>, so it can receive the records of
+ * a {@link org.marc4j.helpers.RecordBuilder}. The records are read back
+ * with {@link org.marc4j.BinaryRecordReader}.
+ * </p>
+ *
+ * <p>
+ * <b>Note:</b> an <code>IOException</code> while writing the records
+ * reported as <code>RecordHandler</code> events is thrown as a
+ * {@link MarcException}.
+ * </p>
+ *
+ * @see RecordCodec
+ */
+public class BinaryRecordWriter
+    implements RecordHandler, Closeable
+{
+
+    /** The output */
+    private final DataOutputStream out;
+
+    /** The codec */
+    private final RecordCodec codec = new RecordCodec();
+
+    /**
+     * <p>
+     * Creates a new instance that writes to the given file.
+     * </p>
+     *
+     * @param fileName the filename
+     * @throws IOException if the file cannot be created
+     */
+    public BinaryRecordWriter(String fileName)
+        throws IOException
+    {
+        this(new FileOutputStream(fileName));
+    }
+
+    /**
+     * <p>
+     * Creates a new instance that writes to the given output stream,
+     * and writes the header.
+     * </p>
+     *
+     * @param out the output stream
+     * @throws IOException if an I/O error occurs
+     */
+    public BinaryRecordWriter(OutputStream out)
+        throws IOException
+    {
+        this.out = new DataOutputStream(new BufferedOutputStream(out));
+        codec.writeHeader(this.out);
+    }
+
+    /**
+     * <p>
+     * Writes a record.
+     * </p>
+     *
+     * @param record the record
+     * @throws IOException if an I/O error occurs
+     */
+    public void write(Record record)
+        throws IOException
+    {
+        codec.write(record, out);
+    }
+
+    @Override
+    public void startCollection()
+    {
+    }
+
+    @Override
+    public void record(Record record)
+    {
+        try {
+            write(record);
+        } catch (IOException e) {
+            throw new MarcException("Unable to write the record", e);
+        }
+    }
+
+    /**
+     * <p>
+     * Flushes the output.
+     * </p>
+     */
+    @Override
+    public void endCollection()
+    {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new MarcException("Unable to write the records", e);
+        }
+    }
+
+    /**
+     * <p>
+     * Closes the output stream.
+     * </p>
+     */
+    @Override
+    public void close()
+        throws IOException
+    {
+        out.close();
+    }
+
+}
@@ -0,0 +1,73 @@
+/**
+ * Copyright (C) 2019 DIGIBÍS S.L.
+ *
+ * This file is part of MARC4J
+ *
+ * MARC4J is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * MARC4J is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with MARC4J; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.marc4j.util;
+
+import org.marc4j.RecordProcessor;
+import org.marc4j.marc.DataField;
+import org.marc4j.marc.Record;
+import org.marc4j.marc.Subfield;
+
+/**
+ * <p>
+ * Converts the data of the subfields of each record with a
+ * <code>CharacterConverter</code>, as {@link MarcWriter} does, so that
+ * the conversion can run in the workers of a
+ * {@link org.marc4j.ConversionPipeline}.
+ * </p>
+ *
+ * <p>
+ * The converter is shared by the workers. The converters of this
+ * package keep no state between calls to <code>convert</code>, so they
+ * can be shared.
+ * </p>
+ *
+ * @see CharacterConverter
+ */
+public class CharacterConversionProcessor
+    implements RecordProcessor
+{
+
+    /** The character converter */
+    private final CharacterConverter charconv;
+
+    /**
+     * <p>
+     * Creates a new instance.
+     * </p>
+     *
+     * @param charconv the character converter
+     */
+    public CharacterConversionProcessor(CharacterConverter charconv)
+    {
+        this.charconv = charconv;
+    }
+
+    @Override
+    public Record process(Record record)
+    {
+        for (DataField field : record.getDataFieldList()) {
+            for (Subfield subfield : field.getSubfieldList()) {
+                subfield.setData(charconv.convert(subfield.getData()));
+            }
+        }
+        return record;
+    }
+
+}
@@ -20,10 +20,14 @@
  */
 package org.marc4j.util;
 
+import java.io.Closeable;
+import java.io.Flushable;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
 import java.io.Writer;
+import java.nio.channels.FileChannel;
 
 import org.apache.log4j.Category;
 import org.marc4j.MarcHandler;
@@ -32,6 +36,7 @@
 import org.marc4j.marc.Leader;
 import org.marc4j.marc.MarcException;
 import org.marc4j.marc.Record;
+import org.marc4j.marc.RecordMarshaller;
 import org.marc4j.marc.Subfield;
 
 /**
@@ -40,13 +45,18 @@
  * to write record objects to tape format (ISO 2709).
  * </p>
  *
+ * <p>
+ * Errors writing to the output are logged, and the first one is thrown
+ * by {@link #flush()} and {@link #close()}.
+ * </p>
+ *
  * @author <a href="mailto:mail@bpeters.com">Bas Peters</a>
  * @version $Revision: 1.11 $
  *
  * @see MarcHandler
  */
 public class MarcWriter
-    implements MarcHandler
+    implements MarcHandler, Flushable, Closeable
 {
 
     private static Category log = Category.getInstance(MarcHandler.class.getName());
@@ -59,9 +69,18 @@
     /** The Writer object */
     private Writer out;
 
+    /** The output stream, when writing encoded bytes */
+    private OutputStream stream;
+
+    /** The marshaller, when writing encoded bytes */
+    private RecordMarshaller marshaller;
+
     /** The character conversion option */
     private CharacterConverter charconv = null;
 
+    /** The first error writing to the output */
+    private IOException error;
+
     /**
      * <p>
      * Default constructor.
@@ -93,6 +112,12 @@ public MarcWriter(OutputStream out)
      * Creates a new instance.
      * </p>
      *
+     * <p>
+     * The data of each field is encoded once, and the directory lengths
+     * and starting positions are counted in bytes, so multibyte encodings
+     * such as UTF-8 produce valid records.
+     * </p>
+     *
      * @param out the {@link OutputStream} object
      * @param encoding the encoding
      *
@@ -100,7 +125,28 @@ public MarcWriter(OutputStream out)
     public MarcWriter(OutputStream out, String encoding)
         throws IOException
     {
-        this(new OutputStreamWriter(out, encoding));
+        try {
+            this.marshaller = new RecordMarshaller(encoding);
+        } catch (MarcException e) {
+            throw new UnsupportedEncodingException(encoding);
+        }
+        this.stream = out;
+    }
+
+    /**
+     * <p>
+     * Creates a new instance that writes to a file channel from a
+     * background thread, so the parser does not wait for the writes.
+     * </p>
+     *
+     * @param channel the file channel
+     * @param encoding the encoding
+     * @see AsyncOutputStream
+     */
+    public MarcWriter(FileChannel channel, String encoding)
+        throws IOException
+    {
+        this(new AsyncOutputStream(channel), encoding);
     }
 
     /**
@@ -125,6 +171,8 @@ public MarcWriter(Writer out)
     public void setWriter(Writer out)
     {
         this.out = out;
+        this.stream = null;
+        this.marshaller = null;
     }
 
     /**
@@ -167,7 +215,7 @@ public void setCharacterConverter(CharacterConverter charconv)
      */
     public void setWriter(Writer out, boolean convert)
     {
-        this.out = out;
+        setWriter(out);
         setUnicodeToAnsel(convert);
     }
 
@@ -180,7 +228,7 @@ public void setWriter(Writer out, boolean convert)
     @Override
     public void startCollection()
     {
-        if (out == null) System.exit(0);
+        if (out == null && stream == null) System.exit(0);
     }
 
     @Override
@@ -221,9 +269,13 @@ public void endDataField(String tag)
     public void endRecord()
     {
         try {
-            rawWrite(record.marshal());
+            if (marshaller != null)
+                marshaller.write(record, stream);
+            else
+                rawWrite(record.marshal());
         } catch (IOException e) {
             log.error("Se ha producido un error al escribir en la salida", e);
+            if (error == null) error = e;
         } catch (MarcException e) {
             log.error("Se ha producido un error al procesar el registro", e);
         }
@@ -233,11 +285,61 @@ public void endRecord()
     public void endCollection()
     {
         try {
-            out.flush();
-            out.close();
+            if (stream != null) {
+                stream.flush();
+                stream.close();
+            } else {
+                out.flush();
+                out.close();
+            }
         } catch (IOException e) {
             log.error("Se ha producido un error al finalizar la colección", e);
+            if (error == null) error = e;
+        }
+    }
+
+    /**
+     * <p>
+     * Flushes the output.
+     * </p>
+     *
+     * @throws IOException the first error writing to the output
+     */
+    @Override
+    public void flush()
+        throws IOException
+    {
+        try {
+            if (stream != null)
+                stream.flush();
+            else if (out != null)
+                out.flush();
+        } catch (IOException e) {
+            if (error == null) error = e;
+        }
+        if (error != null) throw error;
+    }
+
+    /**
+     * <p>
+     * Closes the output, if <code>endCollection()</code> did not.
+     * </p>
+     *
+     * @throws IOException the first error writing to the output
+     */
+    @Override
+    public void close()
+        throws IOException
+    {
+        try {
+            if (stream != null)
+                stream.close();
+            else if (out != null)
+                out.close();
+        } catch (IOException e) {
+            if (error == null) error = e;
         }
+        if (error != null) throw error;
     }
 
     private void rawWrite(String s)
@@ -20,6 +20,7 @@
  */
 package org.marc4j.util;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
@@ -27,6 +28,7 @@
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
 
@@ -38,9 +40,11 @@
 import javax.xml.transform.stream.StreamSource;
 
 import org.apache.log4j.Category;
+import org.marc4j.ConversionPipeline;
 import org.marc4j.helpers.ErrorHandlerImpl;
 import org.marc4j.marcxml.Converter;
 import org.marc4j.marcxml.MarcXmlReader;
+import org.marc4j.marcxml.MarcXmlSerializer;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 import org.xml.sax.SAXNotRecognizedException;
@@ -88,6 +92,7 @@
  * @version $Revision: 1.18 $
  *
  * @see MarcXmlReader
+ * @see MarcXmlSerializer
  * @see Converter
  */
 public class MarcXmlWriter
@@ -111,6 +116,7 @@ public static void main(String args[])
         boolean dtd = false;
         boolean xsd = false;
         String convert = null;
+        int threads = 1;
         long start = System.currentTimeMillis();
 
         for (int i = 0; i < args.length; i++) {
@@ -138,6 +144,11 @@ public static void main(String args[])
                 dtd = true;
             } else if (args[i].equals("-xsd")) {
                 xsd = true;
+            } else if (args[i].equals("-threads")) {
+                if (i == args.length - 1) {
+                    usage();
+                }
+                threads = Integer.parseInt(args[++i].trim());
             } else if (args[i].equals("-convert")) {
                 if (i == args.length - 1) {
                     usage();
@@ -161,12 +172,14 @@ public static void main(String args[])
         }
 
         try {
+            String schemaLocation = null;
+            if (xsd) schemaLocation = "http://www.loc.gov/MARC21/slim "
+                + "http://www.loc.gov/standards/marcxml/schema/MARC21slim.xsd";
             MarcXmlReader producer = new MarcXmlReader();
             producer.setProperty("http://marc4j.org/properties/error-handler", new ErrorHandlerImpl());
-            if (xsd) producer.setProperty("http://marc4j.org/properties/schema-location",
-                "http://www.loc.gov/MARC21/slim " + "http://www.loc.gov/standards/marcxml/schema/MARC21slim.xsd");
+            if (xsd) producer.setProperty("http://marc4j.org/properties/schema-location", schemaLocation);
+            CharacterConverter charconv = null;
             if (convert != null) {
-                CharacterConverter charconv = null;
                 if ("ANSEL".equals(convert))
                     charconv = new AnselToUnicode();
                 else if ("ISO5426".equals(convert))
@@ -196,7 +209,7 @@ else if ("ISO6937".equals(convert))
 
             InputSource in = new InputSource(reader);
             Source source = new SAXSource(producer, in);
-            Writer writer;
+            Result result;
 
             // if (output == null)
             // writer = new BufferedWriter(new OutputStreamWriter(System.out, "UTF8"));
@@ -204,19 +217,43 @@ else if ("ISO6937".equals(convert))
             // writer = new BufferedWriter(new OutputStreamWriter(
             // new FileOutputStream(output), "UTF8"));
 
-            if (output == null && outputEncoding != null)
-                writer = new BufferedWriter(new OutputStreamWriter(System.out, outputEncoding));
-            else if (output != null && outputEncoding == null)
-                writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(output)));
-            else if (output != null && outputEncoding != null)
-                writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(output), outputEncoding));
-            else
-                writer = new BufferedWriter(new OutputStreamWriter(System.out));
-
-            Result result = new StreamResult(writer);
+            // Without a stylesheet UTF-8 output is written to the stream
+            // by MarcXmlSerializer, skipping the identity transformer.
+            if (stylesheet == null && (outputEncoding == null || "UTF-8".equalsIgnoreCase(outputEncoding)
+                || "UTF8".equalsIgnoreCase(outputEncoding))) {
+                OutputStream os;
+                if (output == null)
+                    os = System.out;
+                else
+                    os = new FileOutputStream(output);
+                result = new StreamResult(new BufferedOutputStream(os));
+            } else {
+                Writer writer;
+                if (output == null && outputEncoding != null)
+                    writer = new BufferedWriter(new OutputStreamWriter(System.out, outputEncoding));
+                else if (output != null && outputEncoding == null)
+                    writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(output)));
+                else if (output != null && outputEncoding != null)
+                    writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(output), outputEncoding));
+                else
+                    writer = new BufferedWriter(new OutputStreamWriter(System.out));
+                result = new StreamResult(writer);
+            }
 
             Converter converter = new Converter();
-            if (stylesheet != null) {
+            OutputStream os = ((StreamResult)result).getOutputStream();
+            if (stylesheet == null && charconv != null && threads > 1 && os != null) {
+                // the character set is converted in parallel and the
+                // records are written in order
+                MarcXmlSerializer serializer = new MarcXmlSerializer(os);
+                serializer.setSchemaLocation(schemaLocation);
+                ConversionPipeline pipeline = new ConversionPipeline(
+                    new CharacterConversionProcessor(charconv), serializer);
+                pipeline.setParallelism(threads);
+                pipeline.setErrorHandler(new ErrorHandlerImpl());
+                pipeline.parse(reader);
+                serializer.flush();
+            } else if (stylesheet != null) {
                 Source style = new StreamSource(new File(stylesheet).toURL().toString());
                 converter.convert(style, source, result);
             } else {
@@ -248,6 +285,7 @@ private static void usage()
         System.err.println("       -oe <encoding> = Output using charset <encoding>");
         System.err.println("       -convert [ANSEL | ISO5426 | ISO6937] = convert to UTF-8 using");
         System.err.println("          specified character set");
+        System.err.println("       -threads <n> = convert the character set using <n> threads");
         System.err.println("       -usage or -help = this message");
         System.err.println("Without a stylesheet the program outputs well-formed MARCXML");
         System.err.println("See http://marc4j.tigris.org for more information.");
@@ -0,0 +1,55 @@
+/**
+ * Copyright (C) 2019 DIGIBÍS S.L.
+ *
+ * This file is part of MARC4J
+ *
+ * MARC4J is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * MARC4J is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with MARC4J; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.marc4j.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.marc4j.MarcHandler;
+
+/**
+ * <p>
+ * Creates the writer of each output file of a {@link ShardedWriter}.
+ * </p>
+ *
+ * <p>
+ * The writer receives the collection events of its file, and must
+ * write the whole collection, including any wrapper such as the MARCXML
+ * root element, to the given stream.
+ * </p>
+ *
+ * @see ShardedWriter
+ */
+public interface ShardWriterFactory
+{
+
+    /**
+     * <p>
+     * Returns a new writer for an output file.
+     * </p>
+     *
+     * @param out the output stream of the file
+     * @return {@link MarcHandler} - the writer
+     * @throws IOException if the writer can not be created
+     */
+    public abstract MarcHandler newMarcHandler(OutputStream out)
+        throws IOException;
+
+}
@@ -0,0 +1,418 @@
+/**
+ * Copyright (C) 2019 DIGIBÍS S.L.
+ *
+ * This file is part of MARC4J
+ *
+ * MARC4J is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * MARC4J is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with MARC4J; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.marc4j.util;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.sax.SAXTransformerFactory;
+import javax.xml.transform.sax.TransformerHandler;
+import javax.xml.transform.stream.StreamResult;
+
+import org.marc4j.MarcHandler;
+import org.marc4j.MarcSliceHandler;
+import org.marc4j.helpers.MarcHandlerAdapter;
+import org.marc4j.marc.Leader;
+import org.marc4j.marc.MarcException;
+import org.marc4j.marcxml.MarcXmlReader;
+import org.marc4j.marcxml.MarcXmlSerializer;
+
+/**
+ * <p>
+ * Implements the <code>MarcSliceHandler</code> interface to split the
+ * output in numbered files after a number of records or bytes.
+ * </p>
+ *
+ * <p>
+ * The name of each file is the result of formatting the file name
+ * pattern with the number of the file, starting at 0, as in
+ * <code>"output-%03d.mrc"</code>. Each file is written by its own
+ * writer, created by a {@link ShardWriterFactory}, which receives the
+ * <code>startCollection</code> and <code>endCollection</code> events of
+ * the file, so every file is a complete collection. A new file is
+ * started before a record when the current one holds the maximum number
+ * of records, or when the bytes written to it reach the maximum size.
+ * Since writers may buffer their output, the size is checked with the
+ * bytes they have written so far, and a file can be larger than the
+ * maximum by up to one record plus the buffer of the writer.
+ * </p>
+ *
+ * <p>
+ * After the <code>endCollection</code> event a writer that implements
+ * <code>Closeable</code> is closed before the file, so the output it
+ * still buffers reaches the file. A file that could not be closed is
+ * reported with a <code>MarcException</code> and left out of the
+ * manifest.
+ * </p>
+ *
+ * <p>
+ * At the end of the collection a manifest can be written, with a line
+ * per file holding the file name, the numbers of its first and last
+ * records, counted from 1 in the order of the input, the number of
+ * records and the size in bytes, separated by tabs. A file without
+ * records has 0 as its first and last record numbers.
+ * </p>
+ *
+ * @see ShardWriterFactory
+ */
+public class ShardedWriter
+    implements MarcSliceHandler
+{
+
+    /** The pattern of the file names */
+    private final String fileNamePattern;
+
+    /** The factory of the writers */
+    private final ShardWriterFactory factory;
+
+    /** The maximum number of records per file, 0 for no limit */
+    private long maxRecords;
+
+    /** The maximum size of a file in bytes, 0 for no limit */
+    private long maxBytes;
+
+    /** The name of the manifest file, or null */
+    private String manifestFileName;
+
+    /** The writer of the current file, or null */
+    private MarcSliceHandler handler;
+
+    /** The output stream of the current file */
+    private CountingOutputStream stream;
+
+    /** The number of records in the current file */
+    private long shardRecords;
+
+    /** The number of records written */
+    private long records;
+
+    /** The lines of the manifest */
+    private final List<String> manifest = new ArrayList<>();
+
+    /**
+     * <p>
+     * Creates a new instance.
+     * </p>
+     *
+     * @param fileNamePattern the pattern of the file names, formatted
+     *        with the number of the file
+     * @param factory the factory of the writer of each file
+     */
+    public ShardedWriter(String fileNamePattern, ShardWriterFactory factory)
+    {
+        this.fileNamePattern = fileNamePattern;
+        this.factory = factory;
+    }
+
+    /**
+     * <p>
+     * Returns a factory of {@link MarcWriter} objects that write tape
+     * format (ISO 2709) in the given encoding.
+     * </p>
+     *
+     * @param encoding the encoding
+     * @return {@link ShardWriterFactory} - the factory
+     */
+    public static ShardWriterFactory iso2709(final String encoding)
+    {
+        return new ShardWriterFactory() {
+            @Override
+            public MarcHandler newMarcHandler(OutputStream out)
+                throws IOException
+            {
+                return new MarcWriter(out, encoding);
+            }
+        };
+    }
+
+    /**
+     * <p>
+     * Returns a factory of writers of MARCXML collections in the given
+     * encoding. UTF-8 collections are written by a
+     * {@link MarcXmlSerializer}, other encodings by an identity
+     * transformer.
+     * </p>
+     *
+     * @param encoding the encoding
+     * @return {@link ShardWriterFactory} - the factory
+     */
+    public static ShardWriterFactory marcXml(final String encoding)
+    {
+        return new ShardWriterFactory() {
+            @Override
+            public MarcHandler newMarcHandler(OutputStream out)
+                throws IOException
+            {
+                if ("UTF-8".equalsIgnoreCase(encoding) || "UTF8".equalsIgnoreCase(encoding)) {
+                    return new MarcXmlSerializer(out);
+                }
+                try {
+                    SAXTransformerFactory tf = (SAXTransformerFactory)SAXTransformerFactory.newInstance();
+                    TransformerHandler serializer = tf.newTransformerHandler();
+                    serializer.getTransformer().setOutputProperty(OutputKeys.ENCODING, encoding);
+                    serializer.setResult(new StreamResult(out));
+                    MarcXmlReader writer = new MarcXmlReader();
+                    writer.setContentHandler(serializer);
+                    return writer;
+                } catch (TransformerConfigurationException e) {
+                    throw new IOException("Unable to create the MARCXML serializer", e);
+                }
+            }
+        };
+    }
+
+    /**
+     * <p>
+     * Sets the maximum number of records per file.
+     * </p>
+     *
+     * @param maxRecords the number of records, 0 for no limit
+     */
+    public void setMaxRecords(long maxRecords)
+    {
+        this.maxRecords = maxRecords;
+    }
+
+    /**
+     * <p>
+     * Sets the size in bytes after which a new file is started.
+     * </p>
+     *
+     * @param maxBytes the size in bytes, 0 for no limit
+     */
+    public void setMaxBytes(long maxBytes)
+    {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * <p>
+     * Sets the name of the manifest file written at the end of the
+     * collection. By default no manifest is written.
+     * </p>
+     *
+     * @param manifestFileName the name of the manifest file, or null
+     */
+    public void setManifestFile(String manifestFileName)
+    {
+        this.manifestFileName = manifestFileName;
+    }
+
+    /**
+     * <p>
+     * Returns the number of files started.
+     * </p>
+     *
+     * @return <code>int</code> - the number of files
+     */
+    public int getShardCount()
+    {
+        return manifest.size() + (handler != null ? 1 : 0);
+    }
+
+    @Override
+    public void startCollection()
+    {
+        manifest.clear();
+        records = 0;
+    }
+
+    @Override
+    public void startRecord(Leader leader)
+    {
+        if (handler != null && isFull()) closeShard();
+        if (handler == null) openShard();
+        shardRecords++;
+        records++;
+        handler.startRecord(leader);
+    }
+
+    @Override
+    public void controlField(String tag, char[] data, Long id)
+    {
+        handler.controlField(tag, data, id);
+    }
+
+    @Override
+    public void controlField(String tag, char[] buf, int offset, int length, Long id)
+    {
+        handler.controlField(tag, buf, offset, length, id);
+    }
+
+    @Override
+    public void startDataField(String tag, char ind1, char ind2, Long id)
+    {
+        handler.startDataField(tag, ind1, ind2, id);
+    }
+
+    @Override
+    public void subfield(char code, char[] data, String linkCode)
+    {
+        handler.subfield(code, data, linkCode);
+    }
+
+    @Override
+    public void subfield(char code, char[] buf, int offset, int length, String linkCode)
+    {
+        handler.subfield(code, buf, offset, length, linkCode);
+    }
+
+    @Override
+    public void endDataField(String tag)
+    {
+        handler.endDataField(tag);
+    }
+
+    @Override
+    public void endRecord()
+    {
+        handler.endRecord();
+    }
+
+    /**
+     * <p>
+     * Closes the last file and writes the manifest. An empty collection
+     * is written to a single file.
+     * </p>
+     *
+     * @throws MarcException if a file can not be written
+     */
+    @Override
+    public void endCollection()
+    {
+        if (handler == null && manifest.isEmpty()) openShard();
+        if (handler != null) closeShard();
+        if (manifestFileName != null) writeManifest();
+    }
+
+    private boolean isFull()
+    {
+        return (maxRecords > 0 && shardRecords >= maxRecords)
+            || (maxBytes > 0 && stream.getCount() >= maxBytes);
+    }
+
+    private void openShard()
+    {
+        String fileName = String.format(fileNamePattern, manifest.size());
+        try {
+            stream = new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(fileName)));
+            boolean opened = false;
+            try {
+                handler = MarcHandlerAdapter.adapt(factory.newMarcHandler(stream));
+                opened = true;
+            } finally {
+                if (!opened) stream.close();
+            }
+        } catch (IOException e) {
+            throw new MarcException("Unable to create output file " + fileName, e);
+        }
+        shardRecords = 0;
+        handler.startCollection();
+    }
+
+    private void closeShard()
+    {
+        String fileName = String.format(fileNamePattern, manifest.size());
+        MarcHandler writer = handler;
+        if (writer instanceof MarcHandlerAdapter) writer = ((MarcHandlerAdapter)writer).getHandler();
+        handler.endCollection();
+        handler = null;
+        try (OutputStream out = stream) {
+            if (writer instanceof Closeable) ((Closeable)writer).close();
+        } catch (IOException e) {
+            throw new MarcException("Unable to close output file " + fileName, e);
+        }
+        long first = shardRecords > 0 ? records - shardRecords + 1 : 0;
+        long last = shardRecords > 0 ? records : 0;
+        manifest.add(fileName + '\t' + first + '\t' + last + '\t' + shardRecords + '\t' + stream.getCount());
+    }
+
+    private void writeManifest()
+    {
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(manifestFileName), "UTF-8")) {
+            for (String line : manifest) {
+                out.write(line);
+                out.write('\n');
+            }
+        } catch (IOException e) {
+            throw new MarcException("Unable to write manifest " + manifestFileName, e);
+        }
+    }
+
+    /**
+     * Counts the bytes written to a file.
+     */
+    private static class CountingOutputStream
+        extends FilterOutputStream
+    {
+        /** The number of bytes written */
+        private long count;
+
+        /** Whether the stream was closed */
+        private boolean closed;
+
+        CountingOutputStream(OutputStream out)
+        {
+            super(out);
+        }
+
+        long getCount()
+        {
+            return count;
+        }
+
+        @Override
+        public void write(int b)
+            throws IOException
+        {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len)
+            throws IOException
+        {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void close()
+            throws IOException
+        {
+            // the writers close their stream at the end of the collection
+            if (closed) return;
+            closed = true;
+            super.close();
+        }
+    }
+
+}
@@ -0,0 +1,421 @@
+/**
+ * Copyright (C) 2019 DIGIBÍS S.L.
+ *
+ * This file is part of MARC4J
+ *
+ * MARC4J is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * MARC4J is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with MARC4J; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.marc4j.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+
+import org.apache.log4j.Category;
+import org.marc4j.MarcHandler;
+import org.marc4j.MarcSliceHandler;
+import org.marc4j.marc.ControlField;
+import org.marc4j.marc.IllegalAddException;
+import org.marc4j.marc.Leader;
+import org.marc4j.marc.MarcConstants;
+import org.marc4j.marc.MarcException;
+import org.marc4j.marc.Tag;
+
+/**
+ * <p>
+ * Implements the <code>MarcSliceHandler</code> interface to write
+ * records in tape format (ISO 2709) without creating record objects.
+ * </p>
+ *
+ * <p>
+ * The data of each field is encoded into a buffer as the events arrive,
+ * and the tag, length and starting position of each field are kept in
+ * arrays. At the end of the record the leader, the directory and the
+ * buffer are written to the output stream. Lengths and starting
+ * positions are counted in bytes of the output encoding.
+ * </p>
+ *
+ * <p>
+ * The output is the same as that of {@link MarcWriter}: the control
+ * number field (tag 001) is written first and the other control fields
+ * before the data fields, whatever the order of the events, and a
+ * second control number field is rejected with an
+ * <code>IllegalAddException</code>. Records that can not be written,
+ * such as records without a control number field, are logged and
+ * skipped.
+ * </p>
+ *
+ * @see MarcWriter
+ */
+public class StreamingMarcWriter
+    implements MarcSliceHandler
+{
+
+    private static Category log = Category.getInstance(MarcHandler.class.getName());
+
+    /** The record terminator. */
+    private static final byte RT = MarcConstants.RT;
+
+    /** The field terminator. */
+    private static final byte FT = MarcConstants.FT;
+
+    /** The data element identifier. */
+    private static final byte US = MarcConstants.US;
+
+    /** The directory entry length. */
+    private static final int DIR_ENTRY_LENGTH = 12;
+
+    /** The output stream */
+    private final OutputStream out;
+
+    /** The output encoding */
+    private final Charset charset;
+
+    /** The encoder, null when writing ISO-8859-1 */
+    private final CharsetEncoder encoder;
+
+    /** The character conversion option */
+    private CharacterConverter charconv = null;
+
+    /** The leader of the current record */
+    private Leader leader;
+
+    /** The data of the fields of the current record */
+    private byte[] data = new byte[8192];
+
+    /** The data wrapped as a ByteBuffer */
+    private ByteBuffer wrapped = ByteBuffer.wrap(data);
+
+    /** The length of the data */
+    private int length;
+
+    /** The tags of the fields */
+    private String[] tags = new String[64];
+
+    /** The starting positions of the fields, plus the end of the last one */
+    private int[] starts = new int[65];
+
+    /** Whether each field is a control field */
+    private boolean[] control = new boolean[64];
+
+    /** The number of fields */
+    private int count;
+
+    /** The number of control fields */
+    private int controlCount;
+
+    /** The index of the control number field, or -1 */
+    private int controlNumber;
+
+    /** Whether a control field was reported after a data field */
+    private boolean misplaced;
+
+    /** The leader and the directory */
+    private byte[] header = new byte[Leader.LENGTH + 64 * DIR_ENTRY_LENGTH + 1];
+
+    /**
+     * <p>
+     * Creates a new instance that writes ISO-8859-1 bytes.
+     * </p>
+     *
+     * @param out the {@link OutputStream} object
+     */
+    public StreamingMarcWriter(OutputStream out)
+    {
+        this.out = out;
+        this.charset = Charset.forName("ISO-8859-1");
+        this.encoder = null;
+    }
+
+    /**
+     * <p>
+     * Creates a new instance that writes the data of the fields in the
+     * given encoding.
+     * </p>
+     *
+     * @param out the {@link OutputStream} object
+     * @param encoding the encoding
+     * @throws UnsupportedEncodingException if the encoding is not
+     *         supported
+     */
+    public StreamingMarcWriter(OutputStream out, String encoding)
+        throws UnsupportedEncodingException
+    {
+        Charset cs;
+        try {
+            cs = Charset.forName(encoding);
+        } catch (IllegalArgumentException e) {
+            throw new UnsupportedEncodingException(encoding);
+        }
+        this.out = out;
+        this.charset = cs;
+        if ("ISO-8859-1".equals(cs.name())) {
+            this.encoder = null;
+        } else {
+            this.encoder = cs.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+    }
+
+    /**
+     * <p>
+     * Sets the character conversion table, applied to the data of the
+     * subfields.
+     * </p>
+     *
+     * @param charconv the character converter
+     */
+    public void setCharacterConverter(CharacterConverter charconv)
+    {
+        this.charconv = charconv;
+    }
+
+    @Override
+    public void startCollection()
+    {
+    }
+
+    @Override
+    public void startRecord(Leader leader)
+    {
+        this.leader = leader;
+        this.length = 0;
+        this.count = 0;
+        this.controlCount = 0;
+        this.controlNumber = -1;
+        this.misplaced = false;
+    }
+
+    @Override
+    public void controlField(String tag, char[] data, Long id)
+    {
+        controlField(tag, data, 0, data.length, id);
+    }
+
+    @Override
+    public void controlField(String tag, char[] buf, int offset, int length, Long id)
+    {
+        if (Tag.isControlNumberField(tag)) {
+            if (controlNumber >= 0) {
+                throw new IllegalAddException(ControlField.class.getName(), "control field number already exists");
+            }
+            controlNumber = count;
+        }
+        if (count > controlCount) misplaced = true;
+        startField(tag);
+        control[count - 1] = true;
+        controlCount++;
+        write(buf, offset, length);
+        ensureCapacity(1);
+        data[this.length++] = FT;
+    }
+
+    @Override
+    public void startDataField(String tag, char ind1, char ind2, Long id)
+    {
+        startField(tag);
+        control[count - 1] = false;
+        ensureCapacity(2);
+        data[length++] = (byte)ind1;
+        data[length++] = (byte)ind2;
+    }
+
+    @Override
+    public void subfield(char code, char[] data, String linkCode)
+    {
+        subfield(code, data, 0, data.length, linkCode);
+    }
+
+    @Override
+    public void subfield(char code, char[] buf, int offset, int length, String linkCode)
+    {
+        ensureCapacity(2);
+        data[this.length++] = US;
+        data[this.length++] = (byte)code;
+        if (charconv != null) {
+            char[] converted = charconv.convert(Arrays.copyOfRange(buf, offset, offset + length));
+            write(converted, 0, converted.length);
+        } else {
+            write(buf, offset, length);
+        }
+    }
+
+    @Override
+    public void endDataField(String tag)
+    {
+        ensureCapacity(1);
+        data[length++] = FT;
+    }
+
+    @Override
+    public void endRecord()
+    {
+        try {
+            if (leader == null) {
+                throw new MarcException("Record contains no leader");
+            }
+            if (controlNumber < 0) {
+                throw new MarcException("Record contains no control number field (tag 001)");
+            }
+            starts[count] = length;
+            if (misplaced || controlNumber > 0) reorder();
+            int baseAddress = Leader.LENGTH + count * DIR_ENTRY_LENGTH + 1;
+            if (header.length < baseAddress) {
+                header = new byte[Math.max(baseAddress, header.length * 2)];
+            }
+            for (int i = 0; i < count; i++) {
+                writeEntry(Leader.LENGTH + i * DIR_ENTRY_LENGTH, i);
+            }
+            header[baseAddress - 1] = FT;
+            ensureCapacity(1);
+            data[length++] = RT;
+
+            leader.setRecordLength(baseAddress + length);
+            leader.setBaseAddressOfData(baseAddress);
+            leader.marshal(header, 0);
+            out.write(header, 0, baseAddress);
+            out.write(data, 0, length);
+        } catch (IOException e) {
+            log.error("Se ha producido un error al escribir en la salida", e);
+        } catch (MarcException e) {
+            log.error("Se ha producido un error al procesar el registro", e);
+        }
+    }
+
+    @Override
+    public void endCollection()
+    {
+        try {
+            out.flush();
+            out.close();
+        } catch (IOException e) {
+            log.error("Se ha producido un error al finalizar la colección", e);
+        }
+    }
+
+    private void startField(String tag)
+    {
+        if (count + 1 == starts.length) {
+            tags = Arrays.copyOf(tags, tags.length * 2);
+            control = Arrays.copyOf(control, control.length * 2);
+            starts = Arrays.copyOf(starts, starts.length * 2);
+        }
+        tags[count] = tag;
+        starts[count++] = length;
+    }
+
+    private void write(char[] buf, int offset, int length)
+    {
+        if (encoder != null) {
+            encode(buf, offset, length);
+            return;
+        }
+        ensureCapacity(length);
+        int p = this.length;
+        for (int i = offset, end = offset + length; i < end; i++) {
+            char c = buf[i];
+            data[p++] = c <= 0xFF ? (byte)c : (byte)'?';
+        }
+        this.length = p;
+    }
+
+    private void encode(char[] buf, int offset, int length)
+    {
+        ensureCapacity((int)Math.ceil(length * (double)encoder.maxBytesPerChar()) + 16);
+        wrapped.limit(data.length);
+        wrapped.position(this.length);
+        encoder.reset();
+        CoderResult result = encoder.encode(CharBuffer.wrap(buf, offset, length), wrapped, true);
+        if (result.isUnderflow()) result = encoder.flush(wrapped);
+        if (!result.isUnderflow()) {
+            throw new MarcException("Unable to encode field data as " + charset.name());
+        }
+        this.length = wrapped.position();
+    }
+
+    /**
+     * Puts the control number field first and the other control fields
+     * before the data fields, keeping the order of the events otherwise.
+     */
+    private void reorder()
+    {
+        int[] order = new int[count];
+        int n = 0;
+        order[n++] = controlNumber;
+        for (int i = 0; i < count; i++) {
+            if (control[i] && i != controlNumber) order[n++] = i;
+        }
+        for (int i = 0; i < count; i++) {
+            if (!control[i]) order[n++] = i;
+        }
+        byte[] newData = new byte[data.length];
+        String[] newTags = new String[tags.length];
+        int[] newStarts = new int[starts.length];
+        int p = 0;
+        for (int i = 0; i < count; i++) {
+            int field = order[i];
+            int len = starts[field + 1] - starts[field];
+            System.arraycopy(data, starts[field], newData, p, len);
+            newTags[i] = tags[field];
+            newStarts[i] = p;
+            control[i] = i < controlCount;
+            p += len;
+        }
+        newStarts[count] = p;
+        data = newData;
+        wrapped = ByteBuffer.wrap(data);
+        tags = newTags;
+        starts = newStarts;
+        controlNumber = 0;
+    }
+
+    private void writeEntry(int entry, int field)
+    {
+        String tag = tags[field];
+        int start = starts[field];
+        int fieldLength = starts[field + 1] - start;
+        if (fieldLength > 9999) throw new MarcException("Field " + tag + " is longer than 9999 bytes");
+        if (start > 99999) throw new MarcException("Field " + tag + " starts beyond position 99999");
+        for (int i = 0; i < 3; i++) {
+            header[entry + i] = (byte)tag.charAt(i);
+        }
+        writeNumber(entry + 3, fieldLength, 4);
+        writeNumber(entry + 7, start, 5);
+    }
+
+    private void writeNumber(int offset, int value, int width)
+    {
+        for (int i = offset + width - 1; i >= offset; i--) {
+            header[i] = (byte)('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    private void ensureCapacity(int bytes)
+    {
+        if (length + bytes > data.length) {
+            data = Arrays.copyOf(data, Math.max(length + bytes, data.length * 2));
+            wrapped = ByteBuffer.wrap(data);
+        }
+    }
+}
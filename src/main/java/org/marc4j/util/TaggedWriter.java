@@ -20,10 +20,13 @@
  */
 package org.marc4j.util;
 
+import java.io.Closeable;
+import java.io.Flushable;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
+import java.nio.channels.FileChannel;
 
 import org.apache.log4j.Category;
 import org.marc4j.MarcHandler;
@@ -35,19 +38,27 @@
  * to write MARC data in tagged display format.
  * </p>
  *
+ * <p>
+ * Errors writing to the output are logged, and the first one is thrown
+ * by {@link #flush()} and {@link #close()}.
+ * </p>
+ *
  * @author <a href="mailto:mail@bpeters.com">Bas Peters</a>
  * @version $Revision: 1.3 $
  *
  * @see MarcHandler
  */
 public class TaggedWriter
-    implements MarcHandler
+    implements MarcHandler, Flushable, Closeable
 {
 
     private static Category log = Category.getInstance(TaggedWriter.class.getName());
     /** The Writer object */
     private Writer out;
 
+    /** The first error writing to the output */
+    private IOException error;
+
     /**
      * <p>
      * Default constructor.
@@ -89,6 +100,22 @@ public TaggedWriter(OutputStream out, String encoding)
         this(new OutputStreamWriter(out, encoding));
     }
 
+    /**
+     * <p>
+     * Creates a new instance that writes to a file channel from a
+     * background thread, so the parser does not wait for the writes.
+     * </p>
+     *
+     * @param channel the file channel
+     * @param encoding the encoding
+     * @see AsyncOutputStream
+     */
+    public TaggedWriter(FileChannel channel, String encoding)
+        throws IOException
+    {
+        this(new AsyncOutputStream(channel), encoding);
+    }
+
     /**
      * <p>
      * Creates a new instance and registers the Writer object.
@@ -179,7 +206,46 @@ public void endCollection()
             out.close();
         } catch (IOException e) {
             log.error("Error al finalizar la colección", e);
+            if (error == null) error = e;
+        }
+    }
+
+    /**
+     * <p>
+     * Flushes the output.
+     * </p>
+     *
+     * @throws IOException the first error writing to the output
+     */
+    @Override
+    public void flush()
+        throws IOException
+    {
+        try {
+            if (out != null) out.flush();
+        } catch (IOException e) {
+            if (error == null) error = e;
+        }
+        if (error != null) throw error;
+    }
+
+    /**
+     * <p>
+     * Closes the output, if <code>endCollection()</code> did not.
+     * </p>
+     *
+     * @throws IOException the first error writing to the output
+     */
+    @Override
+    public void close()
+        throws IOException
+    {
+        try {
+            if (out != null) out.close();
+        } catch (IOException e) {
+            if (error == null) error = e;
         }
+        if (error != null) throw error;
     }
 
     private void rawWrite(char c)
@@ -188,6 +254,7 @@ private void rawWrite(char c)
             out.write(c);
         } catch (IOException e) {
             log.error("Se ha producido un error al escribir en la salida", e);
+            if (error == null) error = e;
         }
     }
 
@@ -197,6 +264,7 @@ private void rawWrite(String s)
             out.write(s);
         } catch (IOException e) {
             log.error("Se ha producido un error al escribir en la salida", e);
+            if (error == null) error = e;
         }
     }
 
@@ -20,11 +20,11 @@
  */
 package org.marc4j.util;
 
-import java.io.BufferedWriter;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
-import java.io.OutputStreamWriter;
-import java.io.Writer;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
 
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
@@ -35,6 +35,9 @@
 import javax.xml.transform.stream.StreamSource;
 
 import org.apache.log4j.Category;
+import org.marc4j.ConversionPipeline;
+import org.marc4j.MarcHandler;
+import org.marc4j.helpers.RecordBuilder;
 import org.marc4j.marcxml.Converter;
 import org.marc4j.marcxml.MarcResult;
 import org.marc4j.marcxml.MarcXmlHandler;
@@ -92,7 +95,7 @@
  * @version $Revision: 1.16 $
  *
  * @see MarcXmlHandler
- * @see MarcWriter
+ * @see StreamingMarcWriter
  * @see Converter
  */
 public class XmlMarcWriter
@@ -117,6 +120,7 @@ public static void main(String[] args)
         boolean ansel = false;
         boolean dtdValidate = false;
         boolean xsdValidate = false;
+        int threads = 1;
         long start = System.currentTimeMillis();
 
         for (int i = 0; i < args.length; i++) {
@@ -140,6 +144,11 @@ public static void main(String[] args)
                     usage();
                 }
                 outputEncoding = args[++i].trim();
+            } else if (args[i].equals("-threads")) {
+                if (i == args.length - 1) {
+                    usage();
+                }
+                threads = Integer.parseInt(args[++i].trim());
             } else if (args[i].equals("-convert")) {
                 if (i == args.length - 1) {
                     usage();
@@ -168,7 +177,7 @@ public static void main(String[] args)
         }
 
         try {
-            Writer writer;
+            OutputStream stream;
             // if (output == null) {
             // if (convert != null)
             // writer = new BufferedWriter(new OutputStreamWriter(System.out, "ISO8859_1"));
@@ -183,16 +192,16 @@ public static void main(String[] args)
             // new FileOutputStream(output), "UTF8"));
             // }
 
-            if (output == null && outputEncoding != null)
-                writer = new BufferedWriter(new OutputStreamWriter(System.out, outputEncoding));
-            else if (output != null && outputEncoding == null)
-                writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(output)));
-            else if (output != null && outputEncoding != null)
-                writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(output), outputEncoding));
+            // the records are written without building record objects
+            if (output == null)
+                stream = new BufferedOutputStream(System.out);
             else
-                writer = new BufferedWriter(new OutputStreamWriter(System.out));
+                stream = new BufferedOutputStream(new FileOutputStream(output));
+            if (outputEncoding == null)
+                outputEncoding = Charset.defaultCharset().name();
 
-            MarcWriter handler = new MarcWriter(writer);
+            StreamingMarcWriter writer = new StreamingMarcWriter(stream, outputEncoding);
+            MarcHandler handler = writer;
             if (convert != null) {
                 CharacterConverter charconv = null;
                 if ("ANSEL".equals(convert))
@@ -205,7 +214,17 @@ else if ("ISO6937".equals(convert))
                     System.err.println("Unknown character set");
                     System.exit(1);
                 }
-                handler.setCharacterConverter(charconv);
+                if (threads > 1) {
+                    // the records are converted in parallel and written in order
+                    ConversionPipeline pipeline = new ConversionPipeline(
+                        new CharacterConversionProcessor(charconv), writer);
+                    pipeline.setParallelism(threads);
+                    RecordBuilder builder = new RecordBuilder();
+                    builder.setRecordHandler(pipeline);
+                    handler = builder;
+                } else {
+                    writer.setCharacterConverter(charconv);
+                }
             }
 
             SAXParserFactory factory = SAXParserFactory.newInstance();
@@ -255,6 +274,7 @@ private static void usage()
         System.err.println("       -oe <encoding> = Output using charset <encoding>");
         System.err.println("       -convert [ANSEL | ISO5426 | ISO6937] = convert from UTF-8");
         System.err.println("          to specified character set");
+        System.err.println("       -threads <n> = convert the character set using <n> threads");
         System.err.println("       -usage or -help = this message");
         System.err.println("See http://marc4j.tigris.org for more information.");
         System.exit(1);
@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2019 DIGIBÍS S.L.
+ *
+ * This file is part of MARC4J
+ *
+ * MARC4J is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * MARC4J is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with MARC4J; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.marc4j
+
+import org.marc4j.helpers.RecordHandler
+import org.marc4j.marc.ControlField
+import org.marc4j.marc.MarcException
+import org.marc4j.marc.Record
+import org.marc4j.util.CharacterConversionProcessor
+import org.marc4j.util.CharacterConverter
+import org.marc4j.util.MarcWriter
+import org.marc4j.util.ResourcesUtil
+
+import spock.lang.Specification
+import spock.lang.Timeout
+
+/**
+ * Unit test for ConversionPipeline
+ */
+class ConversionPipelineSpec extends Specification {
+
+    def "Records are reported in the order they were received"() {
+        given:
+        def random = new Random(42)
+        def delays = (0..<200).collect { random.nextInt(3) }
+        def output = Collections.synchronizedList([])
+        def handler = [startCollection: {}, record: { output << it.getControlNumber() }, endCollection: {}] as RecordHandler
+        def processor = { Record record ->
+            def n = record.getControlNumber() as int
+            Thread.sleep(delays[n])
+            n % 10 == 3 ? null : record
+        } as RecordProcessor
+        def pipeline = new ConversionPipeline(processor, handler)
+        pipeline.setParallelism(4)
+        pipeline.setWindow(8)
+
+        when:
+        pipeline.startCollection()
+        200.times {
+            def record = Record.newRecordWithEmptyLeader()
+            record.add(new ControlField("001", String.valueOf(it)))
+            pipeline.record(record)
+        }
+        pipeline.endCollection()
+
+        then:
+        output == (0..<200).findAll { it % 10 != 3 }.collect { String.valueOf(it) }
+    }
+
+    def "Converting the character set in the workers"() {
+        given:
+        def converter = [convert: { char[] data -> new String(data).toUpperCase().toCharArray() }] as CharacterConverter
+        def expected = new ByteArrayOutputStream()
+        def writer = new MarcWriter(expected, "UTF-8")
+        writer.setCharacterConverter(converter)
+        def reader = new MarcReader()
+        reader.setMarcHandler(writer)
+        reader.parse(ResourcesUtil.getStream("/iso2709/quijote-iso8859_1.txt"))
+        def actual = new ByteArrayOutputStream()
+        def pipeline = new ConversionPipeline(new CharacterConversionProcessor(converter),
+            new MarcWriter(actual, "UTF-8"))
+
+        when:
+        pipeline.parse(ResourcesUtil.getStream("/iso2709/quijote-iso8859_1.txt"))
+
+        then:
+        actual.toByteArray() == expected.toByteArray()
+        new String(actual.toByteArray(), "UTF-8").contains("DON QUIJOTE DE LA MANCHA")
+    }
+
+    def "An exception of the processor stops the pipeline"() {
+        given:
+        def handler = Mock(RecordHandler)
+        def processor = { Record record -> throw new IllegalStateException("broken") } as RecordProcessor
+        def pipeline = new ConversionPipeline(processor, handler)
+
+        when:
+        pipeline.startCollection()
+        10.times {
+            def record = Record.newRecordWithEmptyLeader()
+            record.add(new ControlField("001", String.valueOf(it)))
+            pipeline.record(record)
+        }
+        pipeline.endCollection()
+
+        then:
+        def e = thrown(MarcException)
+        e.getCause().getMessage() == "broken"
+        0 * handler.record(_)
+        0 * handler.endCollection()
+    }
+
+    @Timeout(10)
+    def "An error of the processor or of the handler stops the pipeline instead of hanging"() {
+        given:
+        def handler = Mock(RecordHandler)
+        def processor = { Record record ->
+            if (record.getControlNumber() == "3" && failing == "processor") throw new AssertionError("broken")
+            return record
+        } as RecordProcessor
+        handler.record(_) >> { Record record ->
+            if (record.getControlNumber() == "3" && failing == "handler") throw new StackOverflowError()
+        }
+        def pipeline = new ConversionPipeline(processor, handler)
+        pipeline.setParallelism(2)
+
+        when:
+        pipeline.startCollection()
+        try {
+            10.times {
+                def record = Record.newRecordWithEmptyLeader()
+                record.add(new ControlField("001", String.valueOf(it)))
+                pipeline.record(record)
+            }
+        } catch (MarcException e) {
+            // the failure may already be reported to the reader
+        }
+        pipeline.endCollection()
+
+        then:
+        def e = thrown(MarcException)
+        error.isInstance(e.getCause())
+        0 * handler.endCollection()
+
+        where:
+        failing     | error
+        "processor" | AssertionError
+        "handler"   | StackOverflowError
+    }
+
+    def "The collection is ended when the reader stops at a fatal error"() {
+        given:
+        def bytes = ResourcesUtil.getStream("/iso2709/quijote-iso8859_1.txt").bytes
+        def input = new ByteArrayOutputStream()
+        input.write(bytes)
+        input.write("not a leader at all, not a record".getBytes("US-ASCII"))
+        def handler = Mock(RecordHandler)
+        def pipeline = new ConversionPipeline({ Record record -> record } as RecordProcessor, handler)
+
+        when:
+        pipeline.parse(new ByteArrayInputStream(input.toByteArray()))
+
+        then:
+        1 * handler.startCollection()
+        1 * handler.record({ it.getControlNumber() == "BABB20150005885" })
+
+        then:
+        1 * handler.endCollection()
+    }
+}
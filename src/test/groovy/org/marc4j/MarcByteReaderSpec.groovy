@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2019 DIGIBÍS S.L.
+ *
+ * This file is part of MARC4J
+ *
+ * MARC4J is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * MARC4J is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with MARC4J; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.marc4j
+
+import java.nio.ByteBuffer
+
+import org.marc4j.util.ResourcesUtil
+
+import spock.lang.Specification
+
+/**
+ * Unit test for MarcByteReader
+ */
+class MarcByteReaderSpec extends Specification {
+
+    def "Reports the same events as MarcReader, decoding UTF-8 records"() {
+        given:
+        def expected = new StringWriter()
+        def marcReader = new MarcReader()
+        def charHandler = new TaggedWriter()
+        charHandler.setWriter(expected)
+        marcReader.setMarcHandler(charHandler)
+        marcReader.parse(ResourcesUtil.getStream("/iso2709/quijote-iso8859_1.txt"))
+
+        def actual = new StringWriter()
+        def byteReader = new MarcByteReader()
+        def byteHandler = new TaggedWriter()
+        byteHandler.setWriter(actual)
+        byteReader.setMarcHandler(byteHandler)
+
+        when:
+        byteReader.parse(ResourcesUtil.getStream("/iso2709/quijote-iso8859_1.txt"))
+
+        then: "MarcReader decodes every byte as Latin-1"
+        actual.toString() == new String(expected.toString().getBytes("ISO-8859-1"), "UTF-8")
+        actual.toString().contains("Oficina Depósito Legal Madrid")
+    }
+
+    def "Converting the subfields of records that are not encoded in UTF-8"() {
+        given:
+        def bytes = ResourcesUtil.getStream("/iso2709/quijote-iso8859_1.txt").bytes
+        bytes[9] = (byte)' '
+        def converter = Mock(org.marc4j.util.CharacterConverter)
+        def handler = new SimpleRecordMarcHandler()
+        def reader = new MarcByteReader()
+        reader.setMarcHandler(handler)
+        reader.setCharacterConverter(converter)
+
+        when:
+        reader.parse(bytes, 0, bytes.length)
+
+        then:
+        34 * converter.convert(_ as char[]) >> { args -> new String(args[0] as char[]).toUpperCase().toCharArray() }
+        def record = handler.getRecords()[0]
+        record.getControlField("003").getData() == "BABB".toCharArray()
+        record.getDataField("017").getSubfield('b' as char).getData() == "OFICINA DEPÃ³SITO LEGAL MADRID".toCharArray()
+    }
+
+    def "Reading consecutive records from a byte array"() {
+        given:
+        def bytes = ResourcesUtil.getStream("/iso2709/quijote-iso8859_1.txt").bytes
+        def data = new byte[bytes.length * 3]
+        3.times { System.arraycopy(bytes, 0, data, it * bytes.length, bytes.length) }
+        def errorHandler = Mock(ErrorHandler)
+        def handler = new SimpleRecordMarcHandler()
+        def reader = new MarcByteReader()
+        reader.setMarcHandler(handler)
+        reader.setErrorHandler(errorHandler)
+
+        when:
+        reader.parse(data, 0, data.length)
+
+        then:
+        0 * errorHandler._
+        handler.getRecords().size() == 3
+        handler.getRecords().every { it.getControlNumber() == "BABB20150005885" }
+        handler.getRecords().every { it.getDataFieldList().size() == 16 }
+    }
+
+    def "Reading a memory mapped file"() {
+        given:
+        def bytes = ResourcesUtil.getStream("/iso2709/quijote-iso8859_1.txt").bytes
+        def file = File.createTempFile("marc4j", ".mrc")
+        file.deleteOnExit()
+        file.withOutputStream { out -> 3.times { out.write(bytes) } }
+        def errorHandler = Mock(ErrorHandler)
+        def handler = new SimpleRecordMarcHandler()
+        def reader = new MarcByteReader()
+        reader.setMarcHandler(handler)
+        reader.setErrorHandler(errorHandler)
+        reader.setMappingSize(1000)
+        reader.setSkipRecords(skip)
+
+        when:
+        reader.parseMapped(file.getPath())
+
+        then:
+        0 * errorHandler._
+        handler.getRecords().size() == 3 - skip
+        handler.getRecords().every { it.getControlNumber() == "BABB20150005885" }
+
+        where:
+        skip << [0, 2]
+    }
+
+    def "Raw records decode their fields on demand"() {
+        given:
+        def bytes = ResourcesUtil.getStream("/iso2709/quijote-iso8859_1.txt").bytes
+        def data = new byte[bytes.length * 2]
+        2.times { System.arraycopy(bytes, 0, data, it * bytes.length, bytes.length) }
+        def expected = new SimpleRecordMarcHandler()
+        def eventReader = new MarcByteReader()
+        eventReader.setMarcHandler(expected)
+        eventReader.parse(ResourcesUtil.getStream("/iso2709/quijote-iso8859_1.txt"))
+
+        def errorHandler = Mock(ErrorHandler)
+        def records = []
+        def reader = new MarcByteReader()
+        reader.setErrorHandler(errorHandler)
+        reader.setRawRecordHandler(new RawRecordHandler() {
+            void record(RawRecord record) {
+                records << record.copy()
+            }
+        })
+
+        when:
+        reader.parse(data, 0, data.length)
+
+        then:
+        0 * errorHandler._
+        records.size() == 2
+        def record = records[1]
+        record.getFieldCount() == 20
+        record.getDataField("700").getSubfield('a' as char).getData() == "Cervantes Saavedra, Miguel de".toCharArray()
+        record.getDataField("017").getSubfield('a' as char).getData() == "M 23781-2014".toCharArray()
+        record.getControlNumber() == "BABB20150005885"
+        record.getVariableFields("245").size() == 1
+        record.getControlField("856") == null
+        record.toRecord().marshal() == expected.getRecords()[0].marshal()
+    }
+
+    def "Reading a truncated record reports a fatal error"() {
+        given:
+        def errorHandler = Mock(ErrorHandler)
+        def handler = new SimpleRecordMarcHandler()
+        def reader = new MarcByteReader()
+        reader.setMarcHandler(handler)
+        reader.setErrorHandler(errorHandler)
+
+        when:
+        reader.parse(ResourcesUtil.getStream("/iso2709/quijote-invalid.txt"))
+
+        then:
+        1 * errorHandler.fatalError(_)
+        handler.getRecords().isEmpty()
+    }
+
+    def "Errors beyond 2 GB keep the byte offset in the message"() {
+        given:
+        def errorHandler = Mock(ErrorHandler)
+        def reader = new MarcByteReader()
+        reader.setMarcHandler(new SimpleRecordMarcHandler())
+        reader.setErrorHandler(errorHandler)
+        def data = ResourcesUtil.getStream("/iso2709/quijote-invalid.txt").bytes
+
+        when:
+        reader.parse(ByteBuffer.wrap(data), 3000000000L)
+
+        then:
+        1 * errorHandler.fatalError({
+            it.getPosition() == Integer.MAX_VALUE && it.getMessage().endsWith("(byte offset 3000000000)")
+        })
+    }
+}
@@ -20,6 +20,8 @@
 package org.marc4j
 
 import org.marc4j.helpers.ErrorHandlerImpl
+import org.marc4j.helpers.RecordBuilder
+import org.marc4j.helpers.RecordHandler
 import org.marc4j.util.ResourcesUtil
 
 import spock.lang.Specification
@@ -84,6 +86,183 @@ class MarcReaderSpec extends Specification {
         subfieldB.getData() == "Oficina DepÃ³sito Legal Madrid".toCharArray()
     }
 
+    def "Building records that keep the raw content of the data fields"() {
+        given:
+        def records = []
+        def builder = new RecordBuilder()
+        builder.setLazySubfields(true)
+        builder.setRecordHandler([startCollection: {}, record: { records << it }, endCollection: {}] as RecordHandler)
+        def expected = new SimpleRecordMarcHandler()
+        def marcReader = new MarcReader()
+        marcReader.setMarcHandler(expected)
+        marcReader.parse(ResourcesUtil.getStream("/iso2709/quijote-iso8859_1.txt"))
+
+        when:
+        marcReader = new MarcReader()
+        marcReader.setMarcHandler(builder)
+        marcReader.parse(ResourcesUtil.getStream("/iso2709/quijote-iso8859_1.txt"))
+
+        then:
+        def record = records[0]
+        record.getDataFieldList().every { it.getContent() != null }
+        record.marshal() == expected.getRecords()[0].marshal()
+        record.getDataField("017").getSubfield('a' as char).getData() == "M 23781-2014".toCharArray()
+        record.getDataFieldList() == expected.getRecords()[0].getDataFieldList()
+    }
+
+    def "Building records that reuse the same objects"() {
+        given:
+        def bytes = ResourcesUtil.getStream("/iso2709/quijote-iso8859_1.txt").bytes
+        def data = new byte[bytes.length * 3]
+        3.times { System.arraycopy(bytes, 0, data, it * bytes.length, bytes.length) }
+        def expected = new SimpleRecordMarcHandler()
+        def byteReader = new MarcByteReader()
+        byteReader.setMarcHandler(expected)
+        byteReader.parse(bytes, 0, bytes.length)
+
+        def seen = []
+        def marshals = []
+        def titles = []
+        def copies = []
+        def builder = new RecordBuilder()
+        builder.setReuseRecords(true)
+        builder.setRecordHandler([startCollection: {}, record: {
+            seen << it
+            marshals << it.marshal()
+            titles << it.getDataField("245")
+            if (copies.isEmpty()) copies << it.clone()
+        }, endCollection: {}] as RecordHandler)
+
+        when:
+        byteReader = new MarcByteReader()
+        byteReader.setMarcHandler(builder)
+        byteReader.parse(data, 0, data.length)
+
+        then:
+        seen.size() == 3
+        seen.every { it.is(seen[0]) }
+        marshals.every { it == expected.getRecords()[0].marshal() }
+        copies[0] == expected.getRecords()[0]
+
+        and: "the fields are recycled, but not the ones of the copy"
+        titles.every { it.is(titles[0]) }
+        !copies[0].getDataField("245").is(titles[0])
+    }
+
+    def "Clones kept while reusing objects are not recycled"() {
+        given:
+        def bytes = ResourcesUtil.getStream("/iso2709/quijote-iso8859_1.txt").bytes
+        def data = new byte[bytes.length * 2]
+        2.times { System.arraycopy(bytes, 0, data, it * bytes.length, bytes.length) }
+        // the second record gets another first indicator in the title
+        def baseAddress = Integer.parseInt(new String(bytes, 12, 5, "US-ASCII"))
+        def entry = (24..<baseAddress - 1).step(12).find { new String(bytes, it, 3, "US-ASCII") == "245" }
+        def start = Integer.parseInt(new String(bytes, entry + 7, 5, "US-ASCII"))
+        data[bytes.length + baseAddress + start] = (byte)'9'
+
+        def copies = []
+        def builder = new RecordBuilder()
+        builder.setReuseRecords(true)
+        builder.setRecordHandler([startCollection: {}, record: {
+            copies << it.clone()
+            it.getDataField("245")
+        }, endCollection: {}] as RecordHandler)
+
+        when:
+        def byteReader = new MarcByteReader()
+        byteReader.setMarcHandler(builder)
+        byteReader.parse(data, 0, data.length)
+
+        then:
+        copies.collect { it.getDataField("245").getIndicator1() } == ['1' as char, '9' as char]
+    }
+
+    def "Slice handlers receive the data as slices of the field buffer"() {
+        given:
+        def handler = new SliceCollector()
+        reader.setMarcHandler(handler)
+
+        when:
+        reader.parse(ResourcesUtil.getStream("/iso2709/quijote-iso8859_1.txt"))
+
+        then:
+        handler.copies == 0
+        handler.controlFields[0] == "001 BABB20150005885"
+        handler.subfields.contains("a:M 23781-2014")
+        handler.subfields.contains("b:Oficina " + deposito + " Legal Madrid")
+
+        where:
+        reader               | deposito
+        new MarcReader()     | "DepÃ³sito"
+        new MarcByteReader() | "Depósito"
+    }
+
+    def "Skipping the fields rejected by a tag filter"() {
+        given:
+        def handler = new SimpleRecordMarcHandler()
+        def errorHandler = Mock(ErrorHandler)
+        reader.setMarcHandler(handler)
+        reader.setErrorHandler(errorHandler)
+        reader.setTagFilter(TagFilter.include("001", "017", "245").setSubfieldCodes("245", "a"))
+
+        when:
+        reader.parse(ResourcesUtil.getStream("/iso2709/quijote-iso8859_1.txt"))
+
+        then:
+        0 * errorHandler._
+        def record = handler.getRecords()[0]
+        record.getControlNumber() == "BABB20150005885"
+        record.getControlFieldList().size() == 1
+        record.getDataFieldList()*.getTag() == ["017", "245"]
+        record.getDataField("017").getSubfieldList().size() == 2
+        record.getDataField("245").getSubfieldList()*.getCode() == ['a' as char]
+
+        where:
+        reader << [new MarcReader(), new MarcByteReader()]
+    }
+
+    def "Excluding tags with a tag filter"() {
+        given:
+        def handler = new SimpleRecordMarcHandler()
+        reader.setMarcHandler(handler)
+        reader.setTagFilter(TagFilter.exclude("008", "700"))
+
+        when:
+        reader.parse(ResourcesUtil.getStream("/iso2709/quijote-iso8859_1.txt"))
+
+        then:
+        def record = handler.getRecords()[0]
+        record.getControlFieldList().size() == 3
+        record.getDataFieldList().size() == 15
+        !record.hasVariableField("700")
+
+        where:
+        reader << [new MarcReader(), new MarcByteReader()]
+    }
+
+    static class SliceCollector implements MarcSliceHandler {
+        def copies = 0
+        def controlFields = []
+        def subfields = []
+
+        void startCollection() {}
+        void endCollection() {}
+        void startRecord(org.marc4j.marc.Leader leader) {}
+        void endRecord() {}
+        void startDataField(String tag, char ind1, char ind2, Long id) {}
+        void endDataField(String tag) {}
+        void controlField(String tag, char[] data, Long id) { copies++ }
+        void subfield(char code, char[] data, String linkCode) { copies++ }
+
+        void controlField(String tag, char[] buf, int offset, int length, Long id) {
+            controlFields << "$tag ${new String(buf, offset, length)}".toString()
+        }
+
+        void subfield(char code, char[] buf, int offset, int length, String linkCode) {
+            subfields << "$code:${new String(buf, offset, length)}".toString()
+        }
+    }
+
     final ISO2709_TAGGED_OUTPUT =
     '''Leader 00972nam a2200265 c 4500
 001 BABB20150005885
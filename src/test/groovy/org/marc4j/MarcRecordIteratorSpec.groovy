@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2019 DIGIBÍS S.L.
+ *
+ * This file is part of MARC4J
+ *
+ * MARC4J is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * MARC4J is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with MARC4J; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.marc4j
+
+import org.marc4j.util.ResourcesUtil
+
+import spock.lang.Specification
+
+/**
+ * Unit test for MarcRecordIterator
+ */
+class MarcRecordIteratorSpec extends Specification {
+
+    def "Iterating over the records of a stream"() {
+        given:
+        def bytes = ResourcesUtil.getStream("/iso2709/quijote-iso8859_1.txt").bytes
+        def out = new ByteArrayOutputStream()
+        3.times { out.write(bytes) }
+        def records = new MarcRecordIterator(new ByteArrayInputStream(out.toByteArray()))
+
+        when:
+        def controlNumbers = []
+        while (records.hasNext()) {
+            controlNumbers << records.next().getControlNumber()
+        }
+
+        then:
+        controlNumbers == ["BABB20150005885"] * 3
+        !records.hasNext()
+
+        when:
+        records.next()
+
+        then:
+        thrown(NoSuchElementException)
+
+        cleanup:
+        records.close()
+    }
+
+    def "Iterating over a truncated file"() {
+        given:
+        def errorHandler = Mock(ErrorHandler)
+        def records = new MarcRecordIterator(ResourcesUtil.getStream("/iso2709/quijote-invalid.txt"))
+        records.setErrorHandler(errorHandler)
+
+        when:
+        def hasNext = records.hasNext()
+
+        then:
+        !hasNext
+        1 * errorHandler.fatalError(_)
+
+        cleanup:
+        records.close()
+    }
+}
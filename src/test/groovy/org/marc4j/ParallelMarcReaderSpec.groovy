@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2019 DIGIBÍS S.L.
+ *
+ * This file is part of MARC4J
+ *
+ * MARC4J is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * MARC4J is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with MARC4J; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.marc4j
+
+import org.marc4j.helpers.RecordHandler
+import org.marc4j.marc.Record
+import org.marc4j.util.ResourcesUtil
+
+import spock.lang.Specification
+
+/**
+ * Unit test for ParallelMarcReader
+ */
+class ParallelMarcReaderSpec extends Specification {
+
+    static final RECORDS = 50
+
+    File file
+
+    def setup() {
+        def bytes = ResourcesUtil.getStream("/iso2709/quijote-iso8859_1.txt").bytes
+        file = File.createTempFile("marc4j", ".mrc")
+        file.deleteOnExit()
+        file.withOutputStream { out ->
+            RECORDS.times { i ->
+                // Control number (tag 001) starts at the base address of data (265)
+                def number = String.format("%07d", i).getBytes("ISO8859_1")
+                System.arraycopy(number, 0, bytes, 265 + 8, 7)
+                out.write(bytes)
+            }
+        }
+    }
+
+    def "Merging the records in the order of the file"() {
+        given:
+        def reader = new ParallelMarcReader()
+        reader.setParallelism(4)
+        reader.setSplitSize(3000)
+        def handler = new CollectingRecordHandler()
+
+        when:
+        reader.parse(file.getPath(), handler, true)
+
+        then:
+        handler.started == 1
+        handler.ended == 1
+        handler.controlNumbers == (0..<RECORDS).collect { String.format("BABB2015%07d", it) }
+    }
+
+    def "Merging the records without order"() {
+        given:
+        def reader = new ParallelMarcReader()
+        reader.setParallelism(4)
+        reader.setSplitSize(3000)
+        def handler = new CollectingRecordHandler()
+
+        when:
+        reader.parse(file.getPath(), handler, false)
+
+        then:
+        handler.controlNumbers.sort() == (0..<RECORDS).collect { String.format("BABB2015%07d", it) }
+    }
+
+    def "Each range reports to its own handler"() {
+        given:
+        def errorHandler = Mock(ErrorHandler)
+        def reader = new ParallelMarcReader()
+        reader.setParallelism(3)
+        reader.setErrorHandler(errorHandler)
+        def handlers = Collections.synchronizedMap([:])
+        def factory = { int part ->
+            def handler = new SimpleRecordMarcHandler()
+            handlers[part] = handler
+            handler
+        } as MarcHandlerFactory
+
+        when:
+        reader.parse(file.getPath(), factory)
+
+        then:
+        0 * errorHandler._
+        handlers.size() == 3
+        handlers.values().sum { it.getRecords().size() } == RECORDS
+    }
+
+    static class CollectingRecordHandler implements RecordHandler {
+        int started
+        int ended
+        List<String> controlNumbers = []
+
+        void startCollection() {
+            started++
+        }
+
+        void record(Record record) {
+            controlNumbers << record.getControlNumber()
+        }
+
+        void endCollection() {
+            ended++
+        }
+    }
+}
@@ -61,6 +61,132 @@ class CollectionSpec extends Specification {
         outputString != ""
     }
 
+    def "A Collection spills records to disk when it exceeds its memory budget" () {
+        given:
+        def collection = new Collection(2000)
+        def expected = new Collection()
+
+        when:
+        103.times {
+            def record = this.generateRecord(String.format("BIB%011d", it))
+            collection.add(record)
+            expected.add(record)
+        }
+
+        then:
+        collection.getSize() == 103
+        collection.getSpilledCount() > 0
+        collection.getSpilledCount() < 103
+        [102, 0, 70, 5, 64, 63, collection.getSpilledCount()].every {
+            collection.getRecord(it) == expected.getRecord(it)
+        }
+        collection.iterator().collect { it.getControlNumber() } == (0..<103).collect { String.format("BIB%011d", it) }
+
+        and: "spilled records are read back as copies"
+        !collection.getRecord(0).is(collection.getRecord(0))
+        collection.getRecord(102).is(collection.getRecord(102))
+
+        when: "Marshal all records to a writer"
+        def writer = new StringWriter()
+        collection.marshal(writer)
+        def expectedWriter = new StringWriter()
+        expected.marshal(expectedWriter)
+
+        then:
+        writer.toString() == expectedWriter.toString()
+
+        when: "Serialize the collection"
+        def bytes = new ByteArrayOutputStream()
+        new ObjectOutputStream(bytes).writeObject(collection)
+        def copy = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject()
+
+        then:
+        copy.getSize() == 103
+        copy.getSpilledCount() > 0
+        copy.getRecord(42).marshal() == expected.getRecord(42).marshal()
+
+        cleanup:
+        collection.close()
+        copy?.close()
+    }
+
+    def "A spill that fails part way leaves the collection as it was" () {
+        given:
+        def collection = new Collection(2000)
+        def fail = false
+        def broken = this.generateRecord("BIB99999999999")
+        broken.add(new ControlField("005", "20190101000000.0") {
+            char[] getData() {
+                if (fail) throw new IOException("disk full")
+                return super.getData()
+            }
+        })
+        def expected = []
+        def n = 0
+        def addNext = {
+            def record = this.generateRecord(String.format("BIB%011d", n++))
+            expected << record
+            collection.add(record)
+        }
+
+        when: "a record fails after others were written by a later spill"
+        40.times { addNext() }
+        def spilled = collection.getSpilledCount()
+        while (collection.getSpilledCount() == spilled) addNext()
+        2.times { addNext() }
+        collection.add(broken)
+        expected << broken
+        fail = true
+        def error = null
+        while (error == null) {
+            spilled = collection.getSpilledCount()
+            try {
+                addNext()
+            } catch (MarcException e) {
+                error = e
+            }
+        }
+
+        then:
+        error.getCause() instanceof IOException
+        spilled > 0
+        collection.getSpilledCount() == spilled
+        collection.getSize() == expected.size()
+
+        when: "the next spill succeeds"
+        fail = false
+        30.times { addNext() }
+
+        then:
+        collection.getSpilledCount() > spilled + 1
+        collection.getSize() == expected.size()
+        collection.iterator().collect { it.getControlNumber() } == expected.collect { it.getControlNumber() }
+        (0..<expected.size()).every { collection.getRecord(it).marshal() == expected[it].marshal() }
+
+        cleanup:
+        collection.close()
+    }
+
+    def "The records added last stay in memory after a spill" () {
+        given:
+        def collection = new Collection(2000)
+        def records = (0..<20).collect { this.generateRecord(String.format("BIB%011d", it)) }
+
+        when:
+        records.each {
+            collection.add(it)
+            it.add(new DataField("500", ' ' as char, ' ' as char))
+        }
+
+        then:
+        collection.getSpilledCount() > 0
+        collection.getRecord(records.size() - 1).is(records.last())
+        collection.getRecord(records.size() - 1).getDataField("500") != null
+
+        cleanup:
+        collection.close()
+    }
+
     def generateRecord(String controlCode) {
         def record = Record.newRecordWithEmptyLeader()
         def controlNumberField = new ControlField("001", controlCode)
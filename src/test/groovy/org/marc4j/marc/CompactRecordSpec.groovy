@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2019 DIGIBÍS S.L.
+ *
+ * This file is part of MARC4J
+ *
+ * MARC4J is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * MARC4J is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with MARC4J; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.marc4j.marc
+
+import org.marc4j.MarcByteReader
+import org.marc4j.helpers.RecordBuilder
+import org.marc4j.helpers.RecordHandler
+import org.marc4j.util.ResourcesUtil
+
+import spock.lang.Specification
+
+/**
+ * Unit test for CompactRecord
+ */
+class CompactRecordSpec extends Specification {
+
+    def "A compact record reads as the record it was built from"() {
+        given:
+        def record = readRecords(false)[0]
+
+        when:
+        def compact = new CompactRecord(record)
+
+        then:
+        compact.isCompact()
+        compact.marshal() == record.marshal()
+        compact.getControlNumber() == "BABB20150005885"
+        compact.getControlNumberField().getData() == record.getControlNumberField().getData()
+        compact.getControlField("008").getData() == record.getControlField("008").getData()
+        compact.getDataField("700").marshal() == record.getDataField("700").marshal()
+        compact.getDataFields("017")*.marshal() == record.getDataFields("017")*.marshal()
+        compact.getVariableFieldList()*.getTag() == record.getVariableFieldList()*.getTag()
+        compact.getDataFieldList().size() == 16
+        compact.hasVariableField("245")
+        !compact.hasVariableField("856")
+        compact.getDataField("856") == null
+        compact.isCompact()
+    }
+
+    def "Modifying a compact record turns it into an ordinary record"() {
+        given:
+        def compact = new CompactRecord(readRecords(false)[0])
+        def copy = compact.clone()
+        def note = new DataField("500", ' ' as char, ' ' as char)
+        note.add(new Subfield('a' as char, "Nota"))
+
+        when:
+        compact.getLeader().setRecordStatus('c' as char)
+        compact.add(note)
+
+        then:
+        !compact.isCompact()
+        compact.getDataField("500").is(note)
+        compact.getLeader().getRecordStatus() == 'c' as char
+        compact.getDataFieldList().size() == 17
+
+        and: "the clone is not modified"
+        copy.isCompact()
+        copy.getDataField("500") == null
+        copy.getLeader().getRecordStatus() != 'c' as char
+
+        when:
+        compact.getDataFieldList().add(note)
+
+        then:
+        compact.getDataFields("500").size() == 2
+
+        when:
+        copy.getDataFieldList().add(note)
+
+        then: "the lists of a compact record are read only"
+        thrown(UnsupportedOperationException)
+    }
+
+    def "RecordBuilder creates compact records from slices"() {
+        given:
+        def records = readRecords(false)
+
+        when:
+        def compacts = readRecords(true)
+
+        then:
+        compacts.size() == 2
+        compacts.every { it instanceof CompactRecord && it.isCompact() }
+        compacts*.marshal() == records*.marshal()
+    }
+
+    def "The builder puts the control number field and the control fields first"() {
+        given:
+        def builder = new CompactRecord.Builder()
+        def data = "xBIB1".toCharArray()
+
+        when:
+        builder.startRecord(new Leader("00000nam a2200000 a 4500"))
+        builder.startDataField(' ' as char, ' ' as char)
+        builder.subfield('a' as char, data, 0, 1)
+        builder.endDataField("245")
+        builder.controlField("005", data, 0, 1)
+        builder.controlField("001", data, 1, 4)
+        def record = builder.build()
+
+        then:
+        record.getVariableFieldList()*.getTag() == ["001", "005", "245"]
+        record.getControlNumber() == "BIB1"
+        record.getDataField("245").getSubfield('a' as char).getData() == "x".toCharArray()
+    }
+
+    private List<Record> readRecords(boolean compact) {
+        def bytes = ResourcesUtil.getStream("/iso2709/quijote-iso8859_1.txt").bytes
+        def data = new byte[bytes.length * 2]
+        2.times { System.arraycopy(bytes, 0, data, it * bytes.length, bytes.length) }
+        def records = []
+        def builder = new RecordBuilder()
+        builder.setCompact(compact)
+        builder.setRecordHandler([startCollection: {}, record: { records << it }, endCollection: {}] as RecordHandler)
+        def reader = new MarcByteReader()
+        reader.setReuseLeader(compact)
+        reader.setMarcHandler(builder)
+        reader.parse(data, 0, data.length)
+        return records
+    }
+}
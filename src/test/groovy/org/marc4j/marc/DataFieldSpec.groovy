@@ -353,4 +353,66 @@ class DataFieldSpec extends Specification {
         df.marshal() == "12\u001Fatest\u001E"
         df.getLength() == 9
     }
+
+    def "Datafield created from its raw content parses the subfields on demand" () {
+        given:
+        def content = "10\u001FaCervantes\u001Fd1547-1616\u001Fd(autor)".toCharArray()
+        def eager = new DataField("100", '1' as char, '0' as char)
+        eager.add(new Subfield('a' as char, "Cervantes"))
+        eager.add(new Subfield('d' as char, "1547-1616"))
+        eager.add(new Subfield('d' as char, "(autor)"))
+
+        when:
+        def f = new DataField("100", content)
+
+        then: "the content is used as it is"
+        f.getIndicator1() == '1' as char
+        f.hasSubfield('d' as char)
+        !f.hasSubfield('b' as char)
+        f.marshal() == eager.marshal()
+        f.getLength() == eager.getLength()
+        f.getContent().is(content)
+
+        when:
+        f.setIndicator2('4' as char)
+        def clone = f.clone()
+
+        then:
+        f.marshal() == "14\u001FaCervantes\u001Fd1547-1616\u001Fd(autor)\u001E"
+        clone.getContent() != null
+
+        when:
+        eager.setIndicator2('4' as char)
+        def subfield = f.getSubfield('d' as char)
+
+        then: "the subfields are parsed once"
+        f.getContent() == null
+        subfield.getData() == "1547-1616".toCharArray()
+        f.getSubfieldList().size() == 3
+        f == eager
+        clone == eager
+
+        when:
+        subfield.setData("1547")
+
+        then:
+        f.marshal() == "14\u001FaCervantes\u001Fd1547\u001Fd(autor)\u001E"
+    }
+
+    def "a shared clone copies the subfields when they are handed out" () {
+        given:
+        def f = new DataField("245", '1' as char, '0' as char)
+        f.add(new Subfield('a' as char, "Summerland"))
+        f.add(new Subfield('c' as char, "Michael Chabon"))
+
+        when:
+        def c = f.cloneShared()
+        c.getSubfield('a' as char).setData("Winterland")
+        f.getSubfieldList().get(1).setData("Chabon")
+
+        then:
+        f.marshal() == "10\u001FaSummerland\u001FcChabon\u001E"
+        c.marshal() == "10\u001FaWinterland\u001FcMichael Chabon\u001E"
+        c.id == DataField.EMPTY_ID
+    }
 }
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2019 DIGIBÍS S.L.
+ *
+ * This file is part of MARC4J
+ *
+ * MARC4J is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * MARC4J is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with MARC4J; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.marc4j.marc
+
+import spock.lang.Specification
+
+/**
+ * Unit test for Leader
+ */
+class LeaderSpec extends Specification {
+    final LEADER = "00972nam a2200265 c 4500"
+
+    def "Parsing and writing a leader through buffers"() {
+        given:
+        def leader = new Leader()
+        def chars = new char[30]
+        def bytes = new byte[30]
+
+        when:
+        leader.unmarshal(("xx" + LEADER).toCharArray(), 2)
+
+        then:
+        leader.getRecordLength() == 972
+        leader.getBaseAddressOfData() == 265
+        leader.getCharCodingScheme() == 'a' as char
+        leader.marshal() == LEADER
+
+        when:
+        leader.marshal(chars, 3)
+        leader.marshal(bytes, 1)
+
+        then:
+        new String(chars, 3, 24) == LEADER
+        new String(bytes, 1, 24, "ISO-8859-1") == LEADER
+    }
+
+    def "Refilling a leader reuses its arrays"() {
+        given:
+        def leader = new Leader(LEADER)
+        def entryMap = leader.getEntryMap()
+
+        when:
+        leader.unmarshal("01234cam  2200049   4500".getBytes("ISO-8859-1"), 0)
+
+        then:
+        leader.getEntryMap().is(entryMap)
+        leader.getRecordLength() == 1234
+        leader.getBaseAddressOfData() == 49
+        leader.marshal() == "01234cam  2200049   4500"
+    }
+
+    def "Reading the subfield code length from position 11"() {
+        when:
+        def leader = new Leader("00972nam a2300265 c 4500")
+
+        then:
+        leader.getIndicatorCount() == 2
+        leader.getSubfieldCodeLength() == 3
+    }
+
+    def "Invalid values"() {
+        when:
+        def leader = new Leader("abcdenam axy00265 c 4500")
+
+        then:
+        leader.getRecordLength() == 0
+        leader.getIndicatorCount() == 2
+        leader.getSubfieldCodeLength() == 2
+
+        when:
+        new Leader("00972nam")
+
+        then:
+        thrown(MarcException)
+
+        when:
+        leader.setRecordLength(100000)
+        leader.marshal(new char[24], 0)
+
+        then:
+        thrown(MarcException)
+        leader.marshal().startsWith("100000")
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2019 DIGIBÍS S.L.
+ *
+ * This file is part of MARC4J
+ *
+ * MARC4J is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * MARC4J is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with MARC4J; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.marc4j.marc
+
+import org.marc4j.MarcByteReader
+import org.marc4j.RawRecord
+import org.marc4j.RawRecordHandler
+import org.marc4j.util.ResourcesUtil
+
+import spock.lang.Specification
+
+/**
+ * Unit test for RecordArena
+ */
+class RecordArenaSpec extends Specification {
+
+    def "Records are rebuilt from the arena"() {
+        given:
+        def bytes = ResourcesUtil.getStream("/iso2709/quijote-iso8859_1.txt").bytes
+        def records = []
+        def reader = new MarcByteReader()
+        reader.setRawRecordHandler(new RawRecordHandler() {
+            void record(RawRecord raw) {
+                records << raw.toRecord()
+            }
+        })
+        reader.parse(bytes, 0, bytes.length)
+        records << new RecordSpec().makeSummerlandRecord()
+        def file = File.createTempFile("marc4j", ".arena")
+        file.deleteOnExit()
+        def arena = mapped ? new RecordArena(file.getPath(), 2048) : new RecordArena(arenaSize)
+
+        when:
+        def handles = (0..<50).collect { arena.add(records[it % 2]) }
+
+        then:
+        arena.size() == 50
+        (0..<50).every { arena.get(it) == records[it % 2] }
+        arena.getRecord(handles[7]) == records[1]
+        arena.getHandle(7) == handles[7]
+        arena.getCompactRecord(4).getControlNumber() == "BABB20150005885"
+        arena.getCompactRecord(4).isCompact()
+        [4, 5].every { arena.getCompactRecord(it).marshal() == new CompactRecord(records[it % 2]).marshal() }
+        arena.iterator().collect { it.getControlNumber() } == (0..<50).collect { records[it % 2].getControlNumber() }
+        arena.getUsedBytes() > 0
+
+        cleanup:
+        arena.close()
+
+        where:
+        mapped | arenaSize
+        false  | RecordArena.DEFAULT_ARENA_SIZE
+        false  | 100
+        true   | 0
+    }
+
+    def "Positions out of range are rejected"() {
+        given:
+        def arena = new RecordArena(1024)
+        arena.add(new RecordSpec().makeSummerlandRecord())
+
+        when:
+        arena.get(1)
+
+        then:
+        thrown(IndexOutOfBoundsException)
+    }
+}
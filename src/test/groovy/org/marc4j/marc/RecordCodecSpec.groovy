@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2019 DIGIBÍS S.L.
+ *
+ * This file is part of MARC4J
+ *
+ * MARC4J is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * MARC4J is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with MARC4J; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.marc4j.marc
+
+import org.marc4j.BinaryRecordReader
+import org.marc4j.MarcByteReader
+import org.marc4j.RawRecord
+import org.marc4j.RawRecordHandler
+import org.marc4j.util.BinaryRecordWriter
+import org.marc4j.util.ResourcesUtil
+
+import spock.lang.Specification
+
+/**
+ * Unit test for RecordCodec
+ */
+class RecordCodecSpec extends Specification {
+
+    def "A record read back equals the record written"() {
+        given:
+        def record = new Record(new Leader("00714cam a2200205 a 4500"))
+        record.add(new ControlField("001", "12883376", 12L))
+        record.add(new ControlField("005", "20030616111422.0"))
+        def title = new DataField("245", '1' as char, '0' as char, -3L)
+        title.add(new Subfield('a' as char, "Summerland / Ἥλιος 夏", "880-01"))
+        title.add(new Subfield('c' as char, "Michael Chabon."))
+        record.add(title)
+        def local = new DataField("CAT", ' ' as char, ' ' as char)
+        local.add(new Subfield('a' as char, ""))
+        record.add(local)
+        record.add(new DataField("650", ' ' as char, '1' as char))
+        def bytes = new ByteArrayOutputStream()
+
+        when:
+        record.writeTo(new DataOutputStream(bytes))
+        def copy = Record.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())))
+
+        then:
+        copy == record
+        copy.hashCode() == record.hashCode()
+        copy.getControlNumberField().getId() == 12L
+        copy.getDataField("245").getId() == -3L
+        copy.getDataField("245").getSubfield('a' as char).getLinkCode() == "880-01"
+        copy.getDataField("CAT").getSubfield('a' as char).getData().length == 0
+        copy.getDataField("650").getSubfieldList().isEmpty()
+    }
+
+    def "Raw and compact records are written as they are read"() {
+        given:
+        def bytes = ResourcesUtil.getStream("/iso2709/quijote-iso8859_1.txt").bytes
+        def records = []
+        def reader = new MarcByteReader()
+        reader.setRawRecordHandler(new RawRecordHandler() {
+            void record(RawRecord raw) {
+                records << raw.toRecord()
+            }
+        })
+        reader.parse(bytes, 0, bytes.length)
+        def record = records[0]
+        def codec = new RecordCodec()
+        def out = new ByteArrayOutputStream()
+        def java = new ByteArrayOutputStream()
+        new ObjectOutputStream(java).writeObject(record)
+
+        when:
+        codec.write(record, new DataOutputStream(out))
+        codec.write(new CompactRecord(record), new DataOutputStream(out))
+        def input = new DataInputStream(new ByteArrayInputStream(out.toByteArray()))
+        def first = codec.read(input)
+        def second = codec.read(input)
+
+        then:
+        first.getDataFieldList().every { it.getContent() != null }
+        first == record
+        second == record
+        second.marshal() == record.marshal()
+        out.size() < java.size()
+    }
+
+    def "Records are streamed through a file"() {
+        given:
+        def file = File.createTempFile("marc4j", ".bin")
+        file.deleteOnExit()
+        def bytes = ResourcesUtil.getStream("/iso2709/quijote-iso8859_1.txt").bytes
+        def records = []
+        def reader = new MarcByteReader()
+        reader.setRawRecordHandler(new RawRecordHandler() {
+            void record(RawRecord raw) {
+                records << raw.toRecord()
+            }
+        })
+        reader.parse(bytes, 0, bytes.length)
+        records << new Record(Leader.newEmptyLeader())
+        records << new Record()
+
+        when:
+        def writer = new BinaryRecordWriter(file.getPath())
+        records.each { writer.record(it) }
+        writer.close()
+        def read = new BinaryRecordReader(file.getPath())
+        def copies = []
+        while (read.hasNext()) copies << read.next()
+        read.close()
+
+        then:
+        copies == records
+    }
+
+    def "Reading an unsupported version"() {
+        when:
+        new RecordCodec().read(new DataInputStream(new ByteArrayInputStream([2, 0] as byte[])))
+
+        then:
+        def e = thrown(MarcException)
+        e.getMessage() == "Unsupported record format version 2"
+
+        when:
+        new BinaryRecordReader(new ByteArrayInputStream("<collection>".bytes))
+
+        then:
+        thrown(MarcException)
+    }
+}
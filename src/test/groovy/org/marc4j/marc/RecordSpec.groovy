@@ -19,6 +19,9 @@
  */
 package org.marc4j.marc
 
+import org.marc4j.MarcByteReader
+import org.marc4j.SimpleRecordMarcHandler
+
 import spock.lang.Specification
 
 /**
@@ -137,15 +140,165 @@ class RecordSpec extends Specification {
         def dfield = record.getDataField("245")
         dfield.getTag() == "245"
 
+        and: "Verify retriving the fields with a tag"
+        def fields = record.getVariableFields("650")
+        fields.size() == 3
+
         // Not Implemented yet
-        //def fields = record.getVariableFields("650")
-        //fields.size() == 3
 
         //def fieldTags = ["245", "260", "300"];
         //fields = record.getVariableFields(fields);
         //fields.size() == 3
     }
 
+    def "Fields are looked up by tag through the index"() {
+        given:
+        def record = this.makeSummerlandRecord()
+
+        expect:
+        record.hasVariableField("650")
+        record.hasVariableField("005")
+        !record.hasVariableField("700")
+        record.getControlFields("008").size() == 1
+        record.getVariableFields("005")[0].is(record.getControlField("005"))
+        record.getDataFields("020")*.getSubfield('a' as char)*.getData() == ["0786808772".toCharArray(), "0786816155 (pbk.)".toCharArray()]
+        record.getDataFields("700").isEmpty()
+
+        when: "the record is modified after a lookup"
+        def added = new DataField("650", ' ' as char, '0' as char)
+        record.add(added)
+        def author = new DataField("700", '1' as char, ' ' as char)
+        record.getDataFieldList().set(record.getDataFieldList().indexOf(record.getDataField("100")), author)
+
+        then: "the index is rebuilt"
+        record.getDataFields("650").size() == 4
+        record.getDataFields("650")[3].is(added)
+        record.getDataField("700").is(author)
+        record.getDataField("100") == null
+
+        when:
+        record.getDataFields("650").add(added)
+
+        then: "the views are read only"
+        thrown(UnsupportedOperationException)
+    }
+
+    def "Clones are independent of the original record"() {
+        given:
+        def record = this.makeSummerlandRecord()
+        record.add(new DataField("500", ' ' as char, ' ' as char, 7L))
+        record.add(new DataField("590", "10\u001Fanota sin analizar".toCharArray()))
+        def title = record.getDataField("245")
+        def note = record.getDataField("590")
+        def expected = record.marshal()
+
+        when:
+        def copy = record.clone()
+        title.setIndicator1('9' as char)
+        title.getSubfield('a' as char).setData("Winterland")
+        note.setIndicator2('9' as char)
+        record.getControlField("005").setData("20190101000000.0")
+
+        then: "fields obtained before cloning do not reach the clone"
+        copy.marshal() == expected
+        copy.getDataField("245").getIndicator1() == '1' as char
+        copy.getDataField("590").getIndicator2() == '0' as char
+        copy.getDataField("590").getSubfield('a' as char).getData() == "nota sin analizar".toCharArray()
+
+        and: "the clone holds its own fields, without ids"
+        !copy.getDataField("245").is(title)
+        record.getDataFieldList().every { field -> !copy.getDataFieldList().any { it.is(field) } }
+        copy.getDataField("500").getId() == null
+
+        when:
+        copy.getDataField("650").setIndicator2('7' as char)
+
+        then: "the changes made to the clone do not reach the original"
+        record.getDataField("650").getIndicator2() == '1' as char
+    }
+
+    def "Shared clones copy a field only when it is handed out"() {
+        given:
+        def record = this.makeSummerlandRecord()
+        record.add(new DataField("500", ' ' as char, ' ' as char, 7L))
+        def expected = record.marshal()
+
+        when:
+        def copy = record.cloneShared()
+
+        then: "the fields without id are shared until they are requested"
+        copy.marshal() == expected
+        (0..<record.peekDataFields().size()).every {
+            copy.peekDataFields()[it].is(record.peekDataFields()[it]) == (record.peekDataFields()[it].getId() == null)
+        }
+        copy.getDataField("500").getId() == null
+
+        when:
+        copy.getDataField("245").setIndicator1('9' as char)
+        copy.getDataField("245").getSubfield('a' as char).setData("Winterland")
+        copy.getControlField("005").setData("20190101000000.0")
+
+        then: "the changes made to the copy do not reach the original"
+        record.marshal() == expected
+        copy.peekDataFields().find { it.getTag() == "100" }.is(record.peekDataFields().find { it.getTag() == "100" })
+
+        when:
+        record.getDataField("650").setIndicator2('7' as char)
+        record.getDataField("245").getSubfield('a' as char).setData("Autumnland")
+
+        then: "the changes made to the original do not reach the copy"
+        copy.getDataField("650").getIndicator2() == '1' as char
+        copy.getDataField("245").getSubfield('a' as char).getData() == "Winterland".toCharArray()
+        copy.getDataField("245").getIndicator1() == '9' as char
+        record.getDataField("245").getIndicator1() == '1' as char
+    }
+
+    def "Marshalling to bytes gives the same record as marshal()"() {
+        given:
+        def record = this.makeSummerlandRecord()
+        def big = new DataField("500", ' ' as char, ' ' as char)
+        big.add(new Subfield("a" as char, "Nota de éxito " * 500))
+        def marshaller = new RecordMarshaller()
+        def out = new ByteArrayOutputStream()
+
+        when:
+        marshaller.write(record, out)
+        record.add(big)
+        marshaller.write(record, out)
+
+        then:
+        def expected = this.makeSummerlandRecord().marshal()
+        record.getLeader().getRecordLength() == marshaller.toByteArray().length
+        new String(out.toByteArray(), "ISO-8859-1") == expected + record.marshal()
+        new String(marshaller.toByteArray(), "ISO-8859-1") == record.marshal()
+    }
+
+    def "Marshalling to UTF-8 counts the directory in bytes"() {
+        given:
+        def record = this.makeSummerlandRecord()
+        def note = new DataField("500", ' ' as char, ' ' as char)
+        note.add(new Subfield("a" as char, "Nota de éxito, añadida en 2019 ✓"))
+        record.add(note)
+        def marshaller = new RecordMarshaller("UTF-8")
+        def handler = new SimpleRecordMarcHandler()
+        def reader = new MarcByteReader()
+        reader.setMarcHandler(handler)
+
+        when:
+        def length = marshaller.marshal(record)
+        def bytes = marshaller.toByteArray()
+        reader.parse(bytes, 0, bytes.length)
+
+        then:
+        length == bytes.length
+        record.getLeader().getRecordLength() == bytes.length
+        record.marshal("UTF-8").getBytes("UTF-8") == bytes
+        def copy = handler.getRecords()[0]
+        copy.getControlNumber() == "12883376"
+        copy.getDataField("500").getSubfield('a' as char).getData() == "Nota de éxito, añadida en 2019 ✓".toCharArray()
+        copy.getDataField("245").marshal() == record.getDataField("245").marshal()
+    }
+
     private Record makeSummerlandRecord() {
         def leader = new Leader("00714cam a2200205 a 4500")
         def record = new Record(leader)
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2019 DIGIBÍS S.L.
+ *
+ * This file is part of MARC4J
+ *
+ * MARC4J is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * MARC4J is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with MARC4J; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.marc4j.marcxml
+
+import javax.xml.parsers.DocumentBuilderFactory
+import javax.xml.transform.TransformerException
+import javax.xml.transform.sax.SAXSource
+import javax.xml.transform.sax.SAXTransformerFactory
+import javax.xml.transform.stream.StreamResult
+
+import org.marc4j.MarcByteReader
+import org.marc4j.marc.Leader
+import org.marc4j.util.ResourcesUtil
+import org.xml.sax.InputSource
+
+import spock.lang.Specification
+
+/**
+ * Unit test for MarcXmlSerializer
+ */
+class MarcXmlSerializerSpec extends Specification {
+
+    static final String SCHEMA_LOCATION = "http://www.loc.gov/MARC21/slim http://www.loc.gov/standards/marcxml/schema/MARC21slim.xsd"
+
+    def "Writes the same document as the identity transformer"() {
+        given:
+        def expected = new ByteArrayOutputStream()
+        def transformer = ((SAXTransformerFactory)SAXTransformerFactory.newInstance()).newTransformerHandler()
+        transformer.setResult(new StreamResult(expected))
+        def producer = new MarcXmlReader()
+        producer.setContentHandler(transformer)
+        producer.setFeature("http://marc4j.org/features/pretty-printing", pretty)
+        if (schemaLocation != null) producer.setProperty("http://marc4j.org/properties/schema-location", schemaLocation)
+        if (doctype != null) producer.setProperty("http://marc4j.org/properties/document-type-declaration", doctype)
+        producer.setProperty("http://xml.org/sax/properties/lexical-handler", transformer)
+        parse(producer)
+
+        def actual = new ByteArrayOutputStream()
+        def serializer = new MarcXmlSerializer(actual)
+        serializer.setPrettyPrinting(pretty)
+        serializer.setSchemaLocation(schemaLocation)
+        serializer.setDoctype(doctype)
+
+        when:
+        parse(serializer)
+
+        then:
+        body(actual) == body(expected)
+        new String(actual.toByteArray(), "UTF-8").contains("Oficina Depósito Legal Madrid")
+
+        where:
+        pretty | schemaLocation  | doctype
+        true   | null            | null
+        false  | null            | null
+        true   | SCHEMA_LOCATION | null
+        true   | null            | new DoctypeDecl("collection", "-//MARC4J//DTD MARCXML//EN", "MARC21slim.dtd")
+    }
+
+    def "Escapes markup characters and encodes the data in UTF-8"() {
+        given:
+        def out = new ByteArrayOutputStream()
+        def serializer = new MarcXmlSerializer(out)
+        serializer.setDoctype(new DoctypeDecl("collection", null, "MARC21slim.dtd"))
+
+        when:
+        serializer.startCollection()
+        serializer.startRecord(new Leader("00714cam a2200205 a 4500"))
+        serializer.controlField("001", "<12&34>".toCharArray(), null)
+        serializer.startDataField("245", '1' as char, '#' as char, null)
+        def data = "x \"Señor\" & <b> 𝄞€".toCharArray()
+        serializer.subfield('a' as char, data, 0, data.length, null)
+        serializer.endDataField("245")
+        serializer.endRecord()
+        serializer.endCollection()
+
+        then:
+        def xml = new String(out.toByteArray(), "UTF-8")
+        xml.contains("<!DOCTYPE collection SYSTEM \"MARC21slim.dtd\">")
+        xml.contains("<controlfield tag=\"001\">&lt;12&amp;34&gt;</controlfield>")
+        xml.contains("<datafield tag=\"245\" ind1=\"1\" ind2=\" \">")
+        def factory = DocumentBuilderFactory.newInstance()
+        factory.setValidating(false)
+        factory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false)
+        def document = factory.newDocumentBuilder().parse(new ByteArrayInputStream(out.toByteArray()))
+        document.getElementsByTagName("subfield").item(0).getTextContent() == new String(data)
+        document.getElementsByTagName("controlfield").item(0).getTextContent() == "<12&34>"
+    }
+
+    def "The converter writes MARCXML to an output stream without a transformer"() {
+        given:
+        def producer = new MarcXmlReader()
+        def source = new SAXSource(producer, new InputSource(ResourcesUtil.getStream("/iso2709/quijote-iso8859_1.txt")))
+        def out = new ByteArrayOutputStream()
+
+        when:
+        new Converter().convert(source, new StreamResult(out))
+
+        then:
+        def document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new ByteArrayInputStream(out.toByteArray()))
+        document.getElementsByTagName("record").getLength() == 1
+        document.getElementsByTagName("controlfield").item(0).getTextContent() == "BABB20150005885"
+    }
+
+    def "Write errors are thrown by close() and by the converter"() {
+        given:
+        def failing = new OutputStream() {
+            void write(int b) throws IOException {
+                throw new IOException("disk full")
+            }
+        }
+        def serializer = new MarcXmlSerializer(failing)
+        def source = new SAXSource(new MarcXmlReader(), new InputSource(ResourcesUtil.getStream("/iso2709/quijote-iso8859_1.txt")))
+
+        when:
+        parse(serializer)
+        serializer.close()
+
+        then:
+        def e = thrown(IOException)
+        e.getMessage() == "disk full"
+
+        when:
+        new Converter().convert(source, new StreamResult(failing))
+
+        then:
+        def te = thrown(TransformerException)
+        te.getCause().getMessage() == "disk full"
+    }
+
+    def parse(handler) {
+        def reader = new MarcByteReader()
+        reader.setMarcHandler(handler)
+        reader.parse(ResourcesUtil.getStream("/iso2709/quijote-iso8859_1.txt"))
+    }
+
+    def body(ByteArrayOutputStream out) {
+        def xml = new String(out.toByteArray(), "UTF-8")
+        return xml.substring(xml.indexOf("?>") + 2).trim()
+    }
+}
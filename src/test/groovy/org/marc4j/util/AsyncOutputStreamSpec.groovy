@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2019 DIGIBÍS S.L.
+ *
+ * This file is part of MARC4J
+ *
+ * MARC4J is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * MARC4J is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with MARC4J; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.marc4j.util
+
+import java.nio.ByteBuffer
+import java.nio.channels.Channels
+import java.nio.channels.WritableByteChannel
+
+import org.marc4j.MarcReader
+
+import spock.lang.Specification
+
+/**
+ * Unit test for AsyncOutputStream
+ */
+class AsyncOutputStreamSpec extends Specification {
+
+    def "Writes all the data in order"() {
+        given:
+        def data = new byte[1000]
+        data.length.times { data[it] = (byte)it }
+        def bytes = new ByteArrayOutputStream()
+        def out = new AsyncOutputStream(Channels.newChannel(bytes), 16)
+
+        when:
+        out.write(data, 0, 500)
+        out.write(data[500])
+        out.flush()
+        def flushed = bytes.size()
+        out.write(data, 501, 499)
+        out.close()
+
+        then:
+        flushed == 501
+        bytes.toByteArray() == data
+    }
+
+    def "MarcWriter writes the same records to a file channel"() {
+        given:
+        def expected = new ByteArrayOutputStream()
+        def reader = new MarcReader()
+        reader.setMarcHandler(new MarcWriter(expected, "UTF-8"))
+        reader.parse(ResourcesUtil.getStream("/iso2709/quijote-iso8859_1.txt"))
+        def file = File.createTempFile("marc4j", ".mrc")
+        file.deleteOnExit()
+        def channel = new RandomAccessFile(file, "rw").getChannel()
+        def writer = new MarcWriter(channel, "UTF-8")
+
+        when:
+        reader = new MarcReader()
+        reader.setMarcHandler(writer)
+        reader.parse(ResourcesUtil.getStream("/iso2709/quijote-iso8859_1.txt"))
+        writer.close()
+
+        then:
+        file.bytes == expected.toByteArray()
+        !channel.isOpen()
+    }
+
+    def "Write errors are thrown by flush and close"() {
+        given:
+        def channel = [
+            write: { ByteBuffer b -> throw new IOException("disk full") },
+            isOpen: { true },
+            close: {}
+        ] as WritableByteChannel
+        def writer = new TaggedWriter(new OutputStreamWriter(new AsyncOutputStream(channel, 64)))
+        def reader = new MarcReader()
+        reader.setMarcHandler(writer)
+        reader.parse(ResourcesUtil.getStream("/iso2709/quijote-iso8859_1.txt"))
+
+        when:
+        writer.flush()
+
+        then:
+        def e = thrown(IOException)
+        e.message == "disk full"
+
+        when:
+        writer.close()
+
+        then:
+        thrown(IOException)
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2019 DIGIBÍS S.L.
+ *
+ * This file is part of MARC4J
+ *
+ * MARC4J is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * MARC4J is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with MARC4J; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.marc4j.util
+
+import javax.xml.parsers.DocumentBuilderFactory
+
+import org.marc4j.MarcByteReader
+import org.marc4j.SimpleRecordMarcHandler
+import org.marc4j.marc.MarcException
+
+import spock.lang.Specification
+
+/**
+ * Unit test for ShardedWriter
+ */
+class ShardedWriterSpec extends Specification {
+
+    def data
+
+    def dir
+
+    def setup() {
+        def bytes = ResourcesUtil.getStream("/iso2709/quijote-iso8859_1.txt").bytes
+        data = new byte[bytes.length * 5]
+        5.times { System.arraycopy(bytes, 0, data, it * bytes.length, bytes.length) }
+        dir = File.createTempFile("marc4j", "")
+        dir.delete()
+        dir.mkdir()
+    }
+
+    def cleanup() {
+        dir.deleteDir()
+    }
+
+    def "Splits the output after a number of records"() {
+        given:
+        def writer = new ShardedWriter(new File(dir, "out-%02d.mrc").getPath(), ShardedWriter.iso2709("UTF-8"))
+        writer.setMaxRecords(2)
+        writer.setManifestFile(new File(dir, "manifest.txt").getPath())
+        def reader = new MarcByteReader()
+        reader.setMarcHandler(writer)
+
+        when:
+        reader.parse(data, 0, data.length)
+
+        then:
+        writer.getShardCount() == 3
+        [2, 2, 1].withIndex().every { count, i -> readRecords(new File(dir, String.format("out-%02d.mrc", i))).size() == count }
+        def manifest = new File(dir, "manifest.txt").readLines().collect { it.split("\t") }
+        manifest.collect { new File(it[0]).getName() } == ["out-00.mrc", "out-01.mrc", "out-02.mrc"]
+        manifest.collect { it[1] + "-" + it[2] } == ["1-2", "3-4", "5-5"]
+        manifest.every { new File(it[0]).length() == it[4] as long }
+    }
+
+    def "Splits the output after a number of bytes"() {
+        given:
+        def writer = new ShardedWriter(new File(dir, "out-%02d.mrc").getPath(), ShardedWriter.iso2709("UTF-8"))
+        writer.setMaxBytes(1500)
+        def reader = new MarcByteReader()
+        reader.setMarcHandler(writer)
+
+        when:
+        reader.parse(data, 0, data.length)
+
+        then:
+        writer.getShardCount() == 3
+        (0..<3).every { readRecords(new File(dir, String.format("out-%02d.mrc", it))).size() == (it < 2 ? 2 : 1) }
+    }
+
+    def "Each MARCXML file is a complete collection"() {
+        given:
+        def writer = new ShardedWriter(new File(dir, "out-%02d.xml").getPath(), ShardedWriter.marcXml("UTF-8"))
+        writer.setMaxRecords(3)
+        def reader = new MarcByteReader()
+        reader.setMarcHandler(writer)
+
+        when:
+        reader.parse(data, 0, data.length)
+
+        then:
+        writer.getShardCount() == 2
+        def documents = (0..<2).collect {
+            DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new File(dir, String.format("out-%02d.xml", it)))
+        }
+        documents.every { it.getDocumentElement().getLocalName() == "collection" || it.getDocumentElement().getTagName() == "collection" }
+        documents.collect { it.getElementsByTagName("record").getLength() } == [3, 2]
+    }
+
+    def "A file whose writer fails to close is not listed"() {
+        given:
+        def factory = { out ->
+            new MarcWriter(out, "UTF-8") {
+                void close() throws IOException {
+                    throw new IOException("closed")
+                }
+            }
+        } as ShardWriterFactory
+        def writer = new ShardedWriter(new File(dir, "out-%02d.mrc").getPath(), factory)
+        writer.setManifestFile(new File(dir, "manifest.txt").getPath())
+        def reader = new MarcByteReader()
+        reader.setMarcHandler(writer)
+
+        when:
+        reader.parse(data, 0, data.length)
+
+        then:
+        def e = thrown(MarcException)
+        e.getCause() instanceof IOException
+        writer.getShardCount() == 0
+        !new File(dir, "manifest.txt").exists()
+    }
+
+    def "The file is closed when the factory fails"() {
+        given:
+        def opened = null
+        def factory = { out ->
+            opened = out
+            throw new IOException("no writer")
+        } as ShardWriterFactory
+        def writer = new ShardedWriter(new File(dir, "out-%02d.mrc").getPath(), factory)
+
+        when:
+        writer.startCollection()
+        writer.endCollection()
+
+        then:
+        def e = thrown(MarcException)
+        e.getCause().getMessage() == "no writer"
+
+        when:
+        opened.write(1)
+        opened.flush()
+
+        then:
+        thrown(IOException)
+    }
+
+    def readRecords(File file) {
+        def handler = new SimpleRecordMarcHandler()
+        def reader = new MarcByteReader()
+        reader.setMarcHandler(handler)
+        def bytes = file.bytes
+        reader.parse(bytes, 0, bytes.length)
+        return handler.getRecords()
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2019 DIGIBÍS S.L.
+ *
+ * This file is part of MARC4J
+ *
+ * MARC4J is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * MARC4J is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with MARC4J; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.marc4j.util
+
+import javax.xml.parsers.SAXParserFactory
+import javax.xml.transform.sax.SAXSource
+
+import org.marc4j.MarcByteReader
+import org.marc4j.MarcReader
+import org.marc4j.SimpleRecordMarcHandler
+import org.marc4j.marc.IllegalAddException
+import org.marc4j.marc.Leader
+import org.marc4j.marcxml.Converter
+import org.marc4j.marcxml.MarcResult
+import org.xml.sax.InputSource
+
+import spock.lang.Specification
+
+/**
+ * Unit test for StreamingMarcWriter
+ */
+class StreamingMarcWriterSpec extends Specification {
+
+    def "Writes the same bytes as MarcWriter"() {
+        given:
+        def expected = new ByteArrayOutputStream()
+        def reader = new MarcReader()
+        reader.setMarcHandler(new MarcWriter(expected, encoding))
+        reader.parse(ResourcesUtil.getStream("/iso2709/quijote-iso8859_1.txt"))
+        def actual = new ByteArrayOutputStream()
+
+        when:
+        reader = new MarcReader()
+        reader.setMarcHandler(new StreamingMarcWriter(actual, encoding))
+        reader.parse(ResourcesUtil.getStream("/iso2709/quijote-iso8859_1.txt"))
+
+        then:
+        actual.toByteArray() == expected.toByteArray()
+
+        where:
+        encoding << ["ISO-8859-1", "UTF-8"]
+    }
+
+    def "Writes the records of a byte reader and of a MARCXML file"() {
+        given:
+        def bytes = ResourcesUtil.getStream("/iso2709/quijote-iso8859_1.txt").bytes
+        def fromBytes = new ByteArrayOutputStream()
+        def byteReader = new MarcByteReader()
+        byteReader.setMarcHandler(new StreamingMarcWriter(fromBytes, "UTF-8"))
+        def fromXml = new ByteArrayOutputStream()
+        def xmlReader = SAXParserFactory.newInstance().newSAXParser().getXMLReader()
+        def source = new SAXSource(xmlReader, new InputSource(ResourcesUtil.getStream("/marcxml/quijote.xml")))
+
+        when:
+        byteReader.parse(bytes, 0, bytes.length)
+        new Converter().convert(source, new MarcResult(new StreamingMarcWriter(fromXml)))
+
+        then:
+        fromBytes.toByteArray() == bytes
+        new String(fromXml.toByteArray(), "ISO-8859-1").contains("BABB20150005885")
+        new String(fromXml.toByteArray(), "ISO-8859-1").contains("Oficina Depósito Legal Madrid")
+    }
+
+    def "A control number field reported after other fields is moved to the front"() {
+        given:
+        def expected = new ByteArrayOutputStream()
+        def actual = new ByteArrayOutputStream()
+        def handler = new SimpleRecordMarcHandler()
+        def reader = new MarcReader()
+        reader.setMarcHandler(handler)
+
+        when:
+        [new MarcWriter(expected, "ISO-8859-1"), new StreamingMarcWriter(actual)].each { writer ->
+            writer.startCollection()
+            writer.startRecord(new Leader("00000cam a2200000 a 4500"))
+            writer.controlField("005", "20030616111422.0".toCharArray(), null)
+            writer.controlField("001", "12883376".toCharArray(), null)
+            writer.startDataField("245", '1' as char, '0' as char, null)
+            writer.subfield('a' as char, "Summerland".toCharArray(), null)
+            writer.endDataField("245")
+            writer.endRecord()
+            writer.endCollection()
+        }
+        reader.parse(new ByteArrayInputStream(actual.toByteArray()))
+
+        then:
+        actual.toByteArray() == expected.toByteArray()
+        def record = handler.getRecords()[0]
+        record.getControlNumber() == "12883376"
+        record.getControlField("005").getData() == "20030616111422.0".toCharArray()
+        record.getDataField("245").getSubfield('a' as char).getData() == "Summerland".toCharArray()
+    }
+
+    def "Control fields reported after a data field are written before the data fields"() {
+        given:
+        def expected = new ByteArrayOutputStream()
+        def actual = new ByteArrayOutputStream()
+
+        when:
+        [new MarcWriter(expected, "ISO-8859-1"), new StreamingMarcWriter(actual)].each { writer ->
+            writer.startCollection()
+            writer.startRecord(new Leader("00000cam a2200000 a 4500"))
+            writer.controlField("003", "DLC".toCharArray(), null)
+            writer.startDataField("245", '1' as char, '0' as char, null)
+            writer.subfield('a' as char, "Summerland".toCharArray(), null)
+            writer.endDataField("245")
+            writer.controlField("005", "20030616111422.0".toCharArray(), null)
+            writer.startDataField("650", ' ' as char, '1' as char, null)
+            writer.subfield('a' as char, "Fantasy.".toCharArray(), null)
+            writer.endDataField("650")
+            writer.controlField("001", "12883376".toCharArray(), null)
+            writer.endRecord()
+            writer.endCollection()
+        }
+
+        then:
+        actual.toByteArray() == expected.toByteArray()
+        [0, 1, 2, 3, 4].collect { new String(actual.toByteArray(), 24 + it * 12, 3, "ISO-8859-1") } == ["001", "003", "005", "245", "650"]
+    }
+
+    def "A second control number field is rejected as MarcWriter does"() {
+        given:
+        def writer = new StreamingMarcWriter(new ByteArrayOutputStream())
+        writer.startCollection()
+        writer.startRecord(new Leader("00000cam a2200000 a 4500"))
+        writer.controlField("001", "12883376".toCharArray(), null)
+
+        when:
+        writer.controlField("001", "99999999".toCharArray(), null)
+
+        then:
+        thrown(IllegalAddException)
+    }
+}
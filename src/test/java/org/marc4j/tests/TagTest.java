@@ -67,4 +67,18 @@ public void isDataField()
         }
     }
 
+    @Test()
+    public void testValueOf()
+    {
+        for (int i = 0; i <= 999; i++) {
+            String tag = df.format(i).toString();
+            Assert.assertSame(Tag.valueOf(tag), Tag.valueOf(tag.charAt(0), tag.charAt(1), tag.charAt(2)));
+            Assert.assertSame(Tag.valueOf(tag), Tag.valueOf(tag.toCharArray(), 0));
+            Assert.assertEquals(i, Tag.indexOf(tag));
+        }
+        Assert.assertSame("245", Tag.valueOf(new String("245")));
+        Assert.assertEquals("ABC", Tag.valueOf('A', 'B', 'C'));
+        Assert.assertEquals(-1, Tag.indexOf("ABC"));
+    }
+
 }